@@ -110,7 +110,9 @@ CREATE TABLE `db_notification`  (
   `type` varchar(255) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT NULL,
   `url` varchar(255) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT NULL,
   `time` varchar(255) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT NULL,
-  PRIMARY KEY (`id`) USING BTREE
+  `is_read` tinyint(1) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `idx_uid_read`(`uid`, `is_read`) USING BTREE
 ) ENGINE = MyISAM AUTO_INCREMENT = 3 CHARACTER SET = utf8 COLLATE = utf8_general_ci ROW_FORMAT = Dynamic;
 
 -- ----------------------------
@@ -125,7 +127,13 @@ CREATE TABLE `db_topic`  (
   `type` int(11) NULL DEFAULT NULL,
   `time` datetime NULL DEFAULT NULL,
   `top` tinyint(4) NULL DEFAULT 0,
-  PRIMARY KEY (`id`) USING BTREE
+  `like_count` int(11) NOT NULL DEFAULT 0,
+  `collect_count` int(11) NOT NULL DEFAULT 0,
+  `preview_text` varchar(300) CHARACTER SET utf8 COLLATE utf8_general_ci NULL DEFAULT NULL,
+  `preview_images` text CHARACTER SET utf8 COLLATE utf8_general_ci NULL,
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `time_id`(`time`, `id`) USING BTREE,
+  INDEX `type_time_id`(`type`, `time`, `id`) USING BTREE
 ) ENGINE = MyISAM AUTO_INCREMENT = 5 CHARACTER SET = utf8 COLLATE = utf8_general_ci ROW_FORMAT = Dynamic;
 
 -- ----------------------------
@@ -139,7 +147,8 @@ CREATE TABLE `db_topic_comment`  (
   `content` text CHARACTER SET utf8 COLLATE utf8_general_ci NULL,
   `time` datetime NULL DEFAULT NULL,
   `quote` int(11) NULL DEFAULT NULL,
-  PRIMARY KEY (`id`) USING BTREE
+  PRIMARY KEY (`id`) USING BTREE,
+  INDEX `tid_id`(`tid`, `id`) USING BTREE
 ) ENGINE = MyISAM AUTO_INCREMENT = 8 CHARACTER SET = utf8 COLLATE = utf8_general_ci ROW_FORMAT = Dynamic;
 
 -- ----------------------------
@@ -148,10 +157,9 @@ CREATE TABLE `db_topic_comment`  (
 DROP TABLE IF EXISTS `db_topic_interact_collect`;
 CREATE TABLE `db_topic_interact_collect`  (
   `tid` int(11) NOT NULL,
-  `uid` int(11) NULL DEFAULT NULL,
+  `uid` int(11) NOT NULL,
   `time` datetime NULL DEFAULT NULL,
-  PRIMARY KEY (`tid`) USING BTREE,
-  UNIQUE INDEX `tid_uid_collect`(`tid`, `uid`) USING BTREE
+  PRIMARY KEY (`tid`, `uid`) USING BTREE
 ) ENGINE = MyISAM CHARACTER SET = utf8 COLLATE = utf8_general_ci ROW_FORMAT = Fixed;
 
 -- ----------------------------
@@ -160,10 +168,9 @@ CREATE TABLE `db_topic_interact_collect`  (
 DROP TABLE IF EXISTS `db_topic_interact_like`;
 CREATE TABLE `db_topic_interact_like`  (
   `tid` int(11) NOT NULL,
-  `uid` int(11) NULL DEFAULT NULL,
+  `uid` int(11) NOT NULL,
   `time` datetime NULL DEFAULT NULL,
-  PRIMARY KEY (`tid`) USING BTREE,
-  UNIQUE INDEX `tid_uid_like`(`tid`, `uid`) USING BTREE
+  PRIMARY KEY (`tid`, `uid`) USING BTREE
 ) ENGINE = MyISAM CHARACTER SET = utf8 COLLATE = utf8_general_ci ROW_FORMAT = Fixed;
 
 -- ----------------------------
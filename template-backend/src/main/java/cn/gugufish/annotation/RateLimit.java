@@ -0,0 +1,60 @@
+package cn.gugufish.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 接口级限流声明
+ * 标注在Controller方法上，由限流拦截器在请求进入方法前检查，
+ * 每个接口可以按照自身的开销设置独立的配额，不再在业务代码中手写计数逻辑
+ *
+ * @author GuguFish
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    /**
+     * 计数主体
+     */
+    enum Key {
+        /**
+         * 按登录用户计数，未登录时退回按IP计数
+         */
+        USER,
+        /**
+         * 按客户端IP计数
+         */
+        IP
+    }
+
+    /**
+     * 计数主体，默认按登录用户
+     */
+    Key key() default Key.USER;
+
+    /**
+     * 计数周期内允许的请求次数
+     */
+    int permits();
+
+    /**
+     * 计数周期（秒）
+     */
+    int window();
+
+    /**
+     * 每秒最多允许的请求次数，用于限制短时间内的突发请求，0表示不限制
+     */
+    int burst() default 0;
+
+    /**
+     * 计数键前缀，为空时根据Controller类名与方法名生成
+     */
+    String name() default "";
+
+    /**
+     * 超出限制时返回给客户端的提示
+     */
+    String message() default "请求频率过快，请稍后再试";
+}
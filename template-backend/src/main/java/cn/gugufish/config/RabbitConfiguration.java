@@ -2,9 +2,12 @@ package cn.gugufish.config;
 
 import cn.gugufish.utils.Const;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -64,5 +67,43 @@ public class RabbitConfiguration {
                 .build();
 
     }
-    
+
+    /**
+     * 创建评论通知队列
+     * 队列长度有上限，积压超过上限时新的事件会被拒绝（发布确认中收到nack），
+     * 而不是无限堆积拖垮消息服务器，被拒绝的事件由发布方计入指标
+     *
+     * @return 通知队列实例，队列名称为"notification"
+     */
+    @Bean("notificationQueue")
+    public Queue notificationQueue(){
+        return QueueBuilder
+                .durable(Const.MQ_NOTIFICATION)
+                .maxLength(10000)
+                .overflow(QueueBuilder.Overflow.rejectPublish)
+                .build();
+    }
+
+    /**
+     * 批量消费的监听容器工厂
+     * 在默认配置的基础上开启消费端批处理，一次最多攒100条消息，
+     * 队列空闲时等待200毫秒即交付当前已攒到的消息；
+     * 通知消息在合并窗口写入后才确认，预取数量需要容纳两次写入之间到达的消息
+     *
+     * @param configurer Spring Boot提供的默认容器配置
+     * @param connectionFactory 连接工厂
+     * @return 批量监听容器工厂
+     */
+    @Bean("batchListenerFactory")
+    public SimpleRabbitListenerContainerFactory batchListenerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                     ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(100);
+        factory.setReceiveTimeout(200L);
+        factory.setPrefetchCount(1000);
+        return factory;
+    }
 }
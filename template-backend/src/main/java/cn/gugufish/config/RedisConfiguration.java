@@ -0,0 +1,32 @@
+package cn.gugufish.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Redis相关配置类
+ * 提供Redis发布/订阅所需的消息监听容器，用于多个服务节点之间的广播通知，如：
+ * - 本地缓存失效通知
+ * - 通知实时推送
+ *
+ * @author GuguFish
+ */
+@Configuration
+public class RedisConfiguration {
+
+    /**
+     * 创建Redis消息监听容器
+     * 各组件可以向容器中注册自己关注的频道与监听器
+     *
+     * @param factory Redis连接工厂
+     * @return 消息监听容器实例
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        return container;
+    }
+}
@@ -9,10 +9,12 @@ import cn.gugufish.service.AccountService;
 import cn.gugufish.utils.Const;
 import cn.gugufish.utils.JwtUtils;
 import jakarta.annotation.Resource;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
@@ -73,12 +75,16 @@ public class SecurityConfiguration {
         return http
                 // 配置HTTP请求授权规则
                 .authorizeHttpRequests(conf -> conf
+                        // 异步请求的再次分派（如SSE推送连接结束）已在首次请求时完成鉴权
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // 允许匿名访问的接口：认证相关、错误页面
                         .requestMatchers("/api/auth/**", "/error").permitAll()
                         // 允许匿名访问的工具接口
                         .requestMatchers("/api/util/**").permitAll()
                         // 允许匿名访问静态资源（图片等）
                         .requestMatchers("/images/**").permitAll()
+                        // 通知推送连接可以使用一次性票据代替令牌，由接口自行校验身份
+                        .requestMatchers(HttpMethod.GET, "/api/notification/stream").permitAll()
                         // 允许匿名访问Swagger文档接口
                         .requestMatchers("/swagger-ui/**", "/v3/api-docs/**").permitAll()
                         // 管理员接口需要ADMIN角色
@@ -1,13 +1,16 @@
 package cn.gugufish.config;
 
+import cn.gugufish.interceptor.RateLimitInterceptor;
 import com.baomidou.mybatisplus.annotation.DbType;
 import com.baomidou.mybatisplus.extension.plugins.MybatisPlusInterceptor;
 import com.baomidou.mybatisplus.extension.plugins.inner.PaginationInnerInterceptor;
+import jakarta.annotation.Resource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
@@ -16,12 +19,27 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  * - 密码加密器配置
  * - HTTP客户端配置  
  * - MyBatis-Plus分页插件配置
+ * - 接口级限流拦截器注册
  * 
  * @author GuguFish
  */
 @Configuration
 public class WebConfiguration implements WebMvcConfigurer {
 
+    @Resource
+    RateLimitInterceptor rateLimitInterceptor;
+
+    /**
+     * 注册接口级限流拦截器
+     * 拦截器根据Controller方法上的@RateLimit注解进行限流，没有注解的接口直接放行
+     *
+     * @param registry 拦截器注册器
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(rateLimitInterceptor);
+    }
+
     /**
      * 配置密码加密器
      * 使用BCrypt算法对用户密码进行安全加密
@@ -1,5 +1,7 @@
 package cn.gugufish.controller;
 
+import cn.gugufish.annotation.RateLimit;
+import cn.gugufish.entity.PageRestBean;
 import cn.gugufish.entity.RestBean;
 import cn.gugufish.entity.dto.Account;
 import cn.gugufish.entity.dto.Interact;
@@ -8,19 +10,24 @@ import cn.gugufish.entity.vo.request.TopicCreateVO;
 import cn.gugufish.entity.vo.request.TopicUpdateVO;
 import cn.gugufish.entity.vo.response.*;
 import cn.gugufish.service.AccountService;
+import cn.gugufish.service.SearchService;
 import cn.gugufish.service.TopicService;
 import cn.gugufish.service.WeatherService;
 import cn.gugufish.utils.Const;
 import cn.gugufish.utils.ControllerUtils;
 import jakarta.annotation.Resource;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 论坛核心控制器
@@ -54,6 +61,13 @@ public class ForumController {
     @Resource
     TopicService topicService;
     
+    /**
+     * 全文检索服务类
+     * 提供主题与评论的关键词搜索功能
+     */
+    @Resource
+    SearchService searchService;
+    
     /**
      * 控制器工具类
      * 提供通用的请求处理和响应封装功能
@@ -71,11 +85,13 @@ public class ForumController {
     /**
      * 获取指定地理位置的天气信息
      * 根据用户提供的经纬度坐标，调用天气服务获取当前天气状况
+     * 需要请求第三方天气接口，开销较大，每个IP每分钟最多查询10次
      * 
      * @param longitude 经度坐标
      * @param latitude 纬度坐标
      * @return 天气信息响应，包含温度、天气状况、风速等数据
      */
+    @RateLimit(key = RateLimit.Key.IP, permits = 10, window = 60, message = "天气查询过于频繁，请稍后再试")
     @GetMapping("/weather")
     public RestBean<WeatherVO> weather(double longitude, double latitude){
         WeatherVO vo = weatherService.fetchWeather(longitude, latitude);
@@ -87,10 +103,14 @@ public class ForumController {
      * 获取所有主题分类列表
      * 返回论坛支持的所有主题分类，供用户在发布主题时选择
      * 
+     * 分类定时从数据库刷新，客户端携带相同的ETag时直接返回304
+     *
+     * @param request 当前请求，用于比对If-None-Match
      * @return 主题分类列表，包含分类ID和分类名称
      */
     @GetMapping("/types")
-    public RestBean<List<TopicTypeVO>> listTypes(){
+    public RestBean<List<TopicTypeVO>> listTypes(ServletWebRequest request){
+        if(controllerUtils.checkNotModified(request, topicService.typesVersion())) return null;
         return RestBean.success(topicService
                 .listTypes()
                 .stream()
@@ -107,6 +127,7 @@ public class ForumController {
      * @param vo 主题创建请求对象，包含标题、内容、分类等信息
      * @return 创建结果，成功返回成功响应，失败返回错误信息
      */
+    @RateLimit(name = Const.FORUM_TOPIC_CREATE_COUNTER, permits = 4, window = 3600, message = "发文过快，请稍后再试")
     @PostMapping("/create-topic")
     public RestBean<Void> createTopic(@RequestAttribute(Const.ATTR_USER_ID) int id,
                                       @Valid @RequestBody TopicCreateVO vo){
@@ -123,37 +144,98 @@ public class ForumController {
      * 
      * @param page 页码（从0开始）
      * @param type 主题分类ID，0表示查看所有分类
+     * @param request 当前请求，版本未变化时直接返回304，不查询数据库也不构建响应体
      * @return 指定页面的主题预览列表
      */
     @GetMapping("/list-topic")
     public RestBean<List<TopicPreviewVO>> listTopic(@RequestParam @Min(0) int page,
-                                                    @RequestParam @Min(0) int type){
+                                                    @RequestParam @Min(0) int type,
+                                                    ServletWebRequest request){
+        if(controllerUtils.checkNotModified(request, topicService.topicListVersion(page + 1, type))) return null;
         return RestBean.success(topicService.listTopicByPage(page + 1, type));
     }
     
+    /**
+     * 按游标获取主题列表
+     * 与分页接口返回相同的主题预览数据，但以(发布时间, ID)作为游标定位下一页，
+     * 翻到再深的页面查询代价也与第一页相同
+     * 
+     * @param cursor 上一页返回的游标，不传表示获取第一页
+     * @param type 主题分类ID，0表示查看所有分类
+     * @return 主题预览列表以及下一页游标
+     */
+    @GetMapping("/list-topic-cursor")
+    public RestBean<CursorPageVO<TopicPreviewVO>> listTopicByCursor(@RequestParam(required = false) String cursor,
+                                                                   @RequestParam @Min(0) int type){
+        return RestBean.success(topicService.listTopicByCursor(cursor, type));
+    }
+    
     /**
      * 获取置顶主题列表
      * 返回管理员设置的置顶主题，通常显示在论坛首页顶部
      * 
+     * @param request 当前请求，置顶版本未变化时直接返回304
      * @return 置顶主题列表
      */
     @GetMapping("/top-topic")
-    public RestBean<List<TopicTopVO>> topTopic(){
+    public RestBean<List<TopicTopVO>> topTopic(ServletWebRequest request){
+        if(controllerUtils.checkNotModified(request, topicService.topTopicsVersion())) return null;
         return RestBean.success(topicService.listTopTopics());
     }
     
+    /**
+     * 获取热门主题列表
+     * 按照点赞、收藏、评论、浏览随时间衰减后的热度从高到低排列，
+     * 热度在每次互动时增量更新，读取时只需取有序集合的前N项
+     * 
+     * @param size 返回的主题数量，默认10个，最多50个
+     * @return 热门主题预览列表
+     */
+    @GetMapping("/hot-topic")
+    public RestBean<List<TopicPreviewVO>> hotTopic(@RequestParam(defaultValue = "10") @Min(1) @Max(50) int size){
+        return RestBean.success(topicService.listHotTopics(size));
+    }
+    
+    /**
+     * 全文搜索主题与评论
+     * 基于本地倒排索引检索，不会对数据库进行模糊查询，结果中的关键词使用<em>标签高亮
+     * 
+     * @param keyword 搜索关键词
+     * @param type 主题分类ID，0表示不限分类
+     * @param page 页码，从1开始
+     * @return 分页的搜索结果
+     */
+    @RateLimit(permits = 30, window = 60, burst = 5, message = "搜索过于频繁，请稍后再试")
+    @GetMapping("/search")
+    public PageRestBean<SearchHitVO> search(@RequestParam @Size(min = 1, max = 50) String keyword,
+                                            @RequestParam(defaultValue = "0") @Min(0) int type,
+                                            @RequestParam(defaultValue = "1") @Min(1) @Max(50) int page){
+        return PageRestBean.success(searchService.search(keyword, type, page, 10));
+    }
+    
     /**
      * 获取主题详细内容
      * 根据主题ID获取完整的主题信息，包括内容、作者、发布时间等
      * 
      * @param tid 主题ID
      * @param id 当前登录用户的ID（用于判断用户是否已点赞、收藏等）
+     * @param request 当前请求，帖子版本与统计、互动状态均未变化时直接返回304，
+     *                此时只读取Redis中的版本信息，不读取帖子详情；304同样计为一次浏览
      * @return 主题的详细信息
      */
     @GetMapping("/topic")
     public RestBean<TopicDetailVO> topic(@RequestParam @Min(0) int tid,
-                                         @RequestAttribute(Const.ATTR_USER_ID) int id){
-        return RestBean.success(topicService.getTopic(tid, id));
+                                         @RequestAttribute(Const.ATTR_USER_ID) int id,
+                                         ServletWebRequest request){
+        TopicService.TopicVersion version = topicService.topicVersion(tid, id);
+        if(controllerUtils.checkNotModified(request, version.etag())) {
+            topicService.recordView(tid);
+            return null;
+        }
+        TopicDetailVO detail = topicService.getTopic(tid, version);
+        if(detail != null)
+            topicService.recordView(tid);
+        return RestBean.success(detail);
     }
     
     /**
@@ -171,8 +253,21 @@ public class ForumController {
                                    @RequestParam @Pattern(regexp = "(like|collect)") String type,
                                    @RequestParam boolean state,
                                    @RequestAttribute(Const.ATTR_USER_ID) int id) {
-        topicService.interact(new Interact(tid, id, new Date(), type), state);
-        return RestBean.success();
+        return controllerUtils.messageHandle(() -> topicService.interact(new Interact(tid, id, new Date(), type), state));
+    }
+    
+    /**
+     * 批量查询当前用户对多个主题的点赞与收藏状态
+     * 用于主题列表页一次性标记"我已点赞/收藏"，避免逐个主题请求
+     * 
+     * @param tids 主题ID列表，最多50个
+     * @param id 当前登录用户的ID
+     * @return 主题ID与互动状态的映射
+     */
+    @GetMapping("/interact-states")
+    public RestBean<Map<Integer, TopicDetailVO.Interact>> interactStates(@RequestParam @Size(min = 1, max = 50) List<Integer> tids,
+                                                                         @RequestAttribute(Const.ATTR_USER_ID) int id) {
+        return RestBean.success(topicService.interactStates(tids, id));
     }
     
     /**
@@ -210,6 +305,7 @@ public class ForumController {
      * @param id 当前登录用户的ID
      * @return 添加结果
      */
+    @RateLimit(name = Const.FORUM_TOPIC_COMMENT_COUNTER, permits = 2, window = 60, message = "发表评论频繁，请稍后再试！")
     @PostMapping("/add-comment")
     public RestBean<Void> addComment(@Valid @RequestBody AddCommentVO vo,
                                      @RequestAttribute(Const.ATTR_USER_ID) int id){
@@ -234,6 +330,20 @@ public class ForumController {
         return RestBean.success(topicService.comments(tid, page + 1));
     }
     
+    /**
+     * 按游标获取主题评论列表
+     * 以评论ID作为游标定位下一页，避免深分页带来的偏移扫描
+     * 
+     * @param tid 主题ID
+     * @param cursor 上一页返回的游标，不传表示获取第一页
+     * @return 评论列表以及下一页游标
+     */
+    @GetMapping("/comments-cursor")
+    public RestBean<CursorPageVO<CommentVO>> commentsByCursor(@RequestParam @Min(0) int tid,
+                                                             @RequestParam(required = false) String cursor){
+        return RestBean.success(topicService.commentsByCursor(tid, cursor, 10));
+    }
+    
     /**
      * 删除评论
      * 用户可以删除自己发表的评论
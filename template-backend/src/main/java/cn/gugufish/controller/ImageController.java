@@ -1,5 +1,6 @@
 package cn.gugufish.controller;
 
+import cn.gugufish.annotation.RateLimit;
 import cn.gugufish.entity.RestBean;
 import cn.gugufish.service.ImageService;
 import cn.gugufish.utils.Const;
@@ -56,6 +57,7 @@ public class ImageController {
      * @return 上传结果，成功返回图片访问URL，失败返回错误信息
      * @throws Exception 文件处理过程中可能出现的异常
      */
+    @RateLimit(name = Const.FORUM_IMAGE_COUNTER, permits = 20, window = 3600, burst = 2, message = "图片上传过于频繁，请稍后再试")
     @PostMapping("cache")
     public RestBean<String> uploadImage(@RequestAttribute(Const.ATTR_USER_ID) int id,
                                         @RequestParam("file") MultipartFile file,
@@ -1,12 +1,18 @@
 package cn.gugufish.controller;
 
 import cn.gugufish.entity.RestBean;
+import cn.gugufish.entity.vo.response.CursorPageVO;
 import cn.gugufish.entity.vo.response.NotificationVO;
+import cn.gugufish.service.NotificationPushService;
 import cn.gugufish.service.NotificationService;
 import cn.gugufish.utils.Const;
 import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 
@@ -14,7 +20,8 @@ import java.util.List;
  * 通知消息控制器
  * 提供用户通知消息的管理功能，帮助用户及时了解系统消息和互动信息
  * 主要功能包括：
- * - 获取用户的所有通知消息
+ * - 按游标分页获取收件箱、查询未读数量
+ * - 标记单条或全部通知为已读
  * - 删除指定的通知消息
  * - 批量删除所有通知消息
  * 
@@ -37,8 +44,15 @@ public class NotificationController {
     NotificationService service;
 
     /**
-     * 获取用户的通知消息列表
-     * 返回当前登录用户的所有未删除通知消息，按时间倒序排列
+     * 通知推送服务
+     * 维护客户端的SSE长连接并推送新通知
+     */
+    @Resource
+    NotificationPushService pushService;
+
+    /**
+     * 获取用户最新的通知消息列表
+     * 返回当前登录用户最新的一部分通知消息，按时间倒序排列，完整的收件箱请使用分页接口
      * 
      * @param id 当前登录用户的ID（从JWT令牌中获取）
      * @return 用户的通知消息列表
@@ -48,6 +62,99 @@ public class NotificationController {
         return RestBean.success(service.findUserNotification(id));
     }
 
+    /**
+     * 签发推送连接票据
+     * 浏览器原生EventSource无法设置Authorization请求头，客户端先用令牌调用此接口获取票据，
+     * 再以 /api/notification/stream?ticket=票据 打开连接，票据30秒内有效且只能使用一次
+     * 
+     * @param id 当前登录用户的ID（从JWT令牌中获取）
+     * @return 票据
+     */
+    @PostMapping("/stream-ticket")
+    public RestBean<String> streamTicket(@RequestAttribute(Const.ATTR_USER_ID) int id) {
+        return RestBean.success(pushService.createTicket(id));
+    }
+
+    /**
+     * 建立通知推送长连接（Server-Sent Events）
+     * 有新通知时服务端以"notification"事件推送通知内容，并定时发送心跳注释保持连接，
+     * 客户端断开后应重新获取票据再连接，重连后可通过未读数量接口补齐断开期间的变化
+     * 
+     * 身份可以由Authorization请求头中的令牌确定（适用于基于fetch的客户端），
+     * 也可以由查询参数中的一次性票据确定（适用于原生EventSource），两者都没有时返回401
+     * 
+     * @param id 当前登录用户的ID（从JWT令牌中获取，使用票据连接时为空）
+     * @param ticket 推送连接票据
+     * @param response HTTP响应
+     * @return SSE连接
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestAttribute(value = Const.ATTR_USER_ID, required = false) Integer id,
+                             @RequestParam(required = false) String ticket,
+                             HttpServletResponse response) {
+        if(id == null) id = pushService.redeemTicket(ticket);
+        if(id == null) {
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return null;
+        }
+        return pushService.connect(id);
+    }
+
+    /**
+     * 按游标分页获取收件箱
+     * 以通知ID倒序返回，下一页请求携带上一页返回的游标，翻到再深的页面查询代价也与第一页相同
+     * 
+     * @param cursor 上一页返回的游标，第一页不传
+     * @param size 每页数量，默认20条，最多50条
+     * @param id 当前登录用户的ID（从JWT令牌中获取）
+     * @return 一页通知消息与下一页的游标
+     */
+    @GetMapping("/inbox")
+    public RestBean<CursorPageVO<NotificationVO>> inbox(@RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = "20") @Min(1) @Max(50) int size,
+                                                        @RequestAttribute(Const.ATTR_USER_ID) int id) {
+        return RestBean.success(service.listUserNotification(id, cursor, size));
+    }
+
+    /**
+     * 获取未读通知数量
+     * 计数保存在Redis中，随通知的写入、已读和删除同步更新，查询不需要访问数据库
+     * 
+     * @param id 当前登录用户的ID（从JWT令牌中获取）
+     * @return 未读通知数量
+     */
+    @GetMapping("/unread-count")
+    public RestBean<Long> unreadCount(@RequestAttribute(Const.ATTR_USER_ID) int id) {
+        return RestBean.success(service.unreadCount(id));
+    }
+
+    /**
+     * 将指定的通知标记为已读
+     * 
+     * @param id 通知消息ID
+     * @param uid 当前登录用户的ID（从JWT令牌中获取）
+     * @return 操作结果
+     */
+    @GetMapping("/read")
+    public RestBean<Void> readNotification(@RequestParam @Min(0) int id,
+                                           @RequestAttribute(Const.ATTR_USER_ID) int uid) {
+        service.markRead(id, uid);
+        return RestBean.success();
+    }
+
+    /**
+     * 将当前用户的全部通知标记为已读
+     * 使用一条UPDATE语句完成，不需要逐条处理
+     * 
+     * @param uid 当前登录用户的ID（从JWT令牌中获取）
+     * @return 操作结果
+     */
+    @GetMapping("/read-all")
+    public RestBean<Void> readAllNotification(@RequestAttribute(Const.ATTR_USER_ID) int uid) {
+        service.markAllRead(uid);
+        return RestBean.success();
+    }
+
     /**
      * 删除指定的通知消息
      * 用户可以删除不再需要的通知消息，只能删除属于自己的通知
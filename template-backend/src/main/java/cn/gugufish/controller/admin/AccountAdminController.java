@@ -9,6 +9,7 @@ import cn.gugufish.entity.vo.response.AccountVO;
 import cn.gugufish.service.AccountDetailsService;
 import cn.gugufish.service.AccountPrivacyService;
 import cn.gugufish.service.AccountService;
+import cn.gugufish.service.UserCardService;
 import cn.gugufish.utils.Const;
 import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
@@ -32,6 +33,8 @@ public class AccountAdminController {
     @Resource
     AccountPrivacyService privacyService;
     @Resource
+    UserCardService userCardService;
+    @Resource
     StringRedisTemplate template;
 
     @Value("${spring.security.jwt.expire}")
@@ -78,6 +81,7 @@ public class AccountAdminController {
         AccountPrivacy savePrivacy = object.getJSONObject("privacy").toJavaObject(AccountPrivacy.class);
         BeanUtils.copyProperties(savePrivacy, privacy);
         privacyService.saveOrUpdate(savePrivacy);
+        userCardService.evict(id);
         return RestBean.success();
     }
     @PostMapping("/change-password")
@@ -2,18 +2,26 @@ package cn.gugufish.controller.admin;
 
 import cn.gugufish.entity.PageRestBean;
 import cn.gugufish.entity.RestBean;
+import cn.gugufish.entity.vo.response.CursorPageVO;
 import cn.gugufish.entity.vo.response.TopicPreviewVO;
+import cn.gugufish.service.SearchService;
 import cn.gugufish.service.TopicService;
 import com.alibaba.fastjson2.JSONObject;
 import jakarta.annotation.Resource;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+@Validated
 @RestController
 @RequestMapping("/api/admin/forum")
 public class ForumAdminController {
 
     @Resource
     private TopicService service;
+    @Resource
+    private SearchService searchService;
 
     @GetMapping("/list")
     public PageRestBean<TopicPreviewVO> list(@RequestParam int page,
@@ -25,12 +33,33 @@ public class ForumAdminController {
                 page
         );
     }
+    @GetMapping("/list-cursor")
+    public RestBean<CursorPageVO<TopicPreviewVO>> listByCursor(@RequestParam(required = false) String cursor,
+                                                              @RequestParam @Min(1) @Max(50) int size) {
+        return RestBean.success(service.listAllTopicByCursor(cursor, size));
+    }
     @GetMapping("/delete")
     public RestBean<Void> delete(@RequestParam int tid){
         service.deleteTopic(tid);
         return RestBean.success();
     }
 
+    @GetMapping("/rebuild-counter")
+    public RestBean<Void> rebuildCounter() {
+        service.rebuildInteractCounters();
+        return RestBean.success();
+    }
+
+    @GetMapping("/backfill-preview")
+    public RestBean<Integer> backfillPreview() {
+        return RestBean.success(service.backfillPreview());
+    }
+
+    @GetMapping("/rebuild-search")
+    public RestBean<Integer> rebuildSearch() {
+        return RestBean.success(searchService.rebuild());
+    }
+
     @PostMapping("/top")
     public RestBean<Void> setTop(@RequestBody JSONObject object) {
         service.setTopicTop(
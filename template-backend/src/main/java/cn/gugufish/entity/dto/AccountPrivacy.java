@@ -7,6 +7,7 @@ import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
 
 import java.lang.reflect.Field;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -21,16 +22,22 @@ public class AccountPrivacy implements BaseData {
     boolean qq = true;
     boolean gender = true;
 
+    /**
+     * 所有隐私开关字段，只在类加载时反射一次
+     */
+    private static final Field[] SWITCH_FIELDS = Arrays.stream(AccountPrivacy.class.getDeclaredFields())
+            .filter(field -> field.getType().equals(boolean.class))
+            .toArray(Field[]::new);
+
     /**
      *通过反射获取用户的隐私设置
      * @return 返回一个字符串列表用来在拷贝数据时候决定哪些忽略
      */
     public String[] hiddenFields(){
         List<String> strings = new LinkedList<>();
-        Field[] fields = this.getClass().getDeclaredFields();
-        for (Field field : fields) {
+        for (Field field : SWITCH_FIELDS) {
             try {
-                if(field.getType().equals(boolean.class) && !field.getBoolean(this))
+                if(!field.getBoolean(this))
                     strings.add(field.getName());
             } catch (Exception ignored) {}
         }
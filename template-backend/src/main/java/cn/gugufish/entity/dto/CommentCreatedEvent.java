@@ -0,0 +1,18 @@
+package cn.gugufish.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 评论发表事件，只携带ID，通知的接收人和文案由消费者统一解析
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CommentCreatedEvent {
+    Integer cid;
+    Integer tid;
+    Integer uid;
+    Integer quote;
+}
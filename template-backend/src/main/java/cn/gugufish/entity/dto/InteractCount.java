@@ -0,0 +1,16 @@
+package cn.gugufish.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 按帖子分组统计的点赞/收藏数量
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class InteractCount {
+    Integer tid;
+    Integer count;
+}
@@ -2,6 +2,7 @@ package cn.gugufish.entity.dto;
 
 import cn.gugufish.entity.BaseData;
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -17,4 +18,6 @@ public class Notification implements BaseData {
     String type;
     String url;
     String time;
+    @TableField("is_read")
+    Boolean read;
 }
\ No newline at end of file
@@ -19,4 +19,8 @@ public class Topic {
     Integer uid;
     Integer top;
     Integer locked;
+    Integer likeCount;
+    Integer collectCount;
+    String previewText;
+    String previewImages;
 }
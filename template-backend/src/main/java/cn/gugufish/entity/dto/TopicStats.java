@@ -0,0 +1,17 @@
+package cn.gugufish.entity.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 帖子的可变统计数据，缓存在Redis哈希中并随评论、点赞、收藏增量更新
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TopicStats {
+    long comments;
+    long like;
+    long collect;
+}
@@ -0,0 +1,20 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * @param <T> 列表元素类型
+ */
+@Data
+@AllArgsConstructor
+public class CursorPageVO<T> {
+    List<T> list;
+    /**
+     * 下一页游标，为null表示已经没有更多数据
+     */
+    String next;
+}
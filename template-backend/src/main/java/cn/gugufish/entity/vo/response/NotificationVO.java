@@ -12,4 +12,5 @@ public class NotificationVO {
     String type;
     String url;
     Date time;
+    Boolean read;
 }
\ No newline at end of file
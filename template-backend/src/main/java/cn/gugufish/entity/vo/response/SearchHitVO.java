@@ -0,0 +1,28 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 搜索结果条目，命中的可能是帖子本身，也可能是帖子下的某条评论
+ */
+@Data
+public class SearchHitVO {
+    /**
+     * 命中类型：topic或comment
+     */
+    String kind;
+    Integer tid;
+    /**
+     * 命中评论时为评论ID，否则为null
+     */
+    Integer cid;
+    Integer type;
+    String title;
+    /**
+     * 带有<em>高亮标记的摘要，其余内容已做HTML转义
+     */
+    String snippet;
+    Date time;
+}
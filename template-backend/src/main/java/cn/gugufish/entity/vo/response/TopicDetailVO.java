@@ -15,6 +15,8 @@ public class TopicDetailVO {
     User user;
     Interact interact;
     Long comments;
+    Long like;
+    Long collect;
     Integer locked;
 
     @Data
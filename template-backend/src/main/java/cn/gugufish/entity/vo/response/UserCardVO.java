@@ -0,0 +1,19 @@
+package cn.gugufish.entity.vo.response;
+
+import lombok.Data;
+
+/**
+ * 用户公开名片，已按照用户的隐私设置过滤，被隐藏的字段为null
+ */
+@Data
+public class UserCardVO {
+    Integer id;
+    String username;
+    String avatar;
+    String desc;
+    Integer gender;
+    String qq;
+    String wechat;
+    String phone;
+    String email;
+}
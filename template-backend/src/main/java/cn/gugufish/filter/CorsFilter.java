@@ -123,7 +123,10 @@ public class CorsFilter extends HttpFilter {
         response.addHeader("Access-Control-Allow-Methods", this.resolveMethod());
         
         // 设置允许的请求头（包含常用的认证和内容类型头）
-        response.addHeader("Access-Control-Allow-Headers", "Authorization, Content-Type");
+        response.addHeader("Access-Control-Allow-Headers", "Authorization, Content-Type, If-None-Match");
+        
+        // 暴露ETag响应头，前端才能在后续请求中携带If-None-Match
+        response.addHeader("Access-Control-Expose-Headers", "ETag");
         
         // 根据配置决定是否允许发送凭据
         if(credentials) {
@@ -2,8 +2,9 @@ package cn.gugufish.filter;
 
 import cn.gugufish.entity.RestBean;
 import cn.gugufish.utils.Const;
-import cn.gugufish.utils.FlowUtils;
-import cn.gugufish.utils.IpUtils;
+import cn.gugufish.utils.IpAddress;
+import cn.gugufish.utils.IpPolicy;
+import cn.gugufish.utils.LocalFlowLimiter;
 import jakarta.annotation.Resource;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -11,9 +12,7 @@ import jakarta.servlet.http.HttpFilter;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -26,6 +25,8 @@ import java.io.PrintWriter;
  * - spring.web.flow.limit: 时间窗口内最大请求次数
  * - spring.web.flow.period: 统计时间窗口（秒）
  * - spring.web.flow.block: 超限后的封禁时间（秒）
+ * - spring.web.flow.local-fraction: 每次同步后本地可放行的请求数占配额的比例
+ * - spring.web.flow.policy-file: IP策略文件，按网段配置放行、拒绝、限流与受信任代理
  * 
  * @author GuguFish
  */
@@ -35,36 +36,18 @@ import java.io.PrintWriter;
 public class FlowLimitingFilter extends HttpFilter {
 
     /**
-     * Redis模板，用于存储限流计数器和封禁列表
-     * 实现分布式环境下的统一流量控制
+     * 本地令牌桶限流器
+     * 正常流量在本地放行，只在令牌耗尽或定时同步时访问Redis
      */
     @Resource
-    StringRedisTemplate template;
-    
-    /**
-     * 指定时间窗口内允许的最大请求次数
-     */
-    @Value("${spring.web.flow.limit}")
-    int limit;
-    
-    /**
-     * 限流统计的时间窗口长度（秒）
-     */
-    @Value("${spring.web.flow.period}")
-    int period;
-    
-    /**
-     * 超出请求限制后的封禁时长（秒）
-     */
-    @Value("${spring.web.flow.block}")
-    int block;
+    LocalFlowLimiter limiter;
 
     /**
-     * 流量控制工具类
-     * 提供限流算法的具体实现
+     * IP访问策略
+     * 提供受信任代理判断以及按网段的放行、拒绝、限流规则
      */
     @Resource
-    FlowUtils utils;
+    IpPolicy policy;
 
     /**
      * 过滤器核心方法
@@ -78,11 +61,11 @@ public class FlowLimitingFilter extends HttpFilter {
      */
     @Override
     protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws IOException, ServletException {
-        // 获取客户端真实IP地址（支持Nginx反向代理）
-        String address = IpUtils.getRealClientIp(request);
+        // 获取客户端真实地址，只采信受信任代理转发的请求头
+        IpAddress address = policy.resolveClient(request);
         
-        // 检查IP的请求频率，如果超出限制则拒绝请求
-        if (!tryCount(address)) {
+        // 根据地址所在网段的规则进行放行、拒绝或限流检查
+        if (address == null ? !limiter.tryAcquire(request.getRemoteAddr()) : !tryCount(address)) {
             this.writeBlockMessage(response);
         } else {
             // 请求频率正常，继续执行后续过滤器
@@ -92,25 +75,23 @@ public class FlowLimitingFilter extends HttpFilter {
 
     /**
      * 尝试对指定IP地址进行请求计数和限流检查
-     * 使用Redis分布式锁确保计数的原子性和准确性
+     * 先在前缀树中查找地址匹配的规则：放行规则直接通过，拒绝规则直接拦截，
+     * 网段限流规则将整个网段作为一个客户端计数，没有规则时按单个地址计数。
+     * 计数先消耗本地令牌，令牌耗尽时才与Redis共享计数同步
      * 
      * @param address 客户端IP地址
      * @return true表示允许请求，false表示请求被限制
      */
-    private boolean tryCount(String address) {
-        // 使用IP地址的内部字符串作为锁对象，确保同一IP的并发安全
-        synchronized (address.intern()) {
-            // 检查IP是否已被封禁
-            if(template.hasKey(Const.FLOW_LIMIT_BLOCK + address))
-                return false;
-                
-            // 构建Redis键名
-            String counterKey = Const.FLOW_LIMIT_COUNTER + address;  // 计数器键
-            String blockKey = Const.FLOW_LIMIT_BLOCK + address;      // 封禁键
-            
-            // 调用限流工具类进行周期性限流检查
-            return utils.limitPeriodCheck(counterKey, blockKey, block, limit, period);
-        }
+    private boolean tryCount(IpAddress address) {
+        IpPolicy.Rule rule = policy.match(address);
+        if(rule == null)
+            return limiter.tryAcquire(address.toKey());
+        return switch (rule.action()) {
+            case ALLOW -> true;
+            case DENY -> false;
+            case LIMIT -> limiter.tryAcquire(address.mask(rule.prefix()).toKey() + "/" + rule.prefix(),
+                    rule.limit(), rule.period());
+        };
     }
 
     /**
@@ -54,8 +54,9 @@ public class RequestLogFilter extends OncePerRequestFilter {
      * - /swagger-ui: Swagger UI界面资源
      * - /v3/api-docs: OpenAPI文档接口
      * - /images: 图片静态资源
+     * - /api/notification/stream: 通知推送长连接，缓存响应内容会导致事件无法及时送达
      */
-    private final Set<String> ignores = Set.of("/swagger-ui", "/v3/api-docs", "/images");
+    private final Set<String> ignores = Set.of("/swagger-ui", "/v3/api-docs", "/images", "/api/notification/stream");
 
     /**
      * 核心过滤方法
@@ -0,0 +1,116 @@
+package cn.gugufish.interceptor;
+
+import cn.gugufish.annotation.RateLimit;
+import cn.gugufish.entity.RestBean;
+import cn.gugufish.utils.*;
+import jakarta.annotation.Resource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 接口级限流拦截器
+ * 启动完成后遍历所有请求映射，将带有{@link RateLimit}注解的方法预先解析为限流策略，
+ * 请求到达时只需按处理方法查表，没有策略的接口直接放行，不做任何反射操作
+ *
+ * @author GuguFish
+ */
+@Slf4j
+@Component
+public class RateLimitInterceptor implements HandlerInterceptor, SmartInitializingSingleton {
+
+    /**
+     * 预先解析好的限流策略
+     * @param prefix 计数键前缀
+     * @param key 计数主体
+     * @param permits 计数周期内允许的请求次数
+     * @param window 计数周期（秒）
+     * @param burst 每秒最多允许的请求次数，0表示不限制
+     * @param message 超出限制时的提示
+     */
+    record Policy(String prefix, RateLimit.Key key, int permits, int window, int burst, String message) {}
+
+    /**
+     * 表示接口没有配置限流，避免在表中存放null
+     */
+    private static final Policy NONE = new Policy("", RateLimit.Key.IP, 0, 0, 0, "");
+
+    @Resource
+    ApplicationContext context;
+
+    @Resource
+    FlowUtils utils;
+
+    @Resource
+    IpPolicy ipPolicy;
+
+    private final Map<Method, Policy> policies = new ConcurrentHashMap<>();
+
+    /**
+     * 所有单例创建完成后预先解析全部接口的限流策略
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        context.getBeansOfType(RequestMappingHandlerMapping.class).values()
+                .forEach(mapping -> mapping.getHandlerMethods().values()
+                        .forEach(handler -> policies.put(handler.getMethod(), resolve(handler.getMethod()))));
+        long count = policies.values().stream().filter(policy -> policy != NONE).count();
+        log.info("已加载{}个接口的限流策略", count);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        if(!(handler instanceof HandlerMethod method)) return true;
+        Policy policy = policies.computeIfAbsent(method.getMethod(), RateLimitInterceptor::resolve);
+        if(policy == NONE) return true;
+        String subject = this.subject(policy, request);
+        boolean pass = (policy.burst() <= 0 ||
+                utils.limitPeriodCounterCheck(policy.prefix() + "burst:" + subject, policy.burst(), 1))
+                && utils.limitPeriodCounterCheck(policy.prefix() + subject, policy.permits(), policy.window());
+        if(!pass) {
+            response.setStatus(429);
+            response.setContentType("application/json;charset=utf-8");
+            response.getWriter().write(RestBean.failure(429, policy.message()).asJsonString());
+        }
+        return pass;
+    }
+
+    /**
+     * 确定计数主体，按用户计数但请求未登录时退回按IP计数
+     */
+    private String subject(Policy policy, HttpServletRequest request) {
+        if(policy.key() == RateLimit.Key.USER && request.getAttribute(Const.ATTR_USER_ID) instanceof Integer id)
+            return id.toString();
+        return Optional.ofNullable(ipPolicy.resolveClient(request))
+                .map(IpAddress::toKey)
+                .orElseGet(request::getRemoteAddr);
+    }
+
+    /**
+     * 将方法上的注解解析为限流策略
+     * @param method 处理方法
+     * @return 限流策略，没有注解时返回NONE
+     */
+    static Policy resolve(Method method) {
+        RateLimit limit = method.getAnnotation(RateLimit.class);
+        if(limit == null) return NONE;
+        if(limit.permits() <= 0 || limit.window() <= 0 || limit.burst() < 0)
+            throw new IllegalStateException("限流配置错误：" + method);
+        String prefix = limit.name().isEmpty() ?
+                Const.FLOW_LIMIT_ENDPOINT + method.getDeclaringClass().getSimpleName() + ":" + method.getName() + ":" :
+                limit.name();
+        return new Policy(prefix, limit.key(), limit.permits(), limit.window(), limit.burst(), limit.message());
+    }
+}
@@ -0,0 +1,73 @@
+package cn.gugufish.listener;
+
+import cn.gugufish.entity.dto.CommentCreatedEvent;
+import cn.gugufish.service.NotificationService;
+import cn.gugufish.utils.Const;
+import com.rabbitmq.client.Channel;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 评论通知队列监听器，批量消费评论发表事件并写入通知
+ */
+@Slf4j
+@Component
+public class NotificationQueueListener {
+
+    @Resource
+    NotificationService notificationService;
+
+    /**
+     * 处理一批评论发表事件，使用手动确认：事件并入合并窗口后方法即返回，
+     * 窗口写入数据库之后才确认这批消息，解析失败时整批消息逐条重新入队
+     * @param messages 评论发表事件
+     * @param channel 消费这批消息的信道
+     */
+    @RabbitListener(queues = Const.MQ_NOTIFICATION, containerFactory = "batchListenerFactory", ackMode = "MANUAL")
+    public void handleCommentCreated(List<Message<CommentCreatedEvent>> messages, Channel channel) {
+        List<CommentCreatedEvent> events = messages.stream().map(Message::getPayload).toList();
+        long last = deliveryTag(messages.get(messages.size() - 1));
+        try {
+            int count = notificationService.handleCommentCreated(events, () -> this.ack(channel, last));
+            log.debug("处理评论事件{}条，并入合并窗口的回复{}条", events.size(), count);
+        } catch (RuntimeException e) {
+            log.error("处理评论事件失败，{}条消息重新入队，错误信息：{}", events.size(), e.getMessage());
+            messages.forEach(message -> this.requeue(channel, deliveryTag(message)));
+        }
+    }
+
+    /**
+     * 确认这一批及之前的全部消息，信道已关闭时这些消息会由消息服务器重新投递，
+     * 重新投递的事件不会改变合并窗口
+     */
+    private void ack(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, true);
+        } catch (IOException | RuntimeException e) {
+            log.warn("评论通知消息确认失败，将被重新投递，错误信息：{}", e.getMessage());
+        }
+    }
+
+    /**
+     * 逐条拒绝并重新入队，不能一次拒绝多条，否则会波及之前已并入窗口、等待确认的消息
+     */
+    private void requeue(Channel channel, long deliveryTag) {
+        try {
+            channel.basicNack(deliveryTag, false, true);
+        } catch (IOException | RuntimeException e) {
+            log.warn("评论通知消息重新入队失败，错误信息：{}", e.getMessage());
+        }
+    }
+
+    private static long deliveryTag(Message<?> message) {
+        return Objects.requireNonNull(message.getHeaders().get(AmqpHeaders.DELIVERY_TAG, Long.class));
+    }
+}
@@ -2,8 +2,56 @@ package cn.gugufish.mapper;
 
 import cn.gugufish.entity.dto.Notification;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 @Mapper
 public interface NotificationMapper extends BaseMapper<Notification> {
-}
\ No newline at end of file
+    /**
+     * 多行插入一批通知，一条语句完成，生成的ID会回填到每条通知中
+     * @param list 通知列表，不能为空
+     * @return 插入的行数
+     */
+    @Insert("""
+            <script>
+            insert into db_notification (uid, title, content, type, url) values
+            <foreach collection="list" item="n" separator=",">
+                (#{n.uid}, #{n.title}, #{n.content}, #{n.type}, #{n.url})
+            </foreach>
+            </script>
+            """)
+    @Options(useGeneratedKeys = true, keyProperty = "list.id")
+    int insertBatch(@Param("list") List<Notification> list);
+
+    /**
+     * 更新合并通知的文案并重新标记为未读，合并通知有新的回复时调用
+     * @param id 通知ID
+     * @param content 新的文案
+     * @return 匹配的行数，为0说明通知已被删除
+     */
+    @Update("update db_notification set content = #{content}, is_read = 0 where id = #{id}")
+    int updateCoalesced(@Param("id") int id, @Param("content") String content);
+
+    /**
+     * 将用户的全部未读通知标记为已读，一条语句完成
+     * @param uid 用户ID
+     * @return 被标记的行数
+     */
+    @Update("update db_notification set is_read = 1 where uid = #{uid} and is_read = 0")
+    int markAllRead(int uid);
+
+    /**
+     * 删除用户的一部分通知，清空大量通知时分批调用，避免单条语句长时间锁表
+     * @param uid 用户ID
+     * @param limit 本次最多删除的行数
+     * @return 删除的行数
+     */
+    @Delete("delete from db_notification where uid = #{uid} limit #{limit}")
+    int deleteChunk(@Param("uid") int uid, @Param("limit") int limit);
+}
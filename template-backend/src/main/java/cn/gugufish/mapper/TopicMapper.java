@@ -1,13 +1,16 @@
 package cn.gugufish.mapper;
 
 import cn.gugufish.entity.dto.Interact;
+import cn.gugufish.entity.dto.InteractCount;
 import cn.gugufish.entity.dto.Topic;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Delete;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -38,10 +41,48 @@ public interface TopicMapper extends BaseMapper<Topic> {
             """)
     int interactCount(int tid, String type);
 
+    @Update("""
+            <script>
+                update db_topic set ${type}_count = greatest(${type}_count + case id
+                <foreach collection="counts" item="item">
+                    when #{item.tid} then #{item.count}
+                </foreach>
+                else 0 end, 0) where id in
+                <foreach collection="counts" item="item" open="(" separator="," close=")">
+                    #{item.tid}
+                </foreach>
+            </script>
+            """)
+    int addInteractCount(List<InteractCount> counts, String type);
+
+    @Update("""
+            <script>
+                update db_topic set ${type}_count =
+                    (select count(*) from db_topic_interact_${type} where tid = db_topic.id)
+                <if test="tids != null and !tids.isEmpty()">
+                    where id in
+                    <foreach collection="tids" item="tid" open="(" separator="," close=")">
+                        #{tid}
+                    </foreach>
+                </if>
+            </script>
+            """)
+    int rebuildInteractCount(Collection<Integer> tids, String type);
+
     @Select("""
             select count(*) from db_topic_interact_${type} where tid = #{tid} and uid = #{uid}
             """)
     int userInteractCount(int tid, int uid, String type);
+
+    @Select("""
+            <script>
+                select tid, uid, time, '${type}' as type from db_topic_interact_${type} where tid in
+                <foreach collection="tids" item="tid" open="(" separator="," close=")">
+                    #{tid}
+                </foreach>
+            </script>
+            """)
+    List<Interact> selectInteracts(Collection<Integer> tids, String type);
     @Select("""
             select * from db_topic_interact_collect right join db_topic on tid = db_topic.id
              where db_topic_interact_collect.uid = #{uid}
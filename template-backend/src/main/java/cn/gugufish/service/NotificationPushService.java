@@ -0,0 +1,45 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.vo.response.NotificationVO;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * 通知实时推送服务
+ * 每个用户的SSE连接保存在本节点的注册表中，新通知通过Redis发布/订阅广播到所有节点，
+ * 由持有该用户连接的节点推送给客户端，客户端不再需要轮询通知列表
+ */
+public interface NotificationPushService {
+    /**
+     * 为用户建立一条推送连接，超过单个用户的连接上限时关闭该用户最早的连接
+     * @param uid 用户ID
+     * @return SSE连接
+     */
+    SseEmitter connect(int uid);
+
+    /**
+     * 为用户签发一张推送连接票据，浏览器原生EventSource无法携带请求头，
+     * 改为在连接地址的查询参数中携带票据，票据短时间有效且只能使用一次
+     * @param uid 用户ID
+     * @return 票据
+     */
+    String createTicket(int uid);
+
+    /**
+     * 兑换推送连接票据，兑换后票据立即失效
+     * @param ticket 票据
+     * @return 票据对应的用户ID，票据无效或已过期时返回null
+     */
+    Integer redeemTicket(String ticket);
+
+    /**
+     * 向用户推送一条新通知，用户在任意节点上的连接都会收到
+     * @param uid 用户ID
+     * @param notification 通知内容
+     */
+    void push(int uid, NotificationVO notification);
+
+    /**
+     * 向本节点的所有连接发送心跳，及时发现并清理已经断开的连接
+     */
+    void heartbeat();
+}
@@ -1,6 +1,8 @@
 package cn.gugufish.service;
 
+import cn.gugufish.entity.dto.CommentCreatedEvent;
 import cn.gugufish.entity.dto.Notification;
+import cn.gugufish.entity.vo.response.CursorPageVO;
 import cn.gugufish.entity.vo.response.NotificationVO;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -8,7 +10,13 @@ import java.util.List;
 
 public interface NotificationService extends IService<Notification> {
     List<NotificationVO> findUserNotification(int uid);
+    CursorPageVO<NotificationVO> listUserNotification(int uid, String cursor, int size);
+    long unreadCount(int uid);
+    void markRead(int id, int uid);
+    void markAllRead(int uid);
     void deleteUserNotification(int id, int uid);
     void deleteUserAllNotification(int uid);
     void addNotification(int uid, String title, String content, String type, String url);
+    void publishCommentCreated(CommentCreatedEvent event);
+    int handleCommentCreated(List<CommentCreatedEvent> events, Runnable ack);
 }
\ No newline at end of file
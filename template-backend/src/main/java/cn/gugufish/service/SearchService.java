@@ -0,0 +1,51 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.vo.response.SearchHitVO;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+
+/**
+ * 论坛全文检索服务
+ * 帖子与评论的纯文本保存在本地磁盘上的Lucene倒排索引中，中文按二元组切分，
+ * 发帖、修改、评论、删除时将索引任务放入异步队列，由后台线程批量更新索引
+ */
+public interface SearchService {
+    /**
+     * 将帖子加入索引更新队列，帖子已不存在时会从索引中删除
+     * @param tid 帖子ID
+     */
+    void indexTopic(int tid);
+
+    /**
+     * 从索引中删除帖子及其所有评论
+     * @param tid 帖子ID
+     */
+    void removeTopic(int tid);
+
+    /**
+     * 将评论加入索引更新队列，评论已不存在时会从索引中删除
+     * @param cid 评论ID
+     */
+    void indexComment(int cid);
+
+    /**
+     * 从索引中删除评论
+     * @param cid 评论ID
+     */
+    void removeComment(int cid);
+
+    /**
+     * 搜索帖子与评论
+     * @param keyword 关键词
+     * @param type 帖子分类，0表示不限分类
+     * @param page 页码，从1开始
+     * @param size 每页数量
+     * @return 当前页的搜索结果与命中总数
+     */
+    Page<SearchHitVO> search(String keyword, int type, int page, int size);
+
+    /**
+     * 清空索引并从数据库全量重建
+     * @return 重建的文档数量
+     */
+    int rebuild();
+}
@@ -0,0 +1,37 @@
+package cn.gugufish.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 帖子点赞/收藏计数服务
+ * 计数以增量形式暂存在Redis中，定时批量回写到db_topic的计数列
+ */
+public interface TopicCounterService {
+    /**
+     * 调整指定帖子的计数增量
+     * @param tid 帖子ID
+     * @param type 计数类型，like或collect
+     * @param delta 增量，可以为负数
+     */
+    void increment(int tid, String type, int delta);
+
+    /**
+     * 批量获取尚未回写数据库的计数增量
+     * @param tids 帖子ID列表
+     * @param type 计数类型
+     * @return 帖子ID与增量的映射，没有增量的帖子不会出现在结果中
+     */
+    Map<Integer, Integer> pendingDeltas(Collection<Integer> tids, String type);
+
+    /**
+     * 将Redis中暂存的计数增量批量回写数据库
+     */
+    void flush();
+
+    /**
+     * 根据点赞/收藏表重新统计计数列，用于修复计数偏差
+     * @param tids 需要重建的帖子ID，为null时重建全部帖子
+     */
+    void rebuild(Collection<Integer> tids);
+}
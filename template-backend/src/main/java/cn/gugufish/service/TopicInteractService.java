@@ -0,0 +1,44 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.dto.Interact;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 帖子点赞/收藏记录服务
+ * 用户的操作先原子写入Redis中的待写入哈希，由后台任务批量回写到db_topic_interact_*表
+ */
+public interface TopicInteractService {
+    /**
+     * 记录一次点赞/收藏操作，状态真正发生变化时同时调整帖子的计数增量
+     * @param interact 操作信息
+     * @param state true表示点赞/收藏，false表示取消
+     * @return 状态是否发生了变化
+     * @throws IllegalStateException 位图多次重新加载后仍然过期，操作没有被记录
+     */
+    boolean interact(Interact interact, boolean state);
+
+    /**
+     * 查询用户对帖子的点赞/收藏状态，尚未回写数据库的操作也会被考虑在内
+     * @param tid 帖子ID
+     * @param uid 用户ID
+     * @param type 类型，like或collect
+     * @return 是否已点赞/收藏
+     */
+    boolean hasInteract(int tid, int uid, String type);
+
+    /**
+     * 批量查询用户对多个帖子的点赞/收藏状态
+     * @param tids 帖子ID集合
+     * @param uid 用户ID
+     * @param type 类型，like或collect
+     * @return 帖子ID与状态的映射，包含所有传入的帖子
+     */
+    Map<Integer, Boolean> interactStates(Collection<Integer> tids, int uid, String type);
+
+    /**
+     * 将Redis中暂存的操作批量回写数据库
+     */
+    void flush();
+}
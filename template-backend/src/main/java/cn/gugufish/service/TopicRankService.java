@@ -0,0 +1,37 @@
+package cn.gugufish.service;
+
+import java.util.List;
+
+/**
+ * 热门帖子排行服务
+ * 帖子的热度由点赞、收藏、评论、浏览等事件按时间衰减后累加得到，
+ * 每次事件只增量更新Redis有序集合中的一个分数，读取排行时不需要任何聚合查询
+ */
+public interface TopicRankService {
+    /**
+     * 记录一次影响热度的事件
+     * @param tid 帖子ID
+     * @param event 事件类型：create、view、like、collect、comment
+     * @param times 次数，只有正数会被计入：分数按事件发生的时间折算，
+     *              取消点赞/收藏时按当前时间扣减会远多于当初加上的分数，因此取消操作不回退热度
+     */
+    void record(int tid, String event, int times);
+
+    /**
+     * 获取热度最高的帖子
+     * @param size 数量
+     * @return 帖子ID列表，按热度从高到低排列
+     */
+    List<Integer> top(int size);
+
+    /**
+     * 将帖子移出排行，在删除帖子时调用
+     * @param tid 帖子ID
+     */
+    void remove(int tid);
+
+    /**
+     * 整理排行：将所有分数换算到当前时间基准，并只保留排名靠前的帖子
+     */
+    void compact();
+}
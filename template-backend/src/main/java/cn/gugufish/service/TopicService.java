@@ -1,12 +1,14 @@
 package cn.gugufish.service;
 
 import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicStats;
 import cn.gugufish.entity.dto.TopicType;
 import cn.gugufish.entity.dto.Interact;
 import cn.gugufish.entity.vo.request.AddCommentVO;
 import cn.gugufish.entity.vo.request.TopicCreateVO;
 import cn.gugufish.entity.vo.request.TopicUpdateVO;
 import cn.gugufish.entity.vo.response.CommentVO;
+import cn.gugufish.entity.vo.response.CursorPageVO;
 import cn.gugufish.entity.vo.response.TopicDetailVO;
 import cn.gugufish.entity.vo.response.TopicPreviewVO;
 import cn.gugufish.entity.vo.response.TopicTopVO;
@@ -14,21 +16,42 @@ import com.alibaba.fastjson2.JSONObject;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 import java.util.List;
+import java.util.Map;
 
 public interface TopicService extends IService<Topic> {
     List<TopicType> listTypes();
     String createTopic(int uid, TopicCreateVO vo);
     JSONObject listAllTopicByPage(int page, int type);
     List<TopicPreviewVO> listTopicByPage(int page, int type);
+    CursorPageVO<TopicPreviewVO> listTopicByCursor(String cursor, int type);
+    CursorPageVO<TopicPreviewVO> listAllTopicByCursor(String cursor, int size);
     List<TopicTopVO> listTopTopics();
-    TopicDetailVO getTopic(int tid, int uid);
-    void interact(Interact interact, boolean state);
+    List<TopicPreviewVO> listHotTopics(int size);
+    TopicDetailVO getTopic(int tid, TopicVersion version);
+    void recordView(int tid);
+    String interact(Interact interact, boolean state);
+    Map<Integer, TopicDetailVO.Interact> interactStates(List<Integer> tids, int uid);
     List<TopicPreviewVO> listTopicCollects(int uid);
     String updateTopic(int uid, TopicUpdateVO vo);
     String createComment(int uid, AddCommentVO vo);
     List<CommentVO> comments(int tid, int pageNumber);
+    CursorPageVO<CommentVO> commentsByCursor(int tid, String cursor, int size);
     void deleteComment(int id, int uid);
     void deleteTopic(int id);
     void setTopicTop(int tid, boolean top);
     void setTopicLocked(int tid, boolean locked);
+    void rebuildInteractCounters();
+    int backfillPreview();
+    String topicListVersion(int page, int type);
+    String topTopicsVersion();
+    String typesVersion();
+    TopicVersion topicVersion(int tid, int uid);
+
+    /**
+     * 帖子详情的版本号，以及计算时读到的统计数据与互动状态，版本号不匹配时直接用于组装详情
+     * @param etag 版本号
+     * @param stats 统计数据
+     * @param interact 当前用户的互动状态
+     */
+    record TopicVersion(String etag, TopicStats stats, TopicDetailVO.Interact interact) {}
 }
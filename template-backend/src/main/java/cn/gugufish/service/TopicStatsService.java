@@ -0,0 +1,36 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.dto.TopicStats;
+
+/**
+ * 帖子统计数据服务
+ * 评论数、点赞数、收藏数缓存在Redis哈希中，首次读取时从数据库计算，之后随操作增量调整
+ */
+public interface TopicStatsService {
+    /**
+     * 获取帖子的统计数据，缓存不存在时从数据库计算并写入缓存
+     * @param tid 帖子ID
+     * @return 统计数据
+     */
+    TopicStats stats(int tid);
+
+    /**
+     * 增量调整帖子的某项统计数据，缓存不存在时不做调整，并使正在进行的重新计算放弃写入，
+     * 下次读取时会重新计算
+     * @param tid 帖子ID
+     * @param field 统计项，comments、like或collect
+     * @param delta 增量，可以为负数
+     */
+    void adjust(int tid, String field, long delta);
+
+    /**
+     * 删除帖子的统计数据缓存，正在进行的重新计算同样放弃写入
+     * @param tid 帖子ID
+     */
+    void evict(int tid);
+
+    /**
+     * 删除所有帖子的统计数据缓存，在重新统计计数列之后调用
+     */
+    void evictAll();
+}
@@ -0,0 +1,34 @@
+package cn.gugufish.service;
+
+import cn.gugufish.entity.vo.response.UserCardVO;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 用户名片服务
+ * 将账户、详细信息与隐私设置合并为已经过滤好的公开名片并缓存，
+ * 帖子详情、评论列表等需要展示用户信息的地方统一从这里获取
+ */
+public interface UserCardService {
+    /**
+     * 获取单个用户的名片
+     * @param uid 用户ID
+     * @return 用户名片，用户不存在时返回null
+     */
+    UserCardVO card(int uid);
+
+    /**
+     * 批量获取用户名片，未命中缓存的用户一次性查询数据库
+     * @param uids 用户ID集合
+     * @return 用户ID与名片的映射，不存在的用户不会出现在结果中
+     */
+    Map<Integer, UserCardVO> cards(Collection<Integer> uids);
+
+    /**
+     * 使用户名片缓存失效，在用户名、头像、邮箱、详细信息或隐私设置变更后调用
+     * 处于事务中时会在事务提交后才失效，避免其他请求在提交前读取旧数据重新写入缓存
+     * @param uid 用户ID
+     */
+    void evict(int uid);
+}
@@ -2,6 +2,7 @@ package cn.gugufish.service;
 
 import cn.gugufish.entity.dto.VisitStatistics;
 import cn.gugufish.mapper.VisitStatisticsMapper;
+import cn.gugufish.utils.CacheUtils;
 import cn.gugufish.utils.Const;
 import lombok.extern.slf4j.Slf4j;
 import net.agkn.hll.HLL;
@@ -15,7 +16,6 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Base64;
 import java.util.Date;
-import java.util.Set;
 
 /**
  * 访问统计定时任务服务
@@ -49,6 +49,13 @@ public class VisitStatisticsScheduleService {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
     
+    /**
+     * 缓存工具类
+     * 用于以SCAN方式增量遍历Redis键，清理过期数据
+     */
+    @Resource
+    private CacheUtils cacheUtils;
+    
     /**
      * Redis缓存键前缀定义
      * 
@@ -157,48 +164,12 @@ public class VisitStatisticsScheduleService {
             LocalDate cutoffDate = LocalDate.now().minusDays(7);
             
             // 第一步：清理PV（页面访问量）相关的过期数据
-            // 使用通配符查找所有PV键，格式如：visit:pv:2024-01-01
-            Set<String> pvKeys = stringRedisTemplate.keys(Const.REDIS_PV_KEY + "*");
-            if (pvKeys != null) {
-                for (String key : pvKeys) {
-                    // 从键名中提取日期字符串（去掉前缀部分）
-                    String dateStr = key.substring(REDIS_PV_KEY.length());
-                    try {
-                        // 将日期字符串解析为LocalDate对象
-                        LocalDate keyDate = LocalDate.parse(dateStr);
-                        // 如果该日期早于截止日期，则删除对应的Redis键
-                        if (keyDate.isBefore(cutoffDate)) {
-                            stringRedisTemplate.delete(key);
-                            log.debug("删除过期PV数据: {}", key);
-                        }
-                    } catch (Exception e) {
-                        // 日期解析失败可能是因为键名格式不正确，记录警告并跳过
-                        log.warn("解析日期失败，跳过键: {}", key);
-                    }
-                }
-            }
+            // 使用SCAN增量遍历所有PV键，格式如：visit:pv:2024-01-01
+            cleanupExpiredKeys(Const.REDIS_PV_KEY, cutoffDate, "PV");
             
             // 第二步：清理UV（独立访客数）相关的过期数据
-            // 使用通配符查找所有UV键，格式如：visit:uv:hll:2024-01-01
-            Set<String> uvKeys = stringRedisTemplate.keys(REDIS_UV_HLL_KEY + "*");
-            if (uvKeys != null) {
-                for (String key : uvKeys) {
-                    // 从键名中提取日期字符串（去掉前缀部分）
-                    String dateStr = key.substring(REDIS_UV_HLL_KEY.length());
-                    try {
-                        // 将日期字符串解析为LocalDate对象
-                        LocalDate keyDate = LocalDate.parse(dateStr);
-                        // 如果该日期早于截止日期，则删除对应的Redis键
-                        if (keyDate.isBefore(cutoffDate)) {
-                            stringRedisTemplate.delete(key);
-                            log.debug("删除过期UV数据: {}", key);
-                        }
-                    } catch (Exception e) {
-                        // 日期解析失败可能是因为键名格式不正确，记录警告并跳过
-                        log.warn("解析日期失败，跳过键: {}", key);
-                    }
-                }
-            }
+            // 使用SCAN增量遍历所有UV键，格式如：visit:uv:hll:2024-01-01
+            cleanupExpiredKeys(Const.REDIS_UV_HLL_KEY, cutoffDate, "UV");
             
             log.info("Redis过期数据清理任务完成");
         } catch (Exception e) {
@@ -206,6 +177,32 @@ public class VisitStatisticsScheduleService {
         }
     }
     
+    /**
+     * 清理指定前缀下日期早于截止日期的统计键
+     * 
+     * 使用SCAN命令分批遍历，避免KEYS命令在键数量较多时阻塞Redis
+     * 
+     * @param prefix 键前缀，键名格式为：前缀 + 日期
+     * @param cutoffDate 截止日期，早于该日期的键将被删除
+     * @param label 日志中显示的数据类型名称
+     */
+    private void cleanupExpiredKeys(String prefix, LocalDate cutoffDate, String label) {
+        cacheUtils.scanKeys(prefix + "*", key -> {
+            // 从键名中提取日期字符串（去掉前缀部分）
+            String dateStr = key.substring(prefix.length());
+            try {
+                // 如果该日期早于截止日期，则删除对应的Redis键
+                if (LocalDate.parse(dateStr).isBefore(cutoffDate)) {
+                    stringRedisTemplate.delete(key);
+                    log.debug("删除过期{}数据: {}", label, key);
+                }
+            } catch (Exception e) {
+                // 日期解析失败可能是因为键名格式不正确，记录警告并跳过
+                log.warn("解析日期失败，跳过键: {}", key);
+            }
+        });
+    }
+    
     /**
      * 同步指定日期的统计数据（核心业务方法）
      * 
@@ -6,6 +6,8 @@ import cn.gugufish.entity.vo.request.DetailsSaveVO;
 import cn.gugufish.mapper.AccountDetailsMapper;
 import cn.gugufish.service.AccountDetailsService;
 import cn.gugufish.service.AccountService;
+import cn.gugufish.service.UserCardService;
+import cn.gugufish.utils.KeyedLock;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import jakarta.annotation.Resource;
 import org.springframework.stereotype.Service;
@@ -16,28 +18,39 @@ public class AccountDetailsServiceImpl extends ServiceImpl<AccountDetailsMapper,
 
     @Resource
     AccountService service;
+    @Resource
+    UserCardService userCardService;
     @Override
     public AccountDetails findAccountDetailsById(int id) {
         return this.getById(id);
     }
 
+    /**
+     * 修改用户名时需要先检查重名再更新，按目标用户名加锁，
+     * 只有抢同一个用户名的请求才会互相等待，其他用户的保存操作不受影响
+     */
+    private final KeyedLock usernameLock = new KeyedLock(64);
+
     @Override
     @Transactional
-    public synchronized boolean saveAccountDetails(int id, DetailsSaveVO vo) {
-        Account account =service.findAccountByNameOrEmail(vo.getUsername());
-        if (account==null || account.getId() == id){
-            if(service.update()
-                    .eq("id",id)
-                    .set("username",vo.getUsername())
-                    .update()){
-                this.saveOrUpdate(new AccountDetails(
-                        id,vo.getGender(),vo.getPhone(),vo.getQq(),vo.getWechat(),vo.getDesc()
-                ));
-                return true;
-            }
+    public boolean saveAccountDetails(int id, DetailsSaveVO vo) {
+        return usernameLock.withLock(vo.getUsername(), () -> {
+            Account account =service.findAccountByNameOrEmail(vo.getUsername());
+            if (account==null || account.getId() == id){
+                if(service.update()
+                        .eq("id",id)
+                        .set("username",vo.getUsername())
+                        .update()){
+                    this.saveOrUpdate(new AccountDetails(
+                            id,vo.getGender(),vo.getPhone(),vo.getQq(),vo.getWechat(),vo.getDesc()
+                    ));
+                    userCardService.evict(id);
+                    return true;
+                }
 
 
-        }
-        return false;
+            }
+            return false;
+        });
     }
 }
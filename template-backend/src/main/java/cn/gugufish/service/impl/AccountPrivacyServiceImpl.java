@@ -4,7 +4,9 @@ import cn.gugufish.entity.dto.AccountPrivacy;
 import cn.gugufish.entity.vo.request.PrivacySaveVO;
 import cn.gugufish.mapper.AccountPrivacyMapper;
 import cn.gugufish.service.AccountPrivacyService;
+import cn.gugufish.service.UserCardService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import jakarta.annotation.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -12,6 +14,10 @@ import java.util.Optional;
 
 @Service
 public class AccountPrivacyServiceImpl extends ServiceImpl<AccountPrivacyMapper, AccountPrivacy> implements AccountPrivacyService {
+
+    @Resource
+    UserCardService userCardService;
+
     @Override
     @Transactional
     public void savePrivacy(int id, PrivacySaveVO vo){
@@ -25,6 +31,7 @@ public class AccountPrivacyServiceImpl extends ServiceImpl<AccountPrivacyMapper,
             case "gender" -> privacy.setGender(status);
         }
         this.saveOrUpdate(privacy);
+        userCardService.evict(id);
     }
     public AccountPrivacy accountPrivacy(int id){
         AccountPrivacy privacy = Optional.ofNullable(this.getById(id)).orElse(new AccountPrivacy(id));
@@ -9,6 +9,7 @@ import cn.gugufish.mapper.AccountMapper;
 import cn.gugufish.mapper.AccountPrivacyMapper;
 import cn.gugufish.service.AccountService;
 import cn.gugufish.service.EmailService;
+import cn.gugufish.service.UserCardService;
 import cn.gugufish.utils.Const;
 import cn.gugufish.utils.FlowUtils;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
@@ -57,6 +58,9 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
     @Resource
     FlowUtils flow;
 
+    @Resource
+    UserCardService userCardService;
+
     /**
      * 从数据库中通过用户名或邮箱查找用户详细信息
      * @param username 用户名
@@ -77,22 +81,21 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
 
     /**
      * 生成注册验证码存入Redis中，并将邮件发送请求提交到消息队列等待发送
+     * 同一IP的并发请求由限流脚本在Redis中原子计数，只有第一个请求能通过，不需要额外加锁
      * @param type 类型
      * @param email 邮件地址
      * @param address 请求IP地址
      * @return 操作结果，null表示正常，否则为错误原因
      */
     public String registerEmailVerifyCode(String type, String email, String address){
-        synchronized (address.intern()) {
-            if(!this.verifyLimit(address))
-                return "请求频繁，请稍后再试";
-            Random random = new Random();
-            int code = random.nextInt(899999) + 100000;
-            emailService.sendVerifyEmail(type, email, code);
-            stringRedisTemplate.opsForValue()
-                    .set(Const.VERIFY_EMAIL_DATA + email, String.valueOf(code), 3, TimeUnit.MINUTES);
-            return null;
-        }
+        if(!this.verifyLimit(address))
+            return "请求频繁，请稍后再试";
+        Random random = new Random();
+        int code = random.nextInt(899999) + 100000;
+        emailService.sendVerifyEmail(type, email, code);
+        stringRedisTemplate.opsForValue()
+                .set(Const.VERIFY_EMAIL_DATA + email, String.valueOf(code), 3, TimeUnit.MINUTES);
+        return null;
     }
 
     /**
@@ -174,6 +177,7 @@ public class AccountServiceImpl extends ServiceImpl<AccountMapper, Account> impl
         this.update().set("email", email)
                 .eq("id",id)
                 .update();
+        userCardService.evict(id);
         return null;
     }
     /**
@@ -5,8 +5,7 @@ import cn.gugufish.entity.dto.StoreImage;
 import cn.gugufish.mapper.AccountMapper;
 import cn.gugufish.mapper.ImageStoreMapper;
 import cn.gugufish.service.ImageService;
-import cn.gugufish.utils.Const;
-import cn.gugufish.utils.FlowUtils;
+import cn.gugufish.service.UserCardService;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import io.minio.*;
@@ -29,7 +28,7 @@ public class ImageServiceImpl extends ServiceImpl<ImageStoreMapper, StoreImage>
     @Resource
     AccountMapper accountMapper;
     @Resource
-    FlowUtils flowUtils;
+    UserCardService userCardService;
 
     private final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
     @Override
@@ -47,6 +46,7 @@ public class ImageServiceImpl extends ServiceImpl<ImageStoreMapper, StoreImage>
             if(accountMapper.update(null, Wrappers.<Account>update()
                     .eq("id",id).set("avatar",imageName))>0){
                 this.deleteOldAvatar(avatar);
+                userCardService.evict(id);
                 return imageName;
             }
             else{
@@ -59,9 +59,6 @@ public class ImageServiceImpl extends ServiceImpl<ImageStoreMapper, StoreImage>
     }
     @Override
     public String uploadImage(int id , MultipartFile file) throws IOException {
-        String key = Const.FORUM_IMAGE_COUNTER + id;
-        if(!flowUtils.limitPeriodCounterCheck(key, 20, 3600))
-            return null;
         String imageName = UUID.randomUUID().toString().replace("-", "");
         Date date = new Date();
         imageName = "/cache/" + format.format(date) + "/" + imageName;
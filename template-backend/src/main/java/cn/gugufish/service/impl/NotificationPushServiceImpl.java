@@ -0,0 +1,152 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.vo.response.NotificationVO;
+import cn.gugufish.service.NotificationPushService;
+import cn.gugufish.utils.Const;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Service
+public class NotificationPushServiceImpl implements NotificationPushService {
+
+    /**
+     * 单个用户在一个节点上最多保持的连接数（多个标签页、多个设备）
+     */
+    static final int MAX_CONNECTIONS_PER_USER = 5;
+
+    /**
+     * 连接超时时间（毫秒），超时后由客户端自动重连，避免异常断开的连接长期残留
+     */
+    private static final long EMITTER_TIMEOUT = 30 * 60 * 1000;
+
+    /**
+     * 推送连接票据的有效时间（秒），只需覆盖从签发到打开连接的间隔
+     */
+    private static final long TICKET_EXPIRE = 30;
+
+    @Resource
+    StringRedisTemplate template;
+
+    @Resource
+    RedisMessageListenerContainer container;
+
+    /**
+     * 本节点持有的连接，键为用户ID，列表按建立时间排列
+     * SSE基于异步Servlet，空闲连接只占用注册表中的一个对象，不占用线程
+     */
+    final Map<Integer, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅通知推送频道
+     */
+    @PostConstruct
+    private void subscribePush() {
+        container.addMessageListener((message, pattern) ->
+                this.handlePush(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(Const.NOTIFICATION_CHANNEL));
+    }
+
+    @Override
+    public SseEmitter connect(int uid) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT);
+        emitter.onCompletion(() -> this.unregister(uid, emitter));
+        emitter.onTimeout(() -> this.unregister(uid, emitter));
+        emitter.onError(ex -> this.unregister(uid, emitter));
+        List<SseEmitter> evicted = new CopyOnWriteArrayList<>();
+        emitters.compute(uid, (key, list) -> {
+            if(list == null) list = new CopyOnWriteArrayList<>();
+            while (list.size() >= MAX_CONNECTIONS_PER_USER)
+                evicted.add(list.remove(0));
+            list.add(emitter);
+            return list;
+        });
+        evicted.forEach(SseEmitter::complete);
+        this.send(uid, emitter, SseEmitter.event().comment("connected"));
+        return emitter;
+    }
+
+    @Override
+    public String createTicket(int uid) {
+        String ticket = UUID.randomUUID().toString().replace("-", "");
+        template.opsForValue().set(Const.NOTIFICATION_TICKET + ticket, String.valueOf(uid), TICKET_EXPIRE, TimeUnit.SECONDS);
+        return ticket;
+    }
+
+    @Override
+    public Integer redeemTicket(String ticket) {
+        if(ticket == null || ticket.isBlank()) return null;
+        String uid = template.opsForValue().getAndDelete(Const.NOTIFICATION_TICKET + ticket);
+        return uid == null ? null : Integer.valueOf(uid);
+    }
+
+    @Override
+    public void push(int uid, NotificationVO notification) {
+        JSONObject object = new JSONObject();
+        object.put("uid", uid);
+        object.put("notification", notification);
+        template.convertAndSend(Const.NOTIFICATION_CHANNEL, object.toJSONString());
+    }
+
+    /**
+     * 每25秒发送一次心跳注释，保持经过代理的空闲连接不被断开，同时清理已经失效的连接
+     */
+    @Override
+    @Scheduled(fixedDelay = 25000)
+    public void heartbeat() {
+        emitters.forEach((uid, list) ->
+                list.forEach(emitter -> this.send(uid, emitter, SseEmitter.event().comment("ping"))));
+    }
+
+    /**
+     * 处理广播过来的推送消息，只有持有该用户连接的节点才会实际发送
+     * @param message 推送消息
+     */
+    private void handlePush(String message) {
+        JSONObject object = JSONObject.parseObject(message);
+        int uid = object.getIntValue("uid");
+        List<SseEmitter> list = emitters.get(uid);
+        if(list == null || list.isEmpty()) return;
+        NotificationVO notification = object.getObject("notification", NotificationVO.class);
+        list.forEach(emitter -> this.send(uid, emitter, SseEmitter.event()
+                .name("notification")
+                .data(notification, MediaType.APPLICATION_JSON)));
+    }
+
+    /**
+     * 向一条连接发送事件，发送失败说明客户端已断开，直接移除该连接
+     */
+    private void send(int uid, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            this.unregister(uid, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void unregister(int uid, SseEmitter emitter) {
+        emitters.computeIfPresent(uid, (key, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
@@ -1,31 +1,253 @@
 package cn.gugufish.service.impl;
 
+import cn.gugufish.entity.dto.CommentCreatedEvent;
 import cn.gugufish.entity.dto.Notification;
+import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicComment;
+import cn.gugufish.entity.vo.response.CursorPageVO;
 import cn.gugufish.entity.vo.response.NotificationVO;
+import cn.gugufish.entity.vo.response.UserCardVO;
 import cn.gugufish.mapper.NotificationMapper;
+import cn.gugufish.mapper.TopicCommentMapper;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.NotificationPushService;
 import cn.gugufish.service.NotificationService;
+import cn.gugufish.service.UserCardService;
+import cn.gugufish.utils.Const;
+import cn.gugufish.utils.CursorUtils;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class NotificationServiceImpl extends ServiceImpl<NotificationMapper, Notification> implements NotificationService {
+
+    @Resource
+    RabbitTemplate rabbitTemplate;
+
+    @Resource
+    TopicMapper topicMapper;
+
+    @Resource
+    TopicCommentMapper commentMapper;
+
+    @Resource
+    UserCardService userCardService;
+
+    @Resource
+    MeterRegistry registry;
+
+    @Resource
+    StringRedisTemplate template;
+
+    @Resource
+    NotificationPushService pushService;
+
+    /**
+     * 合并窗口写入失败时的最大尝试次数，超过后放弃该窗口并计入丢弃指标
+     */
+    private static final int INSERT_ATTEMPTS = 3;
+
+    /**
+     * 合并窗口长度（毫秒），窗口内同一接收人、同一地址的回复合并为一行通知
+     */
+    private static final long COALESCE_WINDOW = 10 * 60 * 1000;
+
+    /**
+     * 尚未确认的消息达到该数量时由消费线程立即写入一次合并窗口，不再等待定时任务，
+     * 必须小于批量监听容器的预取数量，否则消费者会在定时写入之前停止接收消息
+     */
+    private static final int FLUSH_THRESHOLD = 500;
+
+    /**
+     * 旧版通知列表接口一次返回的最大数量
+     */
+    private static final int LEGACY_LIST_LIMIT = 50;
+
+    /**
+     * 清空通知时每条DELETE语句删除的行数
+     */
+    private static final int DELETE_CHUNK = 1000;
+
+    /**
+     * 未读计数缓存时间（秒）
+     */
+    private static final long UNREAD_EXPIRE = 24 * 3600;
+
+    /**
+     * 未读计数初始化标记的有效时间（秒），需要覆盖一次数据库统计的耗时
+     */
+    private static final long UNREAD_SEED_EXPIRE = 10;
+
+    /**
+     * 写入数据库统计得到的未读计数，只有初始化标记仍是本次统计设置的值时才写入，
+     * 统计期间发生过未读变化时标记已被删除，放弃写入，由下次读取重新统计，
+     * 因此写入的计数不会漏掉、也不会重复计入统计前后发生的变化
+     * KEYS: 未读计数、初始化标记
+     * ARGV: 本次统计的标记值、统计结果、计数缓存时间
+     */
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[2]) == ARGV[1] then
+                redis.call('del', KEYS[2])
+                redis.call('set', KEYS[1], ARGV[2], 'EX', ARGV[3])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * 本节点的回复合并窗口，键为(接收人, 跳转地址, 通知标题)
+     * 各节点独立合并，多个节点同时消费时同一窗口最多对应节点数量的通知行
+     */
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * 已并入合并窗口、等待写入后确认的消息批次，按消费顺序排列，只有写入线程移除
+     */
+    private final Queue<Acknowledgement> acks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 等待确认的消息数量
+     */
+    private final AtomicInteger unacked = new AtomicInteger();
+
+    private Counter published, rejected, inserted, coalesced, retried, dropped;
+
+    @PostConstruct
+    private void initMeters() {
+        published = registry.counter("forum.notification.events", "result", "published");
+        rejected = registry.counter("forum.notification.events", "result", "rejected");
+        inserted = registry.counter("forum.notification.rows", "result", "inserted");
+        coalesced = registry.counter("forum.notification.rows", "result", "coalesced");
+        retried = registry.counter("forum.notification.rows", "result", "retried");
+        dropped = registry.counter("forum.notification.rows", "result", "dropped");
+    }
+
+    /**
+     * 旧版通知列表，只返回最新的一部分通知，完整的收件箱使用游标分页接口
+     * @param uid 用户ID
+     * @return 最新的通知列表，按ID倒序
+     */
     @Override
     public List<NotificationVO> findUserNotification(int uid) {
-        return this.list(Wrappers.<Notification>query().eq("uid", uid))
+        return baseMapper.selectList(Page.of(1, LEGACY_LIST_LIMIT, false),
+                        Wrappers.<Notification>query().eq("uid", uid).orderByDesc("id"))
                 .stream()
                 .map(notification -> notification.asViewObject(NotificationVO.class))
                 .toList();
     }
 
+    /**
+     * 按游标分页获取收件箱，以通知ID倒序排列，翻页代价与页码无关
+     * @param uid 用户ID
+     * @param cursor 上一页返回的游标，为空表示第一页
+     * @param size 每页数量
+     * @return 一页通知与下一页的游标
+     */
+    @Override
+    public CursorPageVO<NotificationVO> listUserNotification(int uid, String cursor, int size) {
+        long[] position = CursorUtils.decode(cursor, 1);
+        QueryWrapper<Notification> wrapper = Wrappers.<Notification>query().eq("uid", uid);
+        if(position != null)
+            wrapper.lt("id", position[0]);
+        wrapper.orderByDesc("id");
+        List<NotificationVO> list = baseMapper.selectList(Page.of(1, size, false), wrapper)
+                .stream()
+                .map(notification -> notification.asViewObject(NotificationVO.class))
+                .toList();
+        String next = list.size() < size ? null : CursorUtils.encode(list.get(list.size() - 1).getId());
+        return new CursorPageVO<>(list, next);
+    }
+
+    /**
+     * 获取未读通知数量，计数缓存在Redis中，只有计数不存在时才统计一次数据库，
+     * 统计前设置初始化标记，统计期间有未读变化时标记被删除，统计结果只返回不写入；
+     * 每次未读变化都删除计数而不是增减，增减无法判断正在写入的统计是否已经包含这次变化
+     * @param uid 用户ID
+     * @return 未读数量
+     */
+    @Override
+    public long unreadCount(int uid) {
+        String key = Const.NOTIFICATION_UNREAD + uid;
+        String cached = template.opsForValue().get(key);
+        if(cached != null) return Long.parseLong(cached);
+        String seedKey = Const.NOTIFICATION_UNREAD_SEED + uid;
+        String token = UUID.randomUUID().toString();
+        template.opsForValue().set(seedKey, token, UNREAD_SEED_EXPIRE, TimeUnit.SECONDS);
+        long count = baseMapper.selectCount(Wrappers.<Notification>query()
+                .eq("uid", uid).eq("is_read", false));
+        template.execute(SEED_SCRIPT, List.of(key, seedKey), token, String.valueOf(count), String.valueOf(UNREAD_EXPIRE));
+        return count;
+    }
+
+    @Override
+    public void markRead(int id, int uid) {
+        boolean changed = this.update(Wrappers.<Notification>update()
+                .set("is_read", true)
+                .eq("id", id).eq("uid", uid).eq("is_read", false));
+        if(changed) this.resetUnread(uid);
+    }
+
+    @Override
+    public void markAllRead(int uid) {
+        baseMapper.markAllRead(uid);
+        this.resetUnread(uid);
+    }
+
+    /**
+     * 删除单条通知，先按未读条件删除以便得知未读计数是否需要失效
+     * @param id 通知ID
+     * @param uid 用户ID
+     */
     public void deleteUserNotification(int id, int uid){
-        this.remove(Wrappers.<Notification>query().eq("id", id).eq("uid", uid));
+        if(this.remove(Wrappers.<Notification>query().eq("id", id).eq("uid", uid).eq("is_read", false)))
+            this.resetUnread(uid);
+        else
+            this.remove(Wrappers.<Notification>query().eq("id", id).eq("uid", uid));
     }
 
+    /**
+     * 清空用户的全部通知，分批删除，每批之间释放表锁，
+     * 避免通知很多的用户一次清空时阻塞其他用户的通知写入
+     * @param uid 用户ID
+     */
     public void deleteUserAllNotification(int uid){
-        this.remove(Wrappers.<Notification>query().eq("uid", uid));
+        int deleted;
+        do {
+            deleted = baseMapper.deleteChunk(uid, DELETE_CHUNK);
+        } while (deleted >= DELETE_CHUNK);
+        this.resetUnread(uid);
+    }
+
+    /**
+     * 未读状态变化写入数据库后删除未读计数与初始化标记，由下次读取重新统计，
+     * 同时使正在进行、可能没有包含这次变化的统计放弃写入
+     * @param uid 用户ID
+     */
+    private void resetUnread(int uid) {
+        template.delete(List.of(Const.NOTIFICATION_UNREAD + uid, Const.NOTIFICATION_UNREAD_SEED + uid));
     }
 
     @Override
@@ -36,6 +258,326 @@ public class NotificationServiceImpl extends ServiceImpl<NotificationMapper, Not
         notification.setContent(content);
         notification.setType(type);
         notification.setUrl(url);
+        notification.setRead(false);
         this.save(notification);
+        this.resetUnread(uid);
+        pushService.push(uid, notification.asViewObject(NotificationVO.class));
+    }
+
+    /**
+     * 发布评论发表事件，发表评论的请求只负责投递，不再等待通知写入
+     * 通知队列有长度上限，队列已满或消息服务器不可用时事件被丢弃并计入指标，
+     * 通知属于尽力送达的附属信息，不应拖慢或阻断评论本身
+     * @param event 评论发表事件
+     */
+    @Override
+    public void publishCommentCreated(CommentCreatedEvent event) {
+        CorrelationData correlation = new CorrelationData(String.valueOf(event.getCid()));
+        correlation.getFuture().whenComplete((confirm, ex) -> {
+            if(ex != null || !confirm.isAck()) {
+                rejected.increment();
+                log.warn("评论通知事件被拒绝，评论ID：{}，原因：{}", event.getCid(),
+                        ex != null ? ex.getMessage() : confirm.getReason());
+            }
+        });
+        try {
+            rabbitTemplate.convertAndSend("", Const.MQ_NOTIFICATION, event, correlation);
+            published.increment();
+        } catch (RuntimeException e) {
+            rejected.increment();
+            log.warn("评论通知事件发布失败，评论ID：{}，错误信息：{}", event.getCid(), e.getMessage());
+        }
+    }
+
+    /**
+     * 处理一批评论发表事件：帖子、被引用的评论、评论者名片各一次批量查询，
+     * 解析出的回复并入各自的合并窗口，由定时任务统一写入数据库，
+     * 写入完成之后才执行确认操作，进程重启或部署时尚未确认的消息会重新投递，不会丢失通知；
+     * 未确认的消息过多时当前线程立即写入一次，避免消费者因预取额度用尽而停顿
+     * @param events 评论发表事件
+     * @param ack 这批消息的确认操作
+     * @return 并入合并窗口的回复数量
+     */
+    @Override
+    public int handleCommentCreated(List<CommentCreatedEvent> events, Runnable ack) {
+        List<Reply> replies = this.resolveCommentReplies(events);
+        replies.forEach(this::coalesce);
+        acks.add(new Acknowledgement(events.size(), ack));
+        if(unacked.addAndGet(events.size()) >= FLUSH_THRESHOLD) {
+            try {
+                this.flushCoalesced();
+            } catch (RuntimeException e) {
+                log.warn("写入通知合并窗口失败，将由定时任务重试，错误信息：{}", e.getMessage());
+            }
+        }
+        return replies.size();
+    }
+
+    /**
+     * 定时写入所有待写入的合并窗口，窗口内陆续到达的回复在两次写入之间合并为一次UPDATE；
+     * 写入前记下已经并入窗口的消息批次，全部窗口写入成功或被放弃后才确认这些消息，
+     * 有窗口等待重试时不确认，下一次写入成功后一并确认
+     */
+    @Scheduled(fixedDelay = 3000)
+    public synchronized void flushCoalesced() {
+        List<Acknowledgement> covered = new ArrayList<>(acks);
+        List<Window> failed = this.persistWindows(windows.keySet());
+        if(this.retryWindows(failed)) {
+            log.warn("有{}个通知合并窗口写入失败，{}批消息暂不确认", failed.size(), covered.size());
+            return;
+        }
+        for (Acknowledgement ack : covered) {
+            acks.poll();
+            unacked.addAndGet(-ack.size());
+            ack.action().run();
+        }
+    }
+
+    /**
+     * 将一条回复并入(接收人, 跳转地址, 通知标题)对应的合并窗口，
+     * 窗口已过期或尚不存在时开启新窗口，新窗口写入时插入一行新通知，
+     * 窗口内后续的回复只更新这一行通知的文案，
+     * 重新投递的事件不改变窗口内容，不会产生多余的写入
+     * @param reply 回复
+     */
+    private void coalesce(Reply reply) {
+        long now = System.currentTimeMillis();
+        String key = Window.key(reply.uid(), reply.url(), reply.title());
+        windows.compute(key, (k, window) -> {
+            if(window == null || (window.openedAt + COALESCE_WINDOW < now && !window.dirty))
+                window = new Window(reply.uid(), reply.title(), reply.url(), reply.format(), now);
+            boolean changed = window.actors.add(reply.actor()) | !reply.actorName().equals(window.latestActor);
+            window.latestActor = reply.actorName();
+            if(changed) window.dirty = true;
+            return window;
+        });
+    }
+
+    /**
+     * 写入一批合并窗口：新开启的窗口用一条多行INSERT写入，已有通知的窗口只更新文案，
+     * 只在持有写入锁时调用，避免多个线程为同一窗口各插入一行通知
+     * @param keys 需要写入的窗口
+     * @return 写入失败的窗口
+     */
+    private List<Window> persistWindows(Collection<String> keys) {
+        List<Window> flushed = new ArrayList<>();
+        List<Notification> rows = new ArrayList<>();
+        for (String key : keys) {
+            windows.computeIfPresent(key, (k, window) -> {
+                if(!window.dirty) return window;
+                window.dirty = false;
+                flushed.add(window);
+                rows.add(window.snapshot());
+                return window;
+            });
+        }
+        List<Window> failed = new ArrayList<>();
+        List<Window> pending = new ArrayList<>();
+        List<Notification> inserts = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Notification row = rows.get(i);
+            if(row.getId() != null) {
+                try {
+                    if(this.updateCoalesced(row)) continue;
+                } catch (RuntimeException e) {
+                    log.warn("更新合并通知失败，通知ID：{}，错误信息：{}", row.getId(), e.getMessage());
+                    failed.add(flushed.get(i));
+                    continue;
+                }
+            }
+            //新窗口，或者通知已被用户删除，需要插入一行
+            row.setId(null);
+            inserts.add(row);
+            pending.add(flushed.get(i));
+        }
+        if(!inserts.isEmpty()) {
+            boolean success = false;
+            try {
+                baseMapper.insertBatch(inserts);
+                inserted.increment(inserts.size());
+                success = true;
+            } catch (RuntimeException e) {
+                log.error("批量写入通知失败，{}条通知将在下次写入时重试，错误信息：{}", inserts.size(), e.getMessage());
+                failed.addAll(pending);
+            }
+            if(success) this.afterInsert(pending, inserts);
+        }
+        return failed;
+    }
+
+    /**
+     * 记录新插入通知的ID，之后同一窗口内的回复只更新这一行
+     * @param pending 新插入的窗口
+     * @param inserts 插入的通知，ID已回填
+     */
+    private void afterInsert(List<Window> pending, List<Notification> inserts) {
+        for (int i = 0; i < inserts.size(); i++) {
+            Window window = pending.get(i);
+            Notification row = inserts.get(i);
+            windows.computeIfPresent(window.key(), (k, w) -> {
+                if(w == window) {
+                    w.id = row.getId();
+                    w.failures = 0;
+                }
+                return w;
+            });
+            this.resetUnread(row.getUid());
+            pushService.push(row.getUid(), row.asViewObject(NotificationVO.class));
+        }
+    }
+
+    /**
+     * 清理已过期且没有待写入内容的合并窗口
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictWindows() {
+        long now = System.currentTimeMillis();
+        windows.forEach((key, value) -> windows.computeIfPresent(key, (k, window) ->
+                !window.dirty && window.openedAt + COALESCE_WINDOW < now ? null : window));
+    }
+
+    /**
+     * 用一条UPDATE更新已有通知的文案并重新标记为未读，
+     * 数据库异常直接抛出，由调用方重新标记窗口待写入
+     * @param row 合并后的通知
+     * @return 通知是否仍然存在
+     */
+    private boolean updateCoalesced(Notification row) {
+        if(baseMapper.updateCoalesced(row.getId(), row.getContent()) == 0) return false;
+        this.resetUnread(row.getUid());
+        coalesced.increment();
+        pushService.push(row.getUid(), row.asViewObject(NotificationVO.class));
+        return true;
+    }
+
+    /**
+     * 将写入失败的窗口重新标记为待写入，失败次数过多的窗口直接丢弃并计入指标，
+     * 丢弃后对应的消息正常确认，避免数据库持续故障时消费者一直停顿
+     * @param failed 写入失败的窗口
+     * @return 是否还有窗口等待重试
+     */
+    private boolean retryWindows(List<Window> failed) {
+        boolean retry = false;
+        for (Window window : failed) {
+            Window remaining = windows.computeIfPresent(window.key(), (k, w) -> {
+                if(w != window) return w;
+                if(++w.failures >= INSERT_ATTEMPTS) {
+                    dropped.increment();
+                    return null;
+                }
+                retried.increment();
+                w.dirty = true;
+                return w;
+            });
+            if(remaining == window) retry = true;
+        }
+        return retry;
+    }
+
+    /**
+     * 为一批评论事件确定通知接收人与文案，规则与原先同步发送时一致：
+     * 引用了其他评论时通知被引用评论的作者，否则通知帖子作者，自己回复自己不发送通知
+     * @param events 评论发表事件
+     * @return 待合并的回复列表
+     */
+    private List<Reply> resolveCommentReplies(List<CommentCreatedEvent> events) {
+        Set<Integer> tids = new HashSet<>(), quotes = new HashSet<>(), uids = new HashSet<>();
+        for (CommentCreatedEvent event : events) {
+            tids.add(event.getTid());
+            uids.add(event.getUid());
+            if(event.getQuote() != null && event.getQuote() > 0)
+                quotes.add(event.getQuote());
+        }
+        Map<Integer, Topic> topics = topicMapper.selectList(Wrappers.<Topic>query()
+                        .select("id", "uid", "title").in("id", tids))
+                .stream().collect(Collectors.toMap(Topic::getId, Function.identity()));
+        Map<Integer, TopicComment> quoted = quotes.isEmpty() ? Map.of() : commentMapper.selectList(Wrappers.<TopicComment>query()
+                        .select("id", "uid", "tid").in("id", quotes))
+                .stream().collect(Collectors.toMap(TopicComment::getId, Function.identity()));
+        Map<Integer, UserCardVO> cards = userCardService.cards(uids);
+        List<Reply> list = new ArrayList<>();
+        for (CommentCreatedEvent event : events) {
+            UserCardVO card = cards.get(event.getUid());
+            if(card == null) continue;
+            if(event.getQuote() != null && event.getQuote() > 0) {
+                TopicComment com = quoted.get(event.getQuote());
+                if(com != null && !Objects.equals(event.getUid(), com.getUid()))
+                    list.add(new Reply(com.getUid(), "您有新的帖子评论回复",
+                            "%s 回复了你发表的评论，快去看看吧！",
+                            "/index/topic-detail/"+com.getTid(), event.getUid(), card.getUsername()));
+            } else {
+                Topic topic = topics.get(event.getTid());
+                if(topic != null && !Objects.equals(event.getUid(), topic.getUid()))
+                    list.add(new Reply(topic.getUid(), "您有新的帖子回复",
+                            "%s 回复了你发表主题: "+topic.getTitle().replace("%", "%%")+"，快去看看吧！",
+                            "/index/topic-detail/"+topic.getId(), event.getUid(), card.getUsername()));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 一条待合并的回复
+     * @param uid 通知接收人
+     * @param title 通知标题
+     * @param format 通知文案格式，%s处填入回复人
+     * @param url 跳转地址
+     * @param actor 回复人ID
+     * @param actorName 回复人用户名
+     */
+    private record Reply(int uid, String title, String format, String url, int actor, String actorName) {}
+
+    /**
+     * 一批等待确认的消息
+     * @param size 消息数量
+     * @param action 确认操作
+     */
+    private record Acknowledgement(int size, Runnable action) {}
+
+    /**
+     * 合并窗口，窗口内同一接收人、同一地址的回复只对应一行通知，
+     * 所有字段只在ConcurrentHashMap的compute中读写
+     */
+    private static class Window {
+        final int uid;
+        final String title, url, format;
+        final long openedAt;
+        final Set<Integer> actors = new HashSet<>();
+        String latestActor;
+        Integer id;
+        boolean dirty;
+        int failures;
+
+        Window(int uid, String title, String url, String format, long openedAt) {
+            this.uid = uid;
+            this.title = title;
+            this.url = url;
+            this.format = format;
+            this.openedAt = openedAt;
+        }
+
+        String key() {
+            return key(uid, url, title);
+        }
+
+        static String key(int uid, String url, String title) {
+            return uid + ":" + url + ":" + title;
+        }
+
+        /**
+         * 生成当前窗口对应的通知，多人回复时显示为"最新回复人 等N人"
+         */
+        Notification snapshot() {
+            Notification notification = new Notification();
+            notification.setId(id);
+            notification.setUid(uid);
+            notification.setTitle(title);
+            notification.setContent(format.formatted(actors.size() > 1 ?
+                    latestActor + " 等" + actors.size() + "人" : latestActor));
+            notification.setType("success");
+            notification.setUrl(url);
+            notification.setRead(false);
+            return notification;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,436 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicComment;
+import cn.gugufish.entity.vo.response.SearchHitVO;
+import cn.gugufish.mapper.TopicCommentMapper;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.SearchService;
+import cn.gugufish.utils.DeltaUtils;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.cjk.CJKAnalyzer;
+import org.apache.lucene.document.*;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.highlight.*;
+import org.apache.lucene.store.FSDirectory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class SearchServiceImpl implements SearchService {
+
+    /**
+     * 索引任务队列容量，队列满时新任务会被丢弃，可以通过全量重建修复
+     */
+    private static final int QUEUE_CAPACITY = 10000;
+
+    /**
+     * 后台线程每批处理的最大任务数量
+     */
+    private static final int INDEX_BATCH_SIZE = 200;
+
+    /**
+     * 全量重建时每次从数据库读取的行数
+     */
+    private static final int REBUILD_BATCH_SIZE = 500;
+
+    /**
+     * 单条文档索引的最大文本长度
+     */
+    private static final int MAX_TEXT_LENGTH = 20000;
+
+    /**
+     * 搜索结果最多允许翻到的页数，更深的翻页没有实际意义且代价随页数线性增长
+     */
+    private static final int MAX_PAGE = 50;
+
+    private static final String KIND_TOPIC = "topic";
+    private static final String KIND_COMMENT = "comment";
+
+    @Value("${spring.search.index-path:./data/search-index}")
+    String indexPath;
+
+    @Resource
+    TopicMapper topicMapper;
+    @Resource
+    TopicCommentMapper commentMapper;
+
+    private final Analyzer analyzer = new CJKAnalyzer();
+    private final BlockingQueue<IndexTask> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private FSDirectory directory;
+    private IndexWriter writer;
+    private SearcherManager searcherManager;
+    private Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * 写索引的锁，后台线程处理每批任务时持有，全量重建期间一直持有，
+     * 重建过程中队列里的任务会暂停处理，重建结束后再按顺序应用
+     */
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    /**
+     * 索引任务
+     * @param kind 文档类型
+     * @param id 帖子或评论ID
+     * @param delete 是否为删除操作
+     */
+    private record IndexTask(String kind, int id, boolean delete) {}
+
+    @PostConstruct
+    private void init() throws IOException {
+        directory = FSDirectory.open(Path.of(indexPath));
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+        writer = new IndexWriter(directory, config);
+        searcherManager = new SearcherManager(writer, null);
+        worker = new Thread(this::processQueue, "search-indexer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 关闭索引，后台线程最多1秒后就会看到停止标记，不能中断它，
+     * 线程在索引写入中途被中断时IndexWriter会被当作发生致命错误而关闭
+     */
+    @PreDestroy
+    private void close() throws IOException, InterruptedException {
+        running = false;
+        worker.join(5000);
+        if(worker.isAlive())
+            log.warn("搜索索引后台线程未能在5秒内结束");
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    @Override
+    public void indexTopic(int tid) {
+        this.enqueue(new IndexTask(KIND_TOPIC, tid, false));
+    }
+
+    @Override
+    public void removeTopic(int tid) {
+        this.enqueue(new IndexTask(KIND_TOPIC, tid, true));
+    }
+
+    @Override
+    public void indexComment(int cid) {
+        this.enqueue(new IndexTask(KIND_COMMENT, cid, false));
+    }
+
+    @Override
+    public void removeComment(int cid) {
+        this.enqueue(new IndexTask(KIND_COMMENT, cid, true));
+    }
+
+    private void enqueue(IndexTask task) {
+        if(!queue.offer(task))
+            log.warn("搜索索引队列已满，丢弃索引任务: {}", task);
+    }
+
+    @Override
+    public Page<SearchHitVO> search(String keyword, int type, int page, int size) {
+        Page<SearchHitVO> result = Page.of(page, size, 0);
+        if(keyword == null || keyword.isBlank() || page > MAX_PAGE) return result;
+        IndexSearcher searcher = null;
+        try {
+            MultiFieldQueryParser parser = new MultiFieldQueryParser(
+                    new String[]{"title", "content"}, analyzer, Map.of("title", 2f, "content", 1f));
+            parser.setDefaultOperator(QueryParser.Operator.AND);
+            Query text = parser.parse(QueryParser.escape(keyword.trim()));
+            BooleanQuery.Builder builder = new BooleanQuery.Builder().add(text, BooleanClause.Occur.MUST);
+            if(type > 0)
+                builder.add(IntPoint.newExactQuery("type", type), BooleanClause.Occur.FILTER);
+            Query query = builder.build();
+            searcherManager.maybeRefresh();
+            searcher = searcherManager.acquire();
+            TopDocs docs = searcher.search(query, page * size);
+            result.setTotal(docs.totalHits.value);
+            Highlighter highlighter = new Highlighter(
+                    new SimpleHTMLFormatter("<em>", "</em>"), new SimpleHTMLEncoder(), new QueryScorer(text));
+            highlighter.setTextFragmenter(new SimpleFragmenter(120));
+            List<SearchHitVO> hits = new ArrayList<>();
+            StoredFields storedFields = searcher.storedFields();
+            for (int i = (page - 1) * size; i < docs.scoreDocs.length; i++) {
+                Document document = storedFields.document(docs.scoreDocs[i].doc);
+                hits.add(this.toHit(document, highlighter));
+            }
+            result.setRecords(hits);
+        } catch (ParseException e) {
+            log.debug("无法解析的搜索关键词: {}", keyword);
+        } catch (IOException | InvalidTokenOffsetsException e) {
+            log.error("搜索时出现问题", e);
+        } finally {
+            if(searcher != null) {
+                try {
+                    searcherManager.release(searcher);
+                } catch (IOException ignored) {}
+            }
+        }
+        return result;
+    }
+
+    private SearchHitVO toHit(Document document, Highlighter highlighter) throws IOException, InvalidTokenOffsetsException {
+        SearchHitVO hit = new SearchHitVO();
+        hit.setKind(document.get("kind"));
+        hit.setTid(document.getField("tid").numericValue().intValue());
+        if(KIND_COMMENT.equals(hit.getKind()))
+            hit.setCid(document.getField("cid").numericValue().intValue());
+        hit.setType(document.getField("type").numericValue().intValue());
+        hit.setTime(new Date(document.getField("time").numericValue().longValue()));
+        if(KIND_TOPIC.equals(hit.getKind())) {
+            String title = document.get("title");
+            String highlightedTitle = highlighter.getBestFragment(analyzer, "title", title);
+            hit.setTitle(highlightedTitle != null ? highlightedTitle : SimpleHTMLEncoder.htmlEncode(title));
+        } else {
+            hit.setTitle(SimpleHTMLEncoder.htmlEncode(document.get("topicTitle")));
+        }
+        String content = document.get("content");
+        String snippet = highlighter.getBestFragment(analyzer, "content", content);
+        if(snippet == null)
+            snippet = SimpleHTMLEncoder.htmlEncode(content.length() > 120 ? content.substring(0, 120) : content);
+        hit.setSnippet(snippet);
+        return hit;
+    }
+
+    /**
+     * 清空索引并从数据库全量重建，重建期间暂停后台线程，
+     * 重建开始后发生的增删改会留在队列中，等重建结束后再应用
+     * @return 重建的文档数量
+     */
+    @Override
+    public int rebuild() {
+        int total = 0;
+        indexLock.lock();
+        try {
+            writer.deleteAll();
+            Map<Integer, Topic> topicIndex = new HashMap<>();
+            int lastId = 0;
+            while (true) {
+                List<Topic> topics = topicMapper.selectList(Page.of(1, REBUILD_BATCH_SIZE, false), Wrappers.<Topic>query()
+                        .select("id", "title", "content", "type", "time")
+                        .gt("id", lastId)
+                        .orderByAsc("id"));
+                if(topics.isEmpty()) break;
+                for (Topic topic : topics) {
+                    writer.updateDocument(new Term("key", KIND_TOPIC + ":" + topic.getId()), this.topicDocument(topic));
+                    Topic brief = new Topic();
+                    brief.setId(topic.getId());
+                    brief.setTitle(topic.getTitle());
+                    brief.setType(topic.getType());
+                    topicIndex.put(topic.getId(), brief);
+                }
+                lastId = topics.get(topics.size() - 1).getId();
+                total += topics.size();
+            }
+            lastId = 0;
+            while (true) {
+                List<TopicComment> comments = commentMapper.selectList(Page.of(1, REBUILD_BATCH_SIZE, false), Wrappers.<TopicComment>query()
+                        .gt("id", lastId)
+                        .orderByAsc("id"));
+                if(comments.isEmpty()) break;
+                for (TopicComment comment : comments) {
+                    Topic topic = topicIndex.get(comment.getTid());
+                    if(topic != null) {
+                        writer.updateDocument(new Term("key", KIND_COMMENT + ":" + comment.getId()),
+                                this.commentDocument(comment, topic));
+                        total++;
+                    }
+                }
+                lastId = comments.get(comments.size() - 1).getId();
+            }
+            writer.commit();
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            log.error("重建搜索索引时出现问题", e);
+        } finally {
+            indexLock.unlock();
+        }
+        log.info("搜索索引重建完成，共{}个文档", total);
+        return total;
+    }
+
+    /**
+     * 定期提交索引，将内存中的修改持久化到磁盘
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void commit() {
+        try {
+            if(writer.hasUncommittedChanges())
+                writer.commit();
+        } catch (IOException e) {
+            log.error("提交搜索索引时出现问题", e);
+        }
+    }
+
+    /**
+     * 后台线程循环处理索引任务，每次取出一批任务合并处理，同一批内只需刷新一次搜索器
+     */
+    private void processQueue() {
+        List<IndexTask> batch = new ArrayList<>(INDEX_BATCH_SIZE);
+        while (running) {
+            try {
+                IndexTask first = queue.poll(1, TimeUnit.SECONDS);
+                if(first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, INDEX_BATCH_SIZE - 1);
+                indexLock.lock();
+                try {
+                    this.applyBatch(batch);
+                } finally {
+                    indexLock.unlock();
+                }
+                searcherManager.maybeRefresh();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("更新搜索索引时出现问题，本批共{}个任务", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 处理一批索引任务，删除立即执行，写入合并后统一查询数据库，
+     * 同一批内后出现的任务覆盖先出现的任务，已删除帖子下的评论不会再被写回
+     * @param batch 按入队顺序排列的任务
+     */
+    private void applyBatch(List<IndexTask> batch) throws IOException {
+        Set<Integer> topicIds = new HashSet<>(), commentIds = new HashSet<>(), removedTopics = new HashSet<>();
+        for (IndexTask task : batch) {
+            if(task.delete()) {
+                if(KIND_TOPIC.equals(task.kind())) {
+                    topicIds.remove(task.id());
+                    removedTopics.add(task.id());
+                    writer.deleteDocuments(new Term("key", KIND_TOPIC + ":" + task.id()));
+                    writer.deleteDocuments(IntPoint.newExactQuery("tid", task.id()));
+                } else {
+                    commentIds.remove(task.id());
+                    writer.deleteDocuments(new Term("key", KIND_COMMENT + ":" + task.id()));
+                }
+            } else if(KIND_TOPIC.equals(task.kind())) {
+                topicIds.add(task.id());
+                removedTopics.remove(task.id());
+            } else {
+                commentIds.add(task.id());
+            }
+        }
+        if(!topicIds.isEmpty()) {
+            Map<Integer, Topic> topics = topicMapper.selectList(Wrappers.<Topic>query()
+                            .select("id", "title", "content", "type", "time")
+                            .in("id", topicIds))
+                    .stream()
+                    .collect(Collectors.toMap(Topic::getId, Function.identity()));
+            for (Integer tid : topicIds) {
+                Term key = new Term("key", KIND_TOPIC + ":" + tid);
+                Topic topic = topics.get(tid);
+                if(topic == null) {
+                    writer.deleteDocuments(key);
+                } else {
+                    writer.updateDocument(key, this.topicDocument(topic));
+                    this.reindexComments(topic);
+                }
+            }
+        }
+        if(!commentIds.isEmpty()) {
+            List<TopicComment> comments = commentMapper.selectByIds(commentIds);
+            Set<Integer> tids = comments.stream().map(TopicComment::getTid).collect(Collectors.toSet());
+            Map<Integer, Topic> topics = tids.isEmpty() ? Map.of() : topicMapper.selectList(Wrappers.<Topic>query()
+                            .select("id", "title", "type")
+                            .in("id", tids))
+                    .stream()
+                    .collect(Collectors.toMap(Topic::getId, Function.identity()));
+            Set<Integer> found = new HashSet<>();
+            for (TopicComment comment : comments) {
+                Topic topic = topics.get(comment.getTid());
+                if(topic == null || removedTopics.contains(topic.getId())) continue;
+                found.add(comment.getId());
+                writer.updateDocument(new Term("key", KIND_COMMENT + ":" + comment.getId()),
+                        this.commentDocument(comment, topic));
+            }
+            for (Integer cid : commentIds) {
+                if(!found.contains(cid))
+                    writer.deleteDocuments(new Term("key", KIND_COMMENT + ":" + cid));
+            }
+        }
+    }
+
+    /**
+     * 重新索引帖子下的全部评论，评论文档中冗余了帖子的分类与标题，
+     * 帖子修改分类或标题后需要同步更新，否则按分类过滤时会返回错误的评论
+     * @param topic 帖子，需要包含ID、标题与分类
+     */
+    private void reindexComments(Topic topic) throws IOException {
+        int lastId = 0;
+        while (true) {
+            List<TopicComment> comments = commentMapper.selectList(Page.of(1, REBUILD_BATCH_SIZE, false), Wrappers.<TopicComment>query()
+                    .eq("tid", topic.getId())
+                    .gt("id", lastId)
+                    .orderByAsc("id"));
+            if(comments.isEmpty()) return;
+            for (TopicComment comment : comments)
+                writer.updateDocument(new Term("key", KIND_COMMENT + ":" + comment.getId()),
+                        this.commentDocument(comment, topic));
+            lastId = comments.get(comments.size() - 1).getId();
+        }
+    }
+
+    private Document topicDocument(Topic topic) {
+        Document document = this.baseDocument(KIND_TOPIC + ":" + topic.getId(), KIND_TOPIC,
+                topic.getId(), topic.getType(), topic.getTime());
+        document.add(new TextField("title", Objects.requireNonNullElse(topic.getTitle(), ""), Field.Store.YES));
+        document.add(new TextField("content", DeltaUtils.preview(topic.getContent(), MAX_TEXT_LENGTH), Field.Store.YES));
+        return document;
+    }
+
+    private Document commentDocument(TopicComment comment, Topic topic) {
+        Document document = this.baseDocument(KIND_COMMENT + ":" + comment.getId(), KIND_COMMENT,
+                topic.getId(), topic.getType(), comment.getTime());
+        document.add(new StoredField("cid", comment.getId()));
+        //评论结果展示所属帖子的标题，但标题不参与评论的匹配
+        document.add(new StoredField("topicTitle", Objects.requireNonNullElse(topic.getTitle(), "")));
+        document.add(new TextField("content", DeltaUtils.preview(comment.getContent(), MAX_TEXT_LENGTH), Field.Store.YES));
+        return document;
+    }
+
+    private Document baseDocument(String key, String kind, int tid, Integer type, Date time) {
+        Document document = new Document();
+        document.add(new StringField("key", key, Field.Store.NO));
+        document.add(new StringField("kind", kind, Field.Store.YES));
+        document.add(new IntPoint("tid", tid));
+        document.add(new StoredField("tid", tid));
+        int topicType = Objects.requireNonNullElse(type, 0);
+        document.add(new IntPoint("type", topicType));
+        document.add(new StoredField("type", topicType));
+        document.add(new StoredField("time", time == null ? 0 : time.getTime()));
+        return document;
+    }
+}
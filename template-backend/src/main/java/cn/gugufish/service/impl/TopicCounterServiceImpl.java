@@ -0,0 +1,181 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.InteractCount;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.TopicCounterService;
+import cn.gugufish.utils.CacheUtils;
+import cn.gugufish.utils.Const;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+
+@Slf4j
+@Service
+public class TopicCounterServiceImpl implements TopicCounterService {
+
+    /**
+     * 单条回写SQL最多包含的帖子数量
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private static final List<String> TYPES = List.of("like", "collect");
+
+    /**
+     * 回写锁的超时时间（毫秒），同一类型同一时刻只有一个节点处理待回写键
+     */
+    private static final long FLUSH_LOCK_TIMEOUT = 60000;
+
+    /**
+     * 将增量哈希整体换到待回写键上，如果上次回写失败留下了待回写键则先处理旧数据，
+     * 只在持有回写锁时调用，因此遗留的待回写键也只会被一个节点接手
+     */
+    private static final RedisScript<Long> SWAP_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('exists', KEYS[2]) == 0 and redis.call('exists', KEYS[1]) == 1 then
+                redis.call('rename', KEYS[1], KEYS[2])
+            end
+            return redis.call('exists', KEYS[2])
+            """, Long.class);
+
+    /**
+     * 在回写事务提交前移除已写入数据库的字段，锁已超时易主时返回-1，由调用方回滚本批
+     * KEYS: 待回写键、回写锁
+     * ARGV: 锁令牌，随后是本批的帖子ID
+     */
+    private static final RedisScript<Long> DRAINED_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[2]) ~= ARGV[1] then return -1 end
+            for i = 2, #ARGV do
+                redis.call('HDEL', KEYS[1], ARGV[i])
+            end
+            return #ARGV - 1
+            """, Long.class);
+
+    /**
+     * 原子读取尚未回写的增量，包括增量哈希与正在回写的待回写键两部分
+     * KEYS: 增量哈希、待回写键
+     * ARGV: 帖子ID
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> PENDING_SCRIPT = new DefaultRedisScript<>("""
+            local result = {}
+            for i = 1, #ARGV do
+                result[i] = tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0')
+                    + tonumber(redis.call('HGET', KEYS[2], ARGV[i]) or '0')
+            end
+            return result
+            """, (Class) List.class);
+
+    @Resource
+    StringRedisTemplate template;
+    @Resource
+    TopicMapper mapper;
+    @Resource
+    CacheUtils cacheUtils;
+    @Resource
+    TransactionTemplate transactionTemplate;
+
+    @Override
+    public void increment(int tid, String type, int delta) {
+        template.opsForHash().increment(Const.FORUM_TOPIC_COUNTER + type, String.valueOf(tid), delta);
+    }
+
+    @Override
+    public Map<Integer, Integer> pendingDeltas(Collection<Integer> tids, String type) {
+        if(tids.isEmpty()) return Map.of();
+        List<Long> values = template.execute(PENDING_SCRIPT,
+                List.of(Const.FORUM_TOPIC_COUNTER + type, Const.FORUM_TOPIC_COUNTER_DRAIN + type),
+                tids.stream().map(String::valueOf).toArray());
+        Map<Integer, Integer> deltas = new HashMap<>();
+        if(values == null) return deltas;
+        Iterator<Integer> iterator = tids.iterator();
+        for (Long value : values) {
+            Integer tid = iterator.next();
+            int delta = value.intValue();
+            if(delta != 0)
+                deltas.put(tid, delta);
+        }
+        return deltas;
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void flush() {
+        TYPES.forEach(type -> {
+            if(!cacheUtils.tryWithLock(Const.FORUM_TOPIC_COUNTER_LOCK + type, FLUSH_LOCK_TIMEOUT,
+                    token -> this.flush(type, token)))
+                log.debug("帖子{}计数正在由其他节点回写，跳过本轮", type);
+        });
+    }
+
+    @Override
+    public void rebuild(Collection<Integer> tids) {
+        TYPES.forEach(type -> {
+            boolean locked = cacheUtils.tryWithLock(Const.FORUM_TOPIC_COUNTER_LOCK + type, FLUSH_LOCK_TIMEOUT, token -> {
+                this.flush(type, token);
+                mapper.rebuildInteractCount(tids, type);
+            });
+            if(!locked)
+                throw new IllegalStateException("帖子" + type + "计数正在回写，请稍后重试");
+        });
+    }
+
+    /**
+     * 回写一种类型的计数增量，调用方必须持有该类型的回写锁
+     * 每批的数据库更新与移除待回写字段在同一个事务中完成：字段移除失败则事务回滚，
+     * 事务提交失败则把已移除的增量加回待回写键，任何一批都不会被重复累加
+     * @param type 计数类型
+     * @param token 回写锁令牌
+     */
+    private void flush(String type, String token) {
+        String key = Const.FORUM_TOPIC_COUNTER + type;
+        String drain = Const.FORUM_TOPIC_COUNTER_DRAIN + type;
+        List<String> drainKeys = List.of(drain, Const.FORUM_TOPIC_COUNTER_LOCK + type);
+        Long exists = template.execute(SWAP_SCRIPT, List.of(key, drain));
+        if(exists == null || exists == 0) return;
+        List<InteractCount> counts = new ArrayList<>();
+        List<Object> zeros = new ArrayList<>();
+        template.opsForHash().entries(drain).forEach((k, v) -> {
+            int delta = Integer.parseInt(v.toString());
+            if(delta != 0)
+                counts.add(new InteractCount(Integer.parseInt(k.toString()), delta));
+            else
+                zeros.add(k);
+        });
+        if(!zeros.isEmpty())
+            template.opsForHash().delete(drain, zeros.toArray());
+        for (int i = 0; i < counts.size(); i += FLUSH_BATCH_SIZE) {
+            List<InteractCount> batch = counts.subList(i, Math.min(i + FLUSH_BATCH_SIZE, counts.size()));
+            Object[] args = new Object[batch.size() + 1];
+            args[0] = token;
+            for (int j = 0; j < batch.size(); j++)
+                args[j + 1] = batch.get(j).getTid().toString();
+            boolean[] removed = {false};
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    mapper.addInteractCount(batch, type);
+                    Long result = template.execute(DRAINED_SCRIPT, drainKeys, args);
+                    if(result == null || result < 0)
+                        throw new IllegalStateException("回写锁已超时，本批交由下一轮处理");
+                    removed[0] = true;
+                });
+            } catch (RuntimeException e) {
+                if(removed[0]) this.restore(drain, batch);
+                log.error("帖子{}计数回写失败，将在下次回写时重试", type, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 事务提交失败时把已经移除的增量加回待回写键
+     */
+    private void restore(String drain, List<InteractCount> batch) {
+        batch.forEach(count -> template.opsForHash().increment(drain, count.getTid().toString(), count.getCount()));
+    }
+}
@@ -0,0 +1,328 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Interact;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.TopicInteractService;
+import cn.gugufish.utils.CacheUtils;
+import cn.gugufish.utils.Const;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+@Slf4j
+@Service
+public class TopicInteractServiceImpl implements TopicInteractService {
+
+    /**
+     * 每批回写的操作数量
+     */
+    private static final int DRAIN_BATCH_SIZE = 500;
+
+    /**
+     * 单批回写失败时的最大尝试次数，仍然失败则留到下一轮
+     */
+    private static final int DRAIN_MAX_ATTEMPTS = 3;
+
+    /**
+     * 回写锁的超时时间（毫秒），同一类型同一时刻只有一个节点处理回写中哈希
+     */
+    private static final long DRAIN_LOCK_TIMEOUT = 30000;
+
+    private static final List<String> TYPES = List.of("like", "collect");
+
+    /**
+     * 根据位图得到的状态被脚本判定为过期时，重新加载位图的最大次数
+     */
+    private static final int STALE_RETRY = 3;
+
+    /**
+     * 原子记录一次操作
+     * KEYS: 待写入哈希、回写中哈希、计数增量哈希、位图版本哈希
+     * ARGV: tid:uid、新状态、tid、位图中的状态（为空表示调用方尚未查询）、位图加载时的版本
+     * 之前的状态依次取自待写入哈希、回写中哈希、位图，前两者都没有记录且调用方尚未查询时返回-1；
+     * 位图加载之后该帖子又有回写完成时，位图可能早于数据库写入，返回-2由调用方重新加载位图；
+     * 状态发生变化时返回1并调整计数增量，否则返回0
+     */
+    private static final RedisScript<Long> INTERACT_SCRIPT = new DefaultRedisScript<>("""
+            local previous = redis.call('HGET', KEYS[1], ARGV[1])
+            if not previous then previous = redis.call('HGET', KEYS[2], ARGV[1]) end
+            if not previous then
+                if ARGV[4] == '' then return -1 end
+                if (redis.call('HGET', KEYS[4], ARGV[3]) or '0') ~= ARGV[5] then return -2 end
+                previous = ARGV[4]
+            end
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+            if previous == ARGV[2] then return 0 end
+            redis.call('HINCRBY', KEYS[3], ARGV[3], ARGV[2] == 'true' and 1 or -1)
+            return 1
+            """, Long.class);
+
+    /**
+     * 将待写入哈希整体换到回写中哈希上，如果上次回写还有剩余则先处理剩余部分，
+     * 只在持有回写锁时调用，宕机节点遗留的回写中哈希由下一个拿到锁的节点接手
+     */
+    private static final RedisScript<Long> SWAP_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('exists', KEYS[2]) == 0 and redis.call('exists', KEYS[1]) == 1 then
+                redis.call('rename', KEYS[1], KEYS[2])
+            end
+            return redis.call('exists', KEYS[2])
+            """, Long.class);
+
+    /**
+     * 一批操作写入数据库之后调用：先递增涉及帖子的位图版本，再从回写中哈希移除这些操作，
+     * 两步在同一个脚本中完成，任何节点都不会在操作已移除、版本却尚未变化时使用旧位图；
+     * 回写锁已超时易主时返回-1，不移除任何操作，由新的持有者重新回写
+     * KEYS: 回写中哈希、位图版本哈希、回写锁
+     * ARGV: 锁令牌、操作数量n，随后n个tid:uid，之后是涉及的帖子ID
+     */
+    private static final RedisScript<Long> DRAINED_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[3]) ~= ARGV[1] then return -1 end
+            local n = tonumber(ARGV[2])
+            for i = n + 3, #ARGV do
+                redis.call('HINCRBY', KEYS[2], ARGV[i], 1)
+            end
+            for i = 3, n + 2 do
+                redis.call('HDEL', KEYS[1], ARGV[i])
+            end
+            return n
+            """, Long.class);
+
+    @Resource
+    StringRedisTemplate template;
+    @Resource
+    TopicMapper mapper;
+    @Resource
+    CacheUtils cacheUtils;
+
+    /**
+     * 每个帖子的点赞/收藏用户ID以压缩位图的形式缓存在各节点内存中，按需加载，数量有上限，
+     * 位图只反映数据库中的状态，尚未回写的操作以Redis中的待写入/回写中哈希为准，
+     * 位图同时记录加载时该帖子的回写版本，供点赞脚本判断位图是否早于最近一次回写
+     */
+    @PostConstruct
+    private void initIndex() {
+        cacheUtils.registerLocalCache(Const.FORUM_INTERACT_INDEX, 20000, 600);
+    }
+
+    @Override
+    public boolean interact(Interact interact, boolean state) {
+        String type = interact.getType();
+        List<String> keys = List.of(
+                Const.FORUM_INTERACT_PENDING + type,
+                Const.FORUM_INTERACT_DRAIN + type,
+                Const.FORUM_TOPIC_COUNTER + type,
+                Const.FORUM_INTERACT_VERSION + type);
+        String field = interact.toKey();
+        String tid = String.valueOf(interact.getTid());
+        Long result = template.execute(INTERACT_SCRIPT, keys, field, Boolean.toString(state), tid, "", "");
+        for (int attempt = 0; result != null && result < 0 && attempt < STALE_RETRY; attempt++) {
+            InteractIndex index = this.loadIndex(List.of(interact.getTid()), type, result == -2)
+                    .get(interact.getTid());
+            result = template.execute(INTERACT_SCRIPT, keys, field, Boolean.toString(state), tid,
+                    Boolean.toString(index.bitmap().contains(interact.getUid())), String.valueOf(index.version()));
+        }
+        if(result == null || result < 0)
+            throw new IllegalStateException("帖子" + tid + "的" + type + "位图多次加载后仍然过期，本次操作未记录");
+        boolean changed = result == 1;
+        if(changed)
+            this.updateIndex(interact.getTid(), interact.getUid(), type, state);
+        return changed;
+    }
+
+    @Override
+    public boolean hasInteract(int tid, int uid, String type) {
+        return this.interactStates(List.of(tid), uid, type).get(tid);
+    }
+
+    @Override
+    public Map<Integer, Boolean> interactStates(Collection<Integer> tids, int uid, String type) {
+        if(tids.isEmpty()) return Map.of();
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(tids));
+        Map<Integer, Boolean> states = new HashMap<>();
+        List<Integer> unresolved = this.resolvePending(ids, uid, Const.FORUM_INTERACT_PENDING + type, states);
+        if(!unresolved.isEmpty())
+            unresolved = this.resolvePending(unresolved, uid, Const.FORUM_INTERACT_DRAIN + type, states);
+        if(!unresolved.isEmpty()) {
+            Map<Integer, InteractIndex> index = this.loadIndex(unresolved, type, false);
+            unresolved.forEach(tid -> states.put(tid, index.get(tid).bitmap().contains(uid)));
+        }
+        return states;
+    }
+
+    /**
+     * 使用一次HMGET从待写入/回写中哈希获取尚未回写数据库的状态
+     * @param tids 帖子ID列表
+     * @param uid 用户ID
+     * @param key 哈希键
+     * @param states 已确定的状态
+     * @return 哈希中没有记录的帖子ID
+     */
+    private List<Integer> resolvePending(List<Integer> tids, int uid, String key, Map<Integer, Boolean> states) {
+        List<Object> fields = tids.stream().map(tid -> (Object) (tid + ":" + uid)).toList();
+        List<Object> values = template.opsForHash().multiGet(key, fields);
+        List<Integer> unresolved = new ArrayList<>();
+        for (int i = 0; i < tids.size(); i++) {
+            Object value = values == null ? null : values.get(i);
+            if(value != null)
+                states.put(tids.get(i), Boolean.parseBoolean(value.toString()));
+            else
+                unresolved.add(tids.get(i));
+        }
+        return unresolved;
+    }
+
+    /**
+     * 获取帖子的点赞/收藏用户位图，本地没有的帖子一次性从数据库加载，
+     * 加载前先读取位图版本，版本早于数据库查询，最坏情况只会把新位图误判为过期
+     * @param tids 帖子ID列表
+     * @param type 类型
+     * @param refresh 是否忽略本地已有的位图重新加载
+     * @return 帖子ID与位图的映射，包含所有传入的帖子
+     */
+    private Map<Integer, InteractIndex> loadIndex(List<Integer> tids, String type, boolean refresh) {
+        Map<Integer, InteractIndex> index = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer tid : tids) {
+            InteractIndex cached = refresh ? null : cacheUtils.takeFromLocal(this.indexKey(tid, type), InteractIndex.class);
+            if(cached != null)
+                index.put(tid, cached);
+            else
+                missing.add(tid);
+        }
+        if(missing.isEmpty()) return index;
+        List<Object> versions = template.opsForHash().multiGet(Const.FORUM_INTERACT_VERSION + type,
+                missing.stream().map(tid -> (Object) String.valueOf(tid)).toList());
+        Map<Integer, RoaringBitmap> loaded = new HashMap<>();
+        missing.forEach(tid -> loaded.put(tid, new RoaringBitmap()));
+        mapper.selectInteracts(missing, type)
+                .forEach(interact -> loaded.get(interact.getTid()).add(interact.getUid()));
+        for (int i = 0; i < missing.size(); i++) {
+            Integer tid = missing.get(i);
+            Object version = versions == null ? null : versions.get(i);
+            RoaringBitmap bitmap = loaded.get(tid);
+            bitmap.runOptimize();
+            InteractIndex value = new InteractIndex(version == null ? 0 : Long.parseLong(version.toString()), bitmap);
+            cacheUtils.saveToLocal(this.indexKey(tid, type), value);
+            index.put(tid, value);
+        }
+        return index;
+    }
+
+    /**
+     * 状态发生变化时更新本节点已加载的位图，位图会被并发读取，因此复制后再替换
+     */
+    private void updateIndex(int tid, int uid, String type, boolean state) {
+        String key = this.indexKey(tid, type);
+        InteractIndex index = cacheUtils.takeFromLocal(key, InteractIndex.class);
+        if(index == null) return;
+        RoaringBitmap copy = index.bitmap().clone();
+        if(state)
+            copy.add(uid);
+        else
+            copy.remove(uid);
+        cacheUtils.saveToLocal(key, new InteractIndex(index.version(), copy));
+    }
+
+    private String indexKey(int tid, String type) {
+        return Const.FORUM_INTERACT_INDEX + type + ":" + tid;
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 3000, initialDelay = 3000)
+    public void flush() {
+        TYPES.forEach(type -> cacheUtils.tryWithLock(Const.FORUM_INTERACT_LOCK + type, DRAIN_LOCK_TIMEOUT,
+                token -> this.flush(type, token)));
+    }
+
+    /**
+     * 分批回写一种类型的操作，每批写入数据库后立即从回写中哈希移除，
+     * 失败时剩余部分保留在回写中哈希里，下一轮优先重试，期间的新操作继续写入待写入哈希；
+     * 调用方必须持有该类型的回写锁，回写中哈希的内容在此期间不会变化，
+     * 锁超时后另一节点重复写入同一批操作也是幂等的
+     * @param type 类型
+     * @param token 回写锁令牌
+     */
+    private void flush(String type, String token) {
+        String pending = Const.FORUM_INTERACT_PENDING + type;
+        String drain = Const.FORUM_INTERACT_DRAIN + type;
+        Long exists = template.execute(SWAP_SCRIPT, List.of(pending, drain));
+        if(exists == null || exists == 0) return;
+        ScanOptions options = ScanOptions.scanOptions().count(DRAIN_BATCH_SIZE).build();
+        Map<String, String> batch = new HashMap<>();
+        try (Cursor<Map.Entry<Object, Object>> cursor = template.opsForHash().scan(drain, options)) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                batch.put(entry.getKey().toString(), entry.getValue().toString());
+                if(batch.size() >= DRAIN_BATCH_SIZE) {
+                    if(!this.applyWithRetry(drain, type, token, batch)) return;
+                    batch.clear();
+                }
+            }
+        }
+        //最后一批移除后回写中哈希为空，Redis会自动删除该键
+        if(!batch.isEmpty())
+            this.applyWithRetry(drain, type, token, batch);
+    }
+
+    private boolean applyWithRetry(String drain, String type, String token, Map<String, String> batch) {
+        for (int attempt = 1; attempt <= DRAIN_MAX_ATTEMPTS; attempt++) {
+            try {
+                this.apply(type, batch);
+                List<String> tids = batch.keySet().stream()
+                        .map(k -> k.substring(0, k.indexOf(':')))
+                        .distinct()
+                        .toList();
+                List<Object> args = new ArrayList<>(batch.size() + tids.size() + 2);
+                args.add(token);
+                args.add(String.valueOf(batch.size()));
+                args.addAll(batch.keySet());
+                args.addAll(tids);
+                Long drained = template.execute(DRAINED_SCRIPT, List.of(drain, Const.FORUM_INTERACT_VERSION + type,
+                        Const.FORUM_INTERACT_LOCK + type), args.toArray());
+                if(drained == null || drained < 0) {
+                    log.warn("帖子{}记录回写锁已超时，剩余数据交由新的持有者处理", type);
+                    return false;
+                }
+                //版本已经保证了正确性，这里通知所有节点提前丢弃旧位图，减少点赞时的重新加载
+                tids.forEach(tid -> cacheUtils.invalidateLocal(this.indexKey(Integer.parseInt(tid), type)));
+                return true;
+            } catch (Exception e) {
+                log.warn("帖子{}记录第{}次回写失败，共{}条", type, attempt, batch.size(), e);
+            }
+        }
+        log.error("帖子{}记录回写失败，剩余数据将在下一轮重试", type);
+        return false;
+    }
+
+    private void apply(String type, Map<String, String> batch) {
+        List<Interact> check = new ArrayList<>();
+        List<Interact> uncheck = new ArrayList<>();
+        batch.forEach((k, v) -> {
+            if(Boolean.parseBoolean(v))
+                check.add(Interact.parseInteract(k, type));
+            else
+                uncheck.add(Interact.parseInteract(k, type));
+        });
+        if(!check.isEmpty())
+            mapper.addInteract(check, type);
+        if(!uncheck.isEmpty())
+            mapper.deleteInteract(uncheck, type);
+    }
+
+    /**
+     * 本地缓存的帖子点赞/收藏位图
+     * @param version 加载位图之前读到的回写版本
+     * @param bitmap 数据库中已操作的用户ID
+     */
+    private record InteractIndex(long version, RoaringBitmap bitmap) {}
+}
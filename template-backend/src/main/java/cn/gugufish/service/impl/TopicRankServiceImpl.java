@@ -0,0 +1,110 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.service.TopicRankService;
+import cn.gugufish.utils.Const;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 热度采用前向衰减：一次事件在t时刻贡献 权重 * 2^((t - 基准时间) / 半衰期)，
+ * 越新的事件贡献越大，排名与"每过一个半衰期所有旧分数减半"完全等价，但不需要修改旧分数。
+ * 分数会随时间指数增长，因此定期整理时把所有分数乘以 2^(-(当前时间 - 基准时间) / 半衰期) 并把基准时间移到当前，
+ * 记录与整理都在Lua脚本中原子完成
+ */
+@Slf4j
+@Service
+public class TopicRankServiceImpl implements TopicRankService {
+
+    /**
+     * 热度半衰期（秒）
+     */
+    private static final long HALF_LIFE = 6 * 3600;
+
+    /**
+     * 整理后保留的帖子数量
+     */
+    private static final int RANK_CAPACITY = 1000;
+
+    /**
+     * 各类事件的热度权重
+     */
+    private static final Map<String, Double> WEIGHTS = Map.of(
+            "create", 10.0,
+            "view", 1.0,
+            "like", 3.0,
+            "collect", 5.0,
+            "comment", 4.0
+    );
+
+    /**
+     * KEYS: 排行有序集合、基准时间
+     * ARGV: 帖子ID、权重、当前时间（秒）、半衰期（秒）
+     */
+    private static final RedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>("""
+            local epoch = tonumber(redis.call('GET', KEYS[2]))
+            if not epoch then
+                epoch = tonumber(ARGV[3])
+                redis.call('SET', KEYS[2], ARGV[3])
+            end
+            local increment = tonumber(ARGV[2]) * math.pow(2, (tonumber(ARGV[3]) - epoch) / tonumber(ARGV[4]))
+            redis.call('ZINCRBY', KEYS[1], increment, ARGV[1])
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS: 排行有序集合、基准时间
+     * ARGV: 当前时间（秒）、半衰期（秒）、保留数量
+     */
+    private static final RedisScript<Long> COMPACT_SCRIPT = new DefaultRedisScript<>("""
+            local epoch = tonumber(redis.call('GET', KEYS[2]))
+            if epoch then
+                local factor = math.pow(2, -(tonumber(ARGV[1]) - epoch) / tonumber(ARGV[2]))
+                redis.call('ZUNIONSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', factor)
+            end
+            redis.call('SET', KEYS[2], ARGV[1])
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', 0)
+            redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[3]) - 1)
+            return redis.call('ZCARD', KEYS[1])
+            """, Long.class);
+
+    @Resource
+    StringRedisTemplate template;
+
+    @Override
+    public void record(int tid, String event, int times) {
+        Double weight = WEIGHTS.get(event);
+        if(weight == null || times <= 0) return;
+        template.execute(RECORD_SCRIPT, List.of(Const.FORUM_TOPIC_HOT, Const.FORUM_TOPIC_HOT_EPOCH),
+                String.valueOf(tid), String.valueOf(weight * times),
+                String.valueOf(System.currentTimeMillis() / 1000), String.valueOf(HALF_LIFE));
+    }
+
+    @Override
+    public List<Integer> top(int size) {
+        Set<String> members = template.opsForZSet().reverseRange(Const.FORUM_TOPIC_HOT, 0, size - 1);
+        if(members == null) return List.of();
+        return members.stream().map(Integer::parseInt).toList();
+    }
+
+    @Override
+    public void remove(int tid) {
+        template.opsForZSet().remove(Const.FORUM_TOPIC_HOT, String.valueOf(tid));
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void compact() {
+        Long size = template.execute(COMPACT_SCRIPT, List.of(Const.FORUM_TOPIC_HOT, Const.FORUM_TOPIC_HOT_EPOCH),
+                String.valueOf(System.currentTimeMillis() / 1000), String.valueOf(HALF_LIFE), String.valueOf(RANK_CAPACITY));
+        log.debug("热门帖子排行整理完成，当前共{}个帖子", size);
+    }
+}
@@ -5,17 +5,27 @@ import cn.gugufish.entity.vo.request.AddCommentVO;
 import cn.gugufish.entity.vo.request.TopicCreateVO;
 import cn.gugufish.entity.vo.request.TopicUpdateVO;
 import cn.gugufish.entity.vo.response.CommentVO;
+import cn.gugufish.entity.vo.response.CursorPageVO;
 import cn.gugufish.entity.vo.response.TopicDetailVO;
 import cn.gugufish.entity.vo.response.TopicPreviewVO;
 import cn.gugufish.entity.vo.response.TopicTopVO;
+import cn.gugufish.entity.vo.response.UserCardVO;
 import cn.gugufish.mapper.*;
 import cn.gugufish.service.NotificationService;
+import cn.gugufish.service.SearchService;
+import cn.gugufish.service.TopicCounterService;
+import cn.gugufish.service.TopicInteractService;
+import cn.gugufish.service.TopicRankService;
 import cn.gugufish.service.TopicService;
+import cn.gugufish.service.TopicStatsService;
+import cn.gugufish.service.UserCardService;
 import cn.gugufish.utils.CacheUtils;
 import cn.gugufish.utils.Const;
-import cn.gugufish.utils.FlowUtils;
+import cn.gugufish.utils.CursorUtils;
+import cn.gugufish.utils.DeltaUtils;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -24,13 +34,12 @@ import jakarta.annotation.Resource;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.BeanUtils;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -39,50 +48,85 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
     @Resource
     TopicTypeMapper mapper;
     @Resource
-    FlowUtils flowUtils;
-    @Resource
     CacheUtils cacheUtils;
     @Resource
     AccountMapper accountMapper;
     @Resource
-    AccountDetailsMapper accountDetailsMapper;
-    @Resource
-    AccountPrivacyMapper accountPrivacyMapper;
-    @Resource
     TopicCommentMapper commentMapper;
     @Resource
     StringRedisTemplate template;
     @Resource
     NotificationService notificationService;
+    @Resource
+    TopicCounterService counterService;
+    @Resource
+    UserCardService userCardService;
+    @Resource
+    TopicInteractService interactService;
+    @Resource
+    TopicStatsService statsService;
+    @Resource
+    TopicRankService rankService;
+    @Resource
+    SearchService searchService;
+    /**
+     * 帖子列表查询使用的列，不再读取完整的content，
+     * 只有尚未回填预览列的旧数据才会带上content用于现场解析
+     */
+    private static final String[] PREVIEW_COLUMNS = {
+            "id", "title", "uid", "type", "time", "top", "locked", "like_count", "collect_count",
+            "preview_text", "preview_images", "if(preview_text is null, content, null) as content"
+    };
     @Override
     public List<TopicType> listTypes() {
-        return mapper.selectList(null);
+        return typeSnapshot.list();
     }
-    private Set<Integer> types = null;
+    /**
+     * 帖子分类快照，发帖校验、分类列表接口与其版本号共用同一份，定时从数据库刷新，
+     * 版本号由分类内容计算，各节点加载到相同的分类时版本号也相同
+     */
+    private volatile TypeSnapshot typeSnapshot;
     @PostConstruct
     private void initTypes() {
-        types = this.listTypes()
-                .stream()
+        this.refreshTypes();
+        //首页帖子列表是访问最频繁的缓存，开启进程内缓存
+        cacheUtils.registerLocalCache(Const.FORUM_TOPIC_PREVIEW_CACHE, 200, 30);
+        cacheUtils.registerLocalCache(Const.FORUM_TOPIC_DETAIL_CACHE, 1000, 30);
+        cacheUtils.registerLocalCache(Const.FORUM_TOPIC_HOT_CACHE, 20, 15);
+    }
+
+    /**
+     * 重新加载帖子分类，分类在数据库中修改后最多一分钟生效
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void refreshTypes() {
+        List<TopicType> list = List.copyOf(mapper.selectList(null));
+        Set<Integer> ids = list.stream()
                 .map(TopicType::getId)
-                .collect(Collectors.toSet());
+                .collect(Collectors.toUnmodifiableSet());
+        typeSnapshot = new TypeSnapshot(list, ids, "types-" + Integer.toHexString(list.hashCode()));
     }
 
+    private record TypeSnapshot(List<TopicType> list, Set<Integer> ids, String version) {}
+
     @Override
     public String createTopic(int uid, TopicCreateVO vo) {
-        if(!textLimitCheck(vo.getContent(),10000))
+        String content = vo.getContent() == null ? null : vo.getContent().toJSONString();
+        DeltaUtils.Summary summary = DeltaUtils.scan(content, 10000, 300, true);
+        if(summary == null || summary.overflow())
             return "字数超出限制，发送失败";
-        if(!types.contains(vo.getType()))
+        if(!typeSnapshot.ids().contains(vo.getType()))
             return "文章类型非法，发送失败"; // TODO: 封号qwq你在干什么,本条TODO预留封号逻辑，如果发送超过数据库的文章类型，可以考虑用户尝试使用发包工具测试服务器，可以直接封号，但是发现types在启动时候会更新一次，在启动过程中更新types会让用户可以正常发送types但是会在这里被拦截，需要解决(BugFish留)
-        String key = Const.FORUM_TOPIC_CREATE_COUNTER + uid;
-        if(!flowUtils.limitPeriodCounterCheck(key,4,3600))
-            return "发文过快，请稍后再试";
         Topic topic = new Topic();
         BeanUtils.copyProperties(vo, topic);
-        topic.setContent(vo.getContent().toJSONString());
+        topic.setContent(content);
+        this.fillPreview(topic, summary);
         topic.setUid(uid);
         topic.setTime(new Date());
         if(this.save(topic)){
-            cacheUtils.deleteCachePattern(Const.FORUM_TOPIC_PREVIEW_CACHE + "*");
+            cacheUtils.invalidateNamespace(Const.FORUM_TOPIC_PREVIEW_CACHE);
+            rankService.record(topic.getId(), "create", 1);
+            searchService.indexTopic(topic.getId());
             //清空缓存
             return null;
         }
@@ -93,9 +137,9 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
     @Override
     public JSONObject listAllTopicByPage(int page, int size) {
         Page<Topic> topicPage = baseMapper.selectPage(Page.of(page, size), Wrappers.<Topic>query()
-                .select("id", "title", "uid", "type", "time", "top", "locked")
-                .orderByDesc("time"));
-        List<TopicPreviewVO> list = topicPage.getRecords().stream().map(this::resolveToPreview).toList();
+                .select(PREVIEW_COLUMNS)
+                .orderByDesc("time", "id"));
+        List<TopicPreviewVO> list = this.resolveToPreviews(topicPage.getRecords());
         JSONObject object = new JSONObject();
         object.put("total", topicPage.getTotal());
         object.put("list", list);
@@ -104,103 +148,173 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
 
     @Override
     public List<TopicPreviewVO> listTopicByPage(int pageNumber, int type) {
-        String key = Const.FORUM_TOPIC_PREVIEW_CACHE + pageNumber + ":" + type;
-        List<TopicPreviewVO> list = cacheUtils.takeListFromCache(key, TopicPreviewVO.class);
-        if(list != null)
-            return list;
-        Page<Topic> page = Page.of(pageNumber,10);
-        if(type == 0)
-            baseMapper.selectPage(page,Wrappers.<Topic>query().orderByDesc("time"));
-        else
-            baseMapper.selectPage(page,Wrappers.<Topic>query().eq("type",type).orderByDesc("time"));
-        List<Topic> topics = page.getRecords();
-        if(topics.isEmpty()) return null;
-        list = topics.stream().map(this::resolveToPreview).toList();
-        cacheUtils.saveListToCache(key, list, 60);
-        return list;
+        String key = cacheUtils.namespaceKey(Const.FORUM_TOPIC_PREVIEW_CACHE, pageNumber + ":" + type);
+        //每次发帖都会使列表缓存整体失效，所有节点的并发请求合并为一次查询
+        return cacheUtils.getListOrLoad(key, TopicPreviewVO.class, 60, true, () -> {
+            Page<Topic> page = Page.of(pageNumber,10);
+            if(type == 0)
+                baseMapper.selectPage(page,Wrappers.<Topic>query().select(PREVIEW_COLUMNS).orderByDesc("time", "id"));
+            else
+                baseMapper.selectPage(page,Wrappers.<Topic>query().select(PREVIEW_COLUMNS).eq("type",type).orderByDesc("time", "id"));
+            List<Topic> topics = page.getRecords();
+            if(topics.isEmpty()) return null;
+            return this.resolveToPreviews(topics);
+        });
+    }
+    @Override
+    public CursorPageVO<TopicPreviewVO> listTopicByCursor(String cursor, int type) {
+        long[] position = CursorUtils.decode(cursor, 2);
+        if(position == null) {
+            //第一页与普通分页共用缓存
+            List<TopicPreviewVO> list = Objects.requireNonNullElse(this.listTopicByPage(1, type), List.of());
+            return this.topicCursorPage(list, 10);
+        }
+        QueryWrapper<Topic> wrapper = Wrappers.<Topic>query().select(PREVIEW_COLUMNS);
+        if(type != 0)
+            wrapper.eq("type", type);
+        return this.topicCursorPage(this.resolveToPreviews(this.selectTopicsAfter(wrapper, position, 10)), 10);
+    }
+
+    @Override
+    public CursorPageVO<TopicPreviewVO> listAllTopicByCursor(String cursor, int size) {
+        QueryWrapper<Topic> wrapper = Wrappers.<Topic>query()
+                .select(PREVIEW_COLUMNS);
+        List<Topic> topics = this.selectTopicsAfter(wrapper, CursorUtils.decode(cursor, 2), size);
+        return this.topicCursorPage(this.resolveToPreviews(topics), size);
     }
+
+    /**
+     * 按(time, id)倒序从游标位置之后读取一页帖子，只使用LIMIT size，不产生偏移扫描与COUNT查询
+     * @param wrapper 基础查询条件
+     * @param position 游标解码后的(time, id)，为null表示第一页
+     * @param size 每页数量
+     * @return 帖子列表
+     */
+    private List<Topic> selectTopicsAfter(QueryWrapper<Topic> wrapper, long[] position, int size) {
+        if(position != null) {
+            Date time = new Date(position[0]);
+            long id = position[1];
+            wrapper.and(w -> w.lt("time", time).or(o -> o.eq("time", time).lt("id", id)));
+        }
+        wrapper.orderByDesc("time", "id");
+        return baseMapper.selectList(Page.of(1, size, false), wrapper);
+    }
+
+    private CursorPageVO<TopicPreviewVO> topicCursorPage(List<TopicPreviewVO> list, int size) {
+        if(list.size() < size)
+            return new CursorPageVO<>(list, null);
+        TopicPreviewVO last = list.get(list.size() - 1);
+        return new CursorPageVO<>(list, CursorUtils.encode(last.getTime().getTime(), last.getId()));
+    }
+
     @Override
     public String updateTopic(int uid, TopicUpdateVO vo) {
-        if(!textLimitCheck(vo.getContent(),10000))
+        String content = vo.getContent() == null ? null : vo.getContent().toJSONString();
+        DeltaUtils.Summary summary = DeltaUtils.scan(content, 10000, 300, true);
+        if(summary == null || summary.overflow())
             return "文章内容太多，发文失败！";
-        if(!types.contains(vo.getType()))
+        if(!typeSnapshot.ids().contains(vo.getType()))
             return "文章类型非法！";
+        Topic preview = new Topic();
+        this.fillPreview(preview, summary);
         int result = baseMapper.update(null, Wrappers.<Topic>update()
                 .eq("uid", uid)
                 .eq("id", vo.getId())
                 .set("title", vo.getTitle())
-                .set("content", vo.getContent().toString())
+                .set("content", content)
                 .set("type", vo.getType())
+                .set("preview_text", preview.getPreviewText())
+                .set("preview_images", preview.getPreviewImages())
         );
+        if(result > 0) {
+            cacheUtils.invalidateNamespace(Const.FORUM_TOPIC_PREVIEW_CACHE);
+            this.evictTopicDetail(vo.getId());
+            searchService.indexTopic(vo.getId());
+        }
         return result > 0 ? null : "文章被锁定，无法进行修改";
     }
     @Override
     public String createComment(int uid, AddCommentVO vo) {
-        if(!textLimitCheck(JSONObject.parseObject(vo.getContent()), 2000))
+        if(!DeltaUtils.lengthWithin(vo.getContent(), 2000))
             return "评论内容太多，发表失败！";
-        String key = Const.FORUM_TOPIC_COMMENT_COUNTER + uid;
-        if(!flowUtils.limitPeriodCounterCheck(key, 2, 60))
-            return "发表评论频繁，请稍后再试！";
         TopicComment comment = new TopicComment();
         comment.setUid(uid);
         BeanUtils.copyProperties(vo, comment);
         comment.setTime(new Date());
         commentMapper.insert(comment);
-        Topic topic = baseMapper.selectById(vo.getTid());
-        Account account = accountMapper.selectById(uid);
-        if(vo.getQuote() > 0) {
-            TopicComment com = commentMapper.selectById(vo.getQuote());
-            if(!Objects.equals(account.getId(), com.getUid())) {
-                notificationService.addNotification(
-                        com.getUid(),
-                        "您有新的帖子评论回复",
-                        account.getUsername()+" 回复了你发表的评论，快去看看吧！",
-                        "success", "/index/topic-detail/"+com.getTid()
-                );
-            }
-        } else if (!Objects.equals(account.getId(), topic.getUid())) {
-            notificationService.addNotification(
-                    topic.getUid(),
-                    "您有新的帖子回复",
-                    account.getUsername()+" 回复了你发表主题: "+topic.getTitle()+"，快去看看吧！",
-                    "success", "/index/topic-detail/"+topic.getId()
-            );
-        }
+        statsService.adjust(vo.getTid(), "comments", 1);
+        rankService.record(vo.getTid(), "comment", 1);
+        searchService.indexComment(comment.getId());
+        //通知的接收人解析与写入交给消息队列的消费者批量完成
+        notificationService.publishCommentCreated(
+                new CommentCreatedEvent(comment.getId(), vo.getTid(), uid, vo.getQuote()));
         return null;
     }
     @Override
     public List<CommentVO> comments(int tid, int pageNumber) {
         Page<TopicComment> page = Page.of(pageNumber, 10);
-        commentMapper.selectPage(page, Wrappers.<TopicComment>query().eq("tid", tid));
-        return page.getRecords().stream().map(dto -> {
+        commentMapper.selectPage(page, Wrappers.<TopicComment>query().eq("tid", tid).orderByAsc("id"));
+        return this.resolveComments(page.getRecords());
+    }
+
+    @Override
+    public CursorPageVO<CommentVO> commentsByCursor(int tid, String cursor, int size) {
+        long[] position = CursorUtils.decode(cursor, 1);
+        QueryWrapper<TopicComment> wrapper = Wrappers.<TopicComment>query().eq("tid", tid);
+        if(position != null)
+            wrapper.gt("id", position[0]);
+        wrapper.orderByAsc("id");
+        List<CommentVO> list = this.resolveComments(commentMapper.selectList(Page.of(1, size, false), wrapper));
+        String next = list.size() < size ? null : CursorUtils.encode(list.get(list.size() - 1).getId());
+        return new CursorPageVO<>(list, next);
+    }
+
+    /**
+     * 批量组装一页评论，查询次数与评论数量无关：
+     * 被引用的评论一次查询，评论者的账户、详细信息、隐私设置各一次IN查询
+     * @param comments 评论列表
+     * @return 评论展示对象列表，顺序与传入的评论一致
+     */
+    private List<CommentVO> resolveComments(List<TopicComment> comments) {
+        if(comments.isEmpty()) return List.of();
+        Set<Integer> quoteIds = comments.stream()
+                .map(TopicComment::getQuote)
+                .filter(quote -> quote != null && quote > 0)
+                .collect(Collectors.toSet());
+        Map<Integer, String> quotes = quoteIds.isEmpty() ? Map.of() : commentMapper.selectList(
+                Wrappers.<TopicComment>query().select("id", "content").in("id", quoteIds))
+                .stream()
+                .collect(Collectors.toMap(TopicComment::getId, comment -> DeltaUtils.preview(comment.getContent(), 300)));
+        Map<Integer, CommentVO.User> users = this.fillUsersByPrivacy(
+                comments.stream().map(TopicComment::getUid).collect(Collectors.toSet()), CommentVO.User::new);
+        return comments.stream().map(dto -> {
             CommentVO vo = new CommentVO();
             BeanUtils.copyProperties(dto, vo);
-            if(dto.getQuote() > 0) {
-                TopicComment comment = commentMapper.selectOne(Wrappers.<TopicComment>query()
-                        .eq("id", dto.getQuote()).orderByAsc("time"));
-                if(comment != null) {
-                    JSONObject object = JSONObject.parseObject(comment.getContent());
-                    StringBuilder builder = new StringBuilder();
-                    this.shortContent(object.getJSONArray("ops"), builder, ignore -> {});
-                    vo.setQuote(builder.toString());
-                } else {
-                    vo.setQuote("此评论已被删除");
-                }
-            }
-            CommentVO.User user = new CommentVO.User();
-            this.fillUserDetailsByPrivacy(user, dto.getUid());
-            vo.setUser(user);
+            if(dto.getQuote() != null && dto.getQuote() > 0)
+                vo.setQuote(quotes.getOrDefault(dto.getQuote(), "此评论已被删除"));
+            vo.setUser(users.get(dto.getUid()));
             return vo;
         }).toList();
     }
     @Override
     public void deleteComment(int id, int uid) {
-        commentMapper.delete(Wrappers.<TopicComment>query().eq("id", id).eq("uid", uid));
+        TopicComment comment = commentMapper.selectOne(Wrappers.<TopicComment>query()
+                .select("id", "tid")
+                .eq("id", id)
+                .eq("uid", uid));
+        if(comment != null && commentMapper.deleteById(id) > 0) {
+            statsService.adjust(comment.getTid(), "comments", -1);
+            searchService.removeComment(id);
+        }
     }
     @Override
     public void deleteTopic(int id) {
         baseMapper.deleteById(id);
-        cacheUtils.deleteCachePattern(Const.FORUM_TOPIC_PREVIEW_CACHE + "*");
+        cacheUtils.invalidateNamespace(Const.FORUM_TOPIC_PREVIEW_CACHE);
+        this.evictTopicDetail(id);
+        statsService.evict(id);
+        rankService.remove(id);
+        searchService.removeTopic(id);
         baseMapper.deleteTopicCollect(id);
     }
 
@@ -210,6 +324,7 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
                 .eq("id", tid)
                 .set("top", top)
         );
+        this.evictTopicDetail(tid);
     }
     @Override
     public void setTopicLocked(int tid, boolean locked) {
@@ -217,6 +332,57 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
                 .eq("id", tid)
                 .set("locked", locked)
         );
+        this.evictTopicDetail(tid);
+    }
+
+    /**
+     * 使帖子详情缓存失效，所有节点的L1缓存同时失效
+     * @param tid 帖子ID
+     */
+    private void evictTopicDetail(int tid) {
+        cacheUtils.deleteCache(Const.FORUM_TOPIC_DETAIL_CACHE + tid);
+        cacheUtils.invalidateNamespace(Const.FORUM_TOPIC_VERSION + tid);
+        cacheUtils.invalidateNamespace(Const.FORUM_TOPIC_TOP_VERSION);
+    }
+
+    @Override
+    public String topicListVersion(int pageNumber, int type) {
+        //列表中的点赞、收藏数量随缓存每分钟刷新，因此版本号同时包含分钟数
+        long generation = cacheUtils.namespaceGeneration(Const.FORUM_TOPIC_PREVIEW_CACHE);
+        return "list-" + generation + "-" + System.currentTimeMillis() / 60000 + "-" + pageNumber + "-" + type;
+    }
+
+    @Override
+    public String topTopicsVersion() {
+        return "top-" + cacheUtils.namespaceGeneration(Const.FORUM_TOPIC_TOP_VERSION);
+    }
+
+    @Override
+    public String typesVersion() {
+        return typeSnapshot.version();
+    }
+
+    @Override
+    public TopicVersion topicVersion(int tid, int uid) {
+        //正文与作者部分由版本号代表，统计数据与当前用户的互动状态来自Redis，直接参与计算，
+        //这里不读取帖子详情，客户端缓存仍然有效时不会查询数据库，也不会组装响应体
+        long generation = cacheUtils.namespaceGeneration(Const.FORUM_TOPIC_VERSION + tid);
+        TopicStats stats = statsService.stats(tid);
+        TopicDetailVO.Interact interact = this.interactStates(List.of(tid), uid).get(tid);
+        int mutable = Objects.hash(uid, stats, interact);
+        return new TopicVersion("topic-" + tid + "-" + generation + "-" + Integer.toHexString(mutable), stats, interact);
+    }
+
+    /**
+     * 读取帖子详情中不常变化的部分，优先从缓存获取
+     * @param tid 帖子ID
+     * @return 帖子，不存在时返回null
+     */
+    private Topic loadTopicDetail(int tid) {
+        return cacheUtils.getOrLoad(Const.FORUM_TOPIC_DETAIL_CACHE + tid, Topic.class, 600,
+                () -> baseMapper.selectOne(Wrappers.<Topic>query()
+                        .select("id", "title", "content", "type", "time", "uid", "top", "locked")
+                        .eq("id", tid)));
     }
     @Override
     public List<TopicPreviewVO> listTopicCollects(int uid) {
@@ -230,6 +396,23 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
                 .toList();
     }
     @Override
+    public List<TopicPreviewVO> listHotTopics(int size) {
+        return cacheUtils.getListOrLoad(Const.FORUM_TOPIC_HOT_CACHE + size, TopicPreviewVO.class, 15, () -> {
+            List<Integer> tids = rankService.top(size);
+            if(tids.isEmpty()) return List.of();
+            Map<Integer, Topic> topics = baseMapper.selectList(Wrappers.<Topic>query()
+                            .select(PREVIEW_COLUMNS)
+                            .in("id", tids))
+                    .stream()
+                    .collect(Collectors.toMap(Topic::getId, Function.identity()));
+            //按照排行中的顺序返回，已经不存在的帖子直接跳过
+            return this.resolveToPreviews(tids.stream()
+                    .map(topics::get)
+                    .filter(Objects::nonNull)
+                    .toList());
+        });
+    }
+    @Override
     public List<TopicTopVO> listTopTopics() {
         List<Topic> topics = baseMapper.selectList(Wrappers.<Topic>query()
                 .select("id", "title", "time")
@@ -242,116 +425,157 @@ public class TopicServiceImpl extends ServiceImpl<TopicMapper, Topic> implements
     }
 
     @Override
-    public TopicDetailVO getTopic(int tid, int uid) {
+    public TopicDetailVO getTopic(int tid, TopicVersion version) {
+        //帖子正文等不常变化的部分走缓存，作者信息来自已缓存的用户名片，统计数据与互动状态沿用计算版本号时读到的值
+        Topic topic = this.loadTopicDetail(tid);
+        if(topic == null) return null;
         TopicDetailVO vo = new TopicDetailVO();
-        Topic topic = baseMapper.selectById(tid);
         BeanUtils.copyProperties(topic, vo);
-        TopicDetailVO.Interact interact = new TopicDetailVO.Interact(
-                hasInteract(tid, uid, "like"),
-                hasInteract(tid, uid, "collect")
-        );
-        vo.setInteract(interact);
+        vo.setInteract(version.interact());
         TopicDetailVO.User user = new TopicDetailVO.User();
         vo.setUser(this.fillUserDetailsByPrivacy(user, topic.getUid()));
-        vo.setComments(commentMapper.selectCount(Wrappers.<TopicComment>query().eq("tid", tid)));
+        vo.setComments(version.stats().getComments());
+        vo.setLike(version.stats().getLike());
+        vo.setCollect(version.stats().getCollect());
         return vo;
     }
 
     @Override
-    public void interact(Interact interact, boolean state) {
-        String type = interact.getType();
-        synchronized (type.intern()) {
-            template.opsForHash().put(type, interact.toKey(), Boolean.toString(state));
-            this.saveInteractSchedule(type);
+    public void recordView(int tid) {
+        rankService.record(tid, "view", 1);
+    }
+
+    @Override
+    public String interact(Interact interact, boolean state) {
+        boolean changed;
+        try {
+            changed = interactService.interact(interact, state);
+        } catch (IllegalStateException e) {
+            log.warn(e.getMessage());
+            return "操作失败，请稍后再试";
+        }
+        if(changed) {
+            statsService.adjust(interact.getTid(), interact.getType(), state ? 1 : -1);
+            if(state) rankService.record(interact.getTid(), interact.getType(), 1);
         }
+        return null;
     }
-    private boolean hasInteract(int tid, int uid, String type) {
-        String key = tid + ":" + uid;
-        if (template.opsForHash().hasKey(type, key))
-            return Boolean.parseBoolean(template.opsForHash().entries(type).get(key).toString());
-        return baseMapper.userInteractCount(tid, uid, type) > 0;
+
+    @Override
+    public Map<Integer, TopicDetailVO.Interact> interactStates(List<Integer> tids, int uid) {
+        Map<Integer, Boolean> likes = interactService.interactStates(tids, uid, "like");
+        Map<Integer, Boolean> collects = interactService.interactStates(tids, uid, "collect");
+        Map<Integer, TopicDetailVO.Interact> states = new LinkedHashMap<>();
+        tids.forEach(tid -> states.put(tid, new TopicDetailVO.Interact(likes.get(tid), collects.get(tid))));
+        return states;
     }
-    private final Map<String, Boolean> state = new HashMap<>();
-    ScheduledExecutorService service = Executors.newScheduledThreadPool(2);
 
-    /**
-     * 创建一个定时任务用于保存帖子的点赞和收藏
-     * @param type 保存的类型，点赞或收藏
-     */
-    private void saveInteractSchedule(String type) {
-        if(!state.getOrDefault(type, false)) {
-            state.put(type, true);
-            service.schedule(() -> {
-                this.saveInteract(type);
-                state.put(type, false);
-            }, 3, TimeUnit.SECONDS);
+    @Override
+    public int backfillPreview() {
+        int total = 0, lastId = 0;
+        while (true) {
+            List<Topic> topics = baseMapper.selectList(Page.of(1, 200, false), Wrappers.<Topic>query()
+                    .select("id", "content")
+                    .isNull("preview_text")
+                    .gt("id", lastId)
+                    .orderByAsc("id"));
+            if(topics.isEmpty()) break;
+            for (Topic topic : topics) {
+                this.fillPreview(topic, DeltaUtils.scan(topic.getContent(), Long.MAX_VALUE, 300, true));
+                baseMapper.update(null, Wrappers.<Topic>update()
+                        .eq("id", topic.getId())
+                        .set("preview_text", topic.getPreviewText())
+                        .set("preview_images", topic.getPreviewImages()));
+            }
+            lastId = topics.get(topics.size() - 1).getId();
+            total += topics.size();
         }
+        if(total > 0)
+            cacheUtils.invalidateNamespace(Const.FORUM_TOPIC_PREVIEW_CACHE);
+        log.info("帖子预览回填完成，共处理{}条", total);
+        return total;
     }
 
-    private void saveInteract(String type) {
-        synchronized (type.intern()) {
-            List<Interact> check = new LinkedList<>();
-            List<Interact> uncheck = new LinkedList<>();
-            template.opsForHash().entries(type).forEach((k, v) -> {
-                if(Boolean.parseBoolean(v.toString()))
-                    check.add(Interact.parseInteract(k.toString(), type));
-                else
-                    uncheck.add(Interact.parseInteract(k.toString(), type));
-            });
-            if(!check.isEmpty())
-                baseMapper.addInteract(check, type);
-            if(!uncheck.isEmpty())
-                baseMapper.deleteInteract(uncheck, type);
-            template.delete(type);
-        }
+    @Override
+    public void rebuildInteractCounters() {
+        interactService.flush();
+        counterService.rebuild(null);
+        statsService.evictAll();
     }
 
+    /**
+     * 使用已按隐私设置过滤好的用户名片填充用户信息
+     * @param target 目标对象
+     * @param uid 用户ID
+     * @return 填充后的目标对象
+     */
     private <T> T fillUserDetailsByPrivacy(T target, int uid){
-        AccountDetails details = accountDetailsMapper.selectById(uid);
-        Account account = accountMapper.selectById(uid);
-        AccountPrivacy accountPrivacy = accountPrivacyMapper.selectById(uid);
-        String[] ignores = accountPrivacy.hiddenFields();
-        BeanUtils.copyProperties(account, target, ignores);
-        BeanUtils.copyProperties(details, target, ignores);
+        UserCardVO card = userCardService.card(uid);
+        if(card != null)
+            BeanUtils.copyProperties(card, target);
         return target;
     }
-    private TopicPreviewVO resolveToPreview(Topic topic) {
+
+    /**
+     * 批量使用用户名片填充用户信息，名片未命中缓存的用户一次性查询
+     * @param uids 用户ID集合
+     * @param factory 目标对象构造方法
+     * @return 用户ID到填充后对象的映射，账户不存在的用户不会出现在结果中
+     */
+    private <T> Map<Integer, T> fillUsersByPrivacy(Set<Integer> uids, Supplier<T> factory) {
+        Map<Integer, T> result = new HashMap<>();
+        userCardService.cards(uids).forEach((uid, card) -> {
+            T target = factory.get();
+            BeanUtils.copyProperties(card, target);
+            result.put(uid, target);
+        });
+        return result;
+    }
+    /**
+     * 批量将一页帖子转换为预览对象，作者信息只查询一次，点赞/收藏数量取自计数列与Redis中尚未回写的增量
+     * @param topics 帖子列表
+     * @return 预览列表，顺序与传入的帖子一致
+     */
+    private List<TopicPreviewVO> resolveToPreviews(List<Topic> topics) {
+        if(topics.isEmpty()) return List.of();
+        Set<Integer> uids = topics.stream().map(Topic::getUid).collect(Collectors.toSet());
+        Set<Integer> tids = topics.stream().map(Topic::getId).collect(Collectors.toSet());
+        Map<Integer, Account> accounts = accountMapper.selectByIds(uids)
+                .stream()
+                .collect(Collectors.toMap(Account::getId, Function.identity()));
+        Map<Integer, Integer> likes = counterService.pendingDeltas(tids, "like");
+        Map<Integer, Integer> collects = counterService.pendingDeltas(tids, "collect");
+        return topics.stream().map(topic -> this.resolveToPreview(topic,
+                accounts.get(topic.getUid()),
+                Math.max(Objects.requireNonNullElse(topic.getLikeCount(), 0)
+                        + likes.getOrDefault(topic.getId(), 0), 0),
+                Math.max(Objects.requireNonNullElse(topic.getCollectCount(), 0)
+                        + collects.getOrDefault(topic.getId(), 0), 0))).toList();
+    }
+
+    private TopicPreviewVO resolveToPreview(Topic topic, Account account, int like, int collect) {
         TopicPreviewVO vo = new TopicPreviewVO();
-        BeanUtils.copyProperties(accountMapper.selectById(topic.getUid()), vo);
+        if(account != null)
+            BeanUtils.copyProperties(account, vo);
         BeanUtils.copyProperties(topic, vo);
-        vo.setLike(baseMapper.interactCount(topic.getId(), "like"));
-        vo.setCollect(baseMapper.interactCount(topic.getId(), "collect"));
-        List<String> images = new ArrayList<>();
-        StringBuilder previewText = new StringBuilder();
-        if (topic.getContent() != null) {
-            JSONArray ops = JSONObject.parseObject(topic.getContent()).getJSONArray("ops");
-            this.shortContent(ops, previewText, obj -> images.add(obj.toString()));
-        }
-        vo.setText(previewText.length() > 300 ? previewText.substring(0, 300) : previewText.toString());
-        vo.setImages(images);
+        vo.setLike(like);
+        vo.setCollect(collect);
+        if(topic.getPreviewText() == null && topic.getContent() != null)
+            this.fillPreview(topic, DeltaUtils.scan(topic.getContent(), Long.MAX_VALUE, 300, true));
+        vo.setText(Objects.requireNonNullElse(topic.getPreviewText(), ""));
+        vo.setImages(topic.getPreviewImages() == null ?
+                new ArrayList<>() : JSONArray.parseArray(topic.getPreviewImages()).toList(String.class));
         return vo;
     }
 
-    private void shortContent(JSONArray ops, StringBuilder previewText, Consumer<Object> imageHandler){
-        for (Object op : ops) {
-            Object insert = JSONObject.from(op).get("insert");
-            if(insert instanceof String text) {
-                if(previewText.length() >= 300) continue;
-                previewText.append(text);
-            } else if(insert instanceof Map<?, ?> map) {
-                Optional.ofNullable(map.get("image")).ifPresent(imageHandler);
-            }
-        }
-    }
-
-    private boolean textLimitCheck(JSONObject object, int max){
-        if(object == null){return false;}
-        long length = 0;
-        for (Object op : object.getJSONArray("ops")) {
-            length += JSONObject.from(op).getString("insert").length();
-            if(length > max) return false;
-        }
-        return true;
+    /**
+     * 将内容扫描得到的预览文本与图片列表写入帖子对应的预览列
+     * @param topic 帖子
+     * @param summary 帖子内容扫描结果，内容不合法时为null
+     */
+    private void fillPreview(Topic topic, DeltaUtils.Summary summary) {
+        topic.setPreviewText(summary == null ? "" : summary.preview());
+        topic.setPreviewImages(JSONArray.from(summary == null ? List.of() : summary.images()).toJSONString());
     }
 
 }
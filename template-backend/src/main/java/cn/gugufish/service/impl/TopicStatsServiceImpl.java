@@ -0,0 +1,136 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicComment;
+import cn.gugufish.entity.dto.TopicStats;
+import cn.gugufish.mapper.TopicCommentMapper;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.TopicCounterService;
+import cn.gugufish.service.TopicStatsService;
+import cn.gugufish.utils.CacheUtils;
+import cn.gugufish.utils.Const;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import jakarta.annotation.Resource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@Service
+public class TopicStatsServiceImpl implements TopicStatsService {
+
+    /**
+     * 统计数据缓存时间（秒）
+     */
+    private static final long STATS_EXPIRE = 600;
+
+    /**
+     * 重新计算标记的有效时间（秒），需要覆盖一次数据库统计的耗时
+     */
+    private static final long STATS_SEED_EXPIRE = 10;
+
+    /**
+     * 只在统计数据缓存存在时才调整，避免产生只有部分字段、没有过期时间的哈希；
+     * 缓存不存在时删除重新计算标记，正在进行的计算可能没有包含这次变化，其结果不能再写入
+     * KEYS: 统计数据、重新计算标记
+     * ARGV: 统计项、增量
+     */
+    private static final RedisScript<Long> ADJUST_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('exists', KEYS[1]) == 1 then
+                return redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2])
+            end
+            redis.call('del', KEYS[2])
+            return 0
+            """, Long.class);
+
+    /**
+     * 写入重新计算得到的统计数据：标记已被删除说明计算期间有过调整，放弃写入；
+     * 各字段用HSETNX写入，其他请求先写入并已被增量调整过的数据不会被覆盖，
+     * 只有本次新建了哈希时才设置过期时间
+     * KEYS: 统计数据、重新计算标记
+     * ARGV: 本次计算的标记值、缓存时间，随后是成对的统计项与值
+     */
+    private static final RedisScript<Long> STORE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('get', KEYS[2]) ~= ARGV[1] then return 0 end
+            redis.call('del', KEYS[2])
+            local created = 0
+            for i = 3, #ARGV, 2 do
+                created = created + redis.call('hsetnx', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            if created > 0 then redis.call('expire', KEYS[1], ARGV[2]) end
+            return created
+            """, Long.class);
+
+    @Resource
+    StringRedisTemplate template;
+    @Resource
+    TopicMapper topicMapper;
+    @Resource
+    TopicCommentMapper commentMapper;
+    @Resource
+    TopicCounterService counterService;
+    @Resource
+    CacheUtils cacheUtils;
+
+    /**
+     * 获取帖子的统计数据，缓存不存在时先设置重新计算标记再查询数据库，
+     * 计算结果总会返回，但只有计算期间没有发生调整时才写入缓存
+     * @param tid 帖子ID
+     * @return 统计数据
+     */
+    @Override
+    public TopicStats stats(int tid) {
+        String key = Const.FORUM_TOPIC_STATS + tid;
+        Map<Object, Object> cached = template.opsForHash().entries(key);
+        if(!cached.isEmpty()) {
+            return new TopicStats(
+                    this.parse(cached.get("comments")),
+                    this.parse(cached.get("like")),
+                    this.parse(cached.get("collect")));
+        }
+        String seedKey = Const.FORUM_TOPIC_STATS_SEED + tid;
+        String token = UUID.randomUUID().toString();
+        template.opsForValue().set(seedKey, token, STATS_SEED_EXPIRE, TimeUnit.SECONDS);
+        Topic topic = topicMapper.selectOne(Wrappers.<Topic>query()
+                .select("id", "like_count", "collect_count")
+                .eq("id", tid));
+        if(topic == null) return new TopicStats();
+        Map<Integer, Integer> likes = counterService.pendingDeltas(List.of(tid), "like");
+        Map<Integer, Integer> collects = counterService.pendingDeltas(List.of(tid), "collect");
+        TopicStats stats = new TopicStats(
+                commentMapper.selectCount(Wrappers.<TopicComment>query().eq("tid", tid)),
+                Math.max(Objects.requireNonNullElse(topic.getLikeCount(), 0) + likes.getOrDefault(tid, 0), 0),
+                Math.max(Objects.requireNonNullElse(topic.getCollectCount(), 0) + collects.getOrDefault(tid, 0), 0));
+        template.execute(STORE_SCRIPT, List.of(key, seedKey), token, String.valueOf(STATS_EXPIRE),
+                "comments", String.valueOf(stats.getComments()),
+                "like", String.valueOf(stats.getLike()),
+                "collect", String.valueOf(stats.getCollect()));
+        return stats;
+    }
+
+    @Override
+    public void adjust(int tid, String field, long delta) {
+        template.execute(ADJUST_SCRIPT, List.of(Const.FORUM_TOPIC_STATS + tid, Const.FORUM_TOPIC_STATS_SEED + tid),
+                field, String.valueOf(delta));
+    }
+
+    @Override
+    public void evict(int tid) {
+        template.delete(List.of(Const.FORUM_TOPIC_STATS + tid, Const.FORUM_TOPIC_STATS_SEED + tid));
+    }
+
+    @Override
+    public void evictAll() {
+        cacheUtils.deleteCachePattern(Const.FORUM_TOPIC_STATS + "*");
+    }
+
+    private long parse(Object value) {
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+}
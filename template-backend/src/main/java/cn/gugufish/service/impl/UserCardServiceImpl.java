@@ -0,0 +1,114 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Account;
+import cn.gugufish.entity.dto.AccountDetails;
+import cn.gugufish.entity.dto.AccountPrivacy;
+import cn.gugufish.entity.vo.response.UserCardVO;
+import cn.gugufish.mapper.AccountDetailsMapper;
+import cn.gugufish.mapper.AccountMapper;
+import cn.gugufish.mapper.AccountPrivacyMapper;
+import cn.gugufish.service.UserCardService;
+import cn.gugufish.utils.CacheUtils;
+import cn.gugufish.utils.Const;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class UserCardServiceImpl implements UserCardService {
+
+    /**
+     * 名片在Redis中的缓存时间（秒）
+     */
+    private static final long CARD_EXPIRE = 3600;
+
+    @Resource
+    AccountMapper accountMapper;
+    @Resource
+    AccountDetailsMapper detailsMapper;
+    @Resource
+    AccountPrivacyMapper privacyMapper;
+    @Resource
+    CacheUtils cacheUtils;
+
+    @PostConstruct
+    private void initCache() {
+        cacheUtils.registerLocalCache(Const.USER_CARD_CACHE, 5000, 60);
+    }
+
+    @Override
+    public UserCardVO card(int uid) {
+        return this.cards(List.of(uid)).get(uid);
+    }
+
+    @Override
+    public Map<Integer, UserCardVO> cards(Collection<Integer> uids) {
+        if(uids.isEmpty()) return Map.of();
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(uids));
+        List<UserCardVO> cached = cacheUtils.takeAllFromCache(ids.stream()
+                .map(id -> Const.USER_CARD_CACHE + id)
+                .toList(), UserCardVO.class);
+        Map<Integer, UserCardVO> result = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if(cached.get(i) != null)
+                result.put(ids.get(i), cached.get(i));
+            else
+                missing.add(ids.get(i));
+        }
+        if(!missing.isEmpty()) {
+            this.loadCards(missing).forEach((id, card) -> {
+                cacheUtils.saveToCache(Const.USER_CARD_CACHE + id, card, CARD_EXPIRE);
+                result.put(id, card);
+            });
+        }
+        return result;
+    }
+
+    @Override
+    public void evict(int uid) {
+        String key = Const.USER_CARD_CACHE + uid;
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheUtils.deleteCache(key);
+                }
+            });
+        } else {
+            cacheUtils.deleteCache(key);
+        }
+    }
+
+    /**
+     * 从数据库批量构建名片，账户、详细信息、隐私设置各查询一次
+     * @param uids 用户ID列表
+     * @return 用户ID与名片的映射
+     */
+    private Map<Integer, UserCardVO> loadCards(List<Integer> uids) {
+        Map<Integer, AccountDetails> details = detailsMapper.selectByIds(uids)
+                .stream()
+                .collect(Collectors.toMap(AccountDetails::getId, Function.identity()));
+        Map<Integer, AccountPrivacy> privacies = privacyMapper.selectByIds(uids)
+                .stream()
+                .collect(Collectors.toMap(AccountPrivacy::getId, Function.identity()));
+        Map<Integer, UserCardVO> cards = new HashMap<>();
+        for (Account account : accountMapper.selectByIds(uids)) {
+            UserCardVO card = new UserCardVO();
+            String[] ignores = privacies.getOrDefault(account.getId(), new AccountPrivacy(account.getId())).hiddenFields();
+            BeanUtils.copyProperties(account, card, ignores);
+            AccountDetails detail = details.get(account.getId());
+            if(detail != null)
+                BeanUtils.copyProperties(detail, card, ignores);
+            cards.put(account.getId(), card);
+        }
+        return cards;
+    }
+}
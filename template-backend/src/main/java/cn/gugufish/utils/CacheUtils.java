@@ -2,24 +2,87 @@ package cn.gugufish.utils;
 
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Redis缓存操作工具类
  * 提供统一的缓存数据存取接口，简化Redis操作，提高开发效率
  *
+ * 两级缓存：
+ * - L1：进程内缓存，按键前缀注册开启，保存已经反序列化好的对象，按容量与存活时间淘汰
+ * - L2：Redis缓存，所有节点共享
+ * 删除缓存或使命名空间失效时，会通过Redis发布/订阅通知其他节点清除各自的L1缓存
+ *
  * @author GuguFish
  */
+@Slf4j
 @Component
 public class CacheUtils {
+
+    /**
+     * SCAN命令每批返回的建议键数量，以及批量删除时每批的键数量
+     */
+    private static final int SCAN_BATCH_SIZE = 500;
+
+    /**
+     * 缓存失效广播消息的类型前缀
+     */
+    private static final String INVALIDATE_KEY = "key:";
+    private static final String INVALIDATE_NAMESPACE = "namespace:";
+
+    /**
+     * 提前刷新的激进程度，越大越早刷新，1为XFetch算法的推荐值
+     */
+    private static final double EARLY_REFRESH_BETA = 1.0;
+
+    /**
+     * 分布式加载锁的超时时间，以及未拿到锁的节点等待加载结果的最长时间（毫秒）
+     */
+    private static final long LOAD_LOCK_TIMEOUT = 3000;
+
+    /**
+     * 加载结果为空时空标记的缓存时间（秒），空列表页、不存在的帖子在并发访问时
+     * 不会让未拿到锁的节点一直等到锁超时，也不会每次都穿透到数据库
+     */
+    private static final long NULL_EXPIRE = 10;
+
+    /**
+     * 等待其他节点加载结果时的轮询间隔（毫秒）
+     */
+    private static final long LOAD_WAIT_INTERVAL = 50;
+
+    /**
+     * 只释放自己持有的锁
+     */
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
     
     /**
      * Spring Redis模板
@@ -29,45 +92,151 @@ public class CacheUtils {
     @Resource
     StringRedisTemplate template;
 
+    /**
+     * Redis消息监听容器，用于接收其他节点发出的缓存失效通知
+     */
+    @Resource
+    RedisMessageListenerContainer container;
+
+    /**
+     * 已注册的L1缓存，每个键前缀对应一个独立的进程内缓存
+     */
+    private final List<LocalTier> tiers = new CopyOnWriteArrayList<>();
+
+    /**
+     * 正在进行中的缓存加载，用于合并同一个键的并发加载请求
+     */
+    private final Map<String, CompletableFuture<Entry<?>>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * 开启了L1缓存的命名空间的版本号本地副本，避免每次拼接键名都访问Redis，
+     * 短时间过期作为丢失失效通知时的兜底
+     */
+    private final Cache<String, Long> generations = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(5, TimeUnit.SECONDS)
+            .build();
+
+    /**
+     * 订阅缓存失效广播频道
+     */
+    @PostConstruct
+    private void subscribeInvalidation() {
+        container.addMessageListener((message, pattern) ->
+                this.handleInvalidation(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(Const.CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 为指定键前缀开启L1进程内缓存
+     * 开启后，以该前缀开头的缓存在读取时会优先从进程内获取已经反序列化好的对象，
+     * 未命中时再访问Redis，并将结果放入进程内缓存
+     *
+     * 注意：L1中的对象会被多个请求共享，调用方不应修改取出的对象；
+     * 存活时间应不大于该前缀缓存在Redis中的过期时间
+     *
+     * @param prefix 键前缀
+     * @param maximumSize 最多缓存的条目数量
+     * @param ttl 存活时间（秒）
+     */
+    public void registerLocalCache(String prefix, long maximumSize, long ttl) {
+        tiers.add(new LocalTier(prefix, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .build()));
+    }
+
     /**
      * 从缓存中获取单个对象
-     * 将Redis中存储的JSON字符串反序列化为指定类型的Java对象
+     * 优先从L1进程内缓存获取，未命中时将Redis中存储的JSON字符串反序列化为指定类型的Java对象
      * 
      * @param <T> 目标对象类型的泛型参数
      * @param key Redis键名，用于标识缓存数据
      * @param dataType 目标对象的Class类型，用于反序列化
      * @return 反序列化后的对象实例，如果缓存不存在则返回null
      */
+    @SuppressWarnings("unchecked")
     public <T> T takeFromCache(String key, Class<T> dataType) {
+        LocalTier tier = this.localTier(key);
+        if(tier != null) {
+            Object value = tier.cache().getIfPresent(key);
+            if(value != null) return (T) value;
+        }
         // 从Redis中获取JSON字符串
         String s = template.opsForValue().get(key);
         if(s == null) return null;
         
         // 将JSON字符串解析并转换为目标类型对象
-        return JSONObject.parseObject(s).to(dataType);
+        T data = JSONObject.parseObject(s).to(dataType);
+        if(tier != null) tier.cache().put(key, data);
+        return data;
+    }
+
+    /**
+     * 批量从缓存中获取多个对象
+     * 开启了L1的键优先从进程内缓存获取，其余的键通过一次MGET从Redis获取
+     *
+     * @param <T> 目标对象类型的泛型参数
+     * @param keys Redis键名列表
+     * @param dataType 目标对象的Class类型，用于反序列化
+     * @return 与键名列表一一对应的对象列表，缓存不存在的位置为null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> takeAllFromCache(List<String> keys, Class<T> dataType) {
+        List<T> result = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        List<Integer> remote = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            LocalTier tier = this.localTier(keys.get(i));
+            Object value = tier == null ? null : tier.cache().getIfPresent(keys.get(i));
+            if(value != null)
+                result.set(i, (T) value);
+            else
+                remote.add(i);
+        }
+        if(remote.isEmpty()) return result;
+        List<String> values = template.opsForValue().multiGet(remote.stream().map(keys::get).toList());
+        if(values == null) return result;
+        for (int i = 0; i < remote.size(); i++) {
+            String s = values.get(i);
+            if(s == null) continue;
+            String key = keys.get(remote.get(i));
+            T data = JSONObject.parseObject(s).to(dataType);
+            LocalTier tier = this.localTier(key);
+            if(tier != null) tier.cache().put(key, data);
+            result.set(remote.get(i), data);
+        }
+        return result;
     }
 
     /**
      * 从缓存中获取对象列表
-     * 将Redis中存储的JSON数组字符串反序列化为指定类型的Java对象列表
+     * 优先从L1进程内缓存获取，未命中时将Redis中存储的JSON数组字符串反序列化为指定类型的Java对象列表
      * 
      * @param <T> 列表元素类型的泛型参数
      * @param key Redis键名，用于标识缓存数据
      * @param itemType 列表元素的Class类型，用于反序列化
      * @return 反序列化后的对象列表，如果缓存不存在则返回null
      */
+    @SuppressWarnings("unchecked")
     public <T> List<T> takeListFromCache(String key, Class<T> itemType) {
+        LocalTier tier = this.localTier(key);
+        if(tier != null) {
+            Object value = tier.cache().getIfPresent(key);
+            if(value != null) return (List<T>) value;
+        }
         // 从Redis中获取JSON数组字符串
         String s = template.opsForValue().get(key);
         if(s == null) return null;
         
         // 将JSON数组字符串解析并转换为目标类型的List
-        return JSONArray.parseArray(s).toList(itemType);
+        List<T> list = JSONArray.parseArray(s).toList(itemType);
+        if(tier != null) tier.cache().put(key, list);
+        return list;
     }
 
     /**
      * 将单个对象保存到缓存
-     * 将Java对象序列化为JSON字符串并存储到Redis中，同时设置过期时间
+     * 将Java对象序列化为JSON字符串并存储到Redis中，同时设置过期时间，开启了L1的键同时放入进程内缓存
      * @param <T> 对象类型的泛型参数
      * @param key Redis键名，用于标识缓存数据
      * @param data 要缓存的Java对象
@@ -76,11 +245,13 @@ public class CacheUtils {
     public <T> void saveToCache(String key, T data, long expire) {
         // 将对象序列化为JSON字符串并存储到Redis
         template.opsForValue().set(key, JSONObject.from(data).toJSONString(), expire, TimeUnit.SECONDS);
+        LocalTier tier = this.localTier(key);
+        if(tier != null) tier.cache().put(key, data);
     }
 
     /**
      * 将对象列表保存到缓存
-     * 将Java对象列表序列化为JSON数组字符串并存储到Redis中，同时设置过期时间
+     * 将Java对象列表序列化为JSON数组字符串并存储到Redis中，同时设置过期时间，开启了L1的键同时放入进程内缓存
      * @param <T> 列表元素类型的泛型参数
      * @param key Redis键名，用于标识缓存数据
      * @param list 要缓存的Java对象列表
@@ -89,25 +260,165 @@ public class CacheUtils {
     public <T> void saveListToCache(String key, List<T> list, long expire) {
         // 将对象列表序列化为JSON数组字符串并存储到Redis
         template.opsForValue().set(key, JSONArray.from(list).toJSONString(), expire, TimeUnit.SECONDS);
+        LocalTier tier = this.localTier(key);
+        if(tier != null) tier.cache().put(key, list);
+    }
+
+    /**
+     * 只从L1进程内缓存中获取对象，不访问Redis
+     * 适用于只在各节点内存中维护、不写入Redis的数据，如无法直接序列化为JSON的索引结构
+     * @param <T> 目标对象类型的泛型参数
+     * @param key 键名，必须属于已注册L1缓存的前缀
+     * @param dataType 目标对象的Class类型
+     * @return 缓存的对象，不存在时返回null
+     */
+    public <T> T takeFromLocal(String key, Class<T> dataType) {
+        LocalTier tier = this.localTier(key);
+        if(tier == null) return null;
+        Object value = tier.cache().getIfPresent(key);
+        return dataType.isInstance(value) ? dataType.cast(value) : null;
+    }
+
+    /**
+     * 只将对象放入L1进程内缓存，不写入Redis
+     * 需要失效时使用invalidateLocal通知所有节点
+     * @param key 键名，必须属于已注册L1缓存的前缀
+     * @param data 要缓存的对象
+     */
+    public void saveToLocal(String key, Object data) {
+        LocalTier tier = this.localTier(key);
+        if(tier != null) tier.cache().put(key, data);
     }
 
     /**
      * 删除指定的缓存项
-     * 根据精确的键名删除Redis中的缓存数据
+     * 根据精确的键名删除Redis中的缓存数据，并通知所有节点清除对应的L1缓存
      * @param key 要删除的Redis键名
      */
     public void deleteCache(String key){
         template.delete(key);
+        this.invalidateLocal(key);
+    }
+
+    /**
+     * 只清除所有节点L1进程内缓存中的指定键，不删除Redis中的数据
+     * 适用于数据本身不在Redis中、只在各节点内存中缓存的场景
+     * @param key 键名
+     */
+    public void invalidateLocal(String key) {
+        this.evictLocal(key);
+        this.broadcast(INVALIDATE_KEY + key);
     }
     
+    /**
+     * 读取缓存，未命中时调用加载函数计算并写入缓存（单个对象）
+     * 并发请求同一个键时只会有一个请求真正执行加载函数，其余请求等待并共享其结果，
+     * 热点键会在过期之前以一定概率被提前重新计算，避免过期瞬间大量请求同时穿透到数据库
+     *
+     * 注意：通过此方法写入的缓存带有额外的元数据，只能通过此方法读取
+     *
+     * @param <T> 目标对象类型的泛型参数
+     * @param key Redis键名
+     * @param dataType 目标对象的Class类型，用于反序列化
+     * @param expire 过期时间（秒）
+     * @param loader 加载函数，返回null时只短时间缓存空结果
+     * @return 缓存或加载得到的对象
+     */
+    public <T> T getOrLoad(String key, Class<T> dataType, long expire, Supplier<T> loader) {
+        return this.getOrLoad(key, dataType, expire, false, loader);
+    }
+
+    /**
+     * 读取缓存，未命中时调用加载函数计算并写入缓存（单个对象）
+     * @param <T> 目标对象类型的泛型参数
+     * @param key Redis键名
+     * @param dataType 目标对象的Class类型，用于反序列化
+     * @param expire 过期时间（秒）
+     * @param distributed 是否使用Redis锁在多个节点之间合并加载，否则只在当前进程内合并
+     * @param loader 加载函数，返回null时只短时间缓存空结果
+     * @return 缓存或加载得到的对象
+     */
+    public <T> T getOrLoad(String key, Class<T> dataType, long expire, boolean distributed, Supplier<T> loader) {
+        return this.load(key, expire, distributed, loader, object -> object.getObject("v", dataType));
+    }
+
+    /**
+     * 读取缓存，未命中时调用加载函数计算并写入缓存（对象列表）
+     * @param <T> 列表元素类型的泛型参数
+     * @param key Redis键名
+     * @param itemType 列表元素的Class类型，用于反序列化
+     * @param expire 过期时间（秒）
+     * @param loader 加载函数，返回null时只短时间缓存空结果
+     * @return 缓存或加载得到的对象列表
+     */
+    public <T> List<T> getListOrLoad(String key, Class<T> itemType, long expire, Supplier<List<T>> loader) {
+        return this.getListOrLoad(key, itemType, expire, false, loader);
+    }
+
+    /**
+     * 读取缓存，未命中时调用加载函数计算并写入缓存（对象列表）
+     * @param <T> 列表元素类型的泛型参数
+     * @param key Redis键名
+     * @param itemType 列表元素的Class类型，用于反序列化
+     * @param expire 过期时间（秒）
+     * @param distributed 是否使用Redis锁在多个节点之间合并加载，否则只在当前进程内合并
+     * @param loader 加载函数，返回null时只短时间缓存空结果
+     * @return 缓存或加载得到的对象列表
+     */
+    public <T> List<T> getListOrLoad(String key, Class<T> itemType, long expire, boolean distributed, Supplier<List<T>> loader) {
+        return this.load(key, expire, distributed, loader, object -> object.getJSONArray("v").toList(itemType));
+    }
+
+    /**
+     * 获取带版本号的命名空间缓存键
+     * 命名空间的当前版本号会被嵌入键名中，格式为：命名空间 + 版本号 + ":" + 键名，
+     * 版本号递增后旧版本的键不会再被访问，等待自身过期即可，无需逐个删除
+     *
+     * 使用示例：
+     * - namespaceKey("topic:preview:", "1:0") -> "topic:preview:3:1:0"
+     *
+     * @param namespace 命名空间，即原先的缓存键前缀
+     * @param key 命名空间内的键名
+     * @return 实际存储使用的Redis键名
+     */
+    public String namespaceKey(String namespace, String key) {
+        return namespace + this.namespaceGeneration(namespace) + ":" + key;
+    }
+
+    /**
+     * 获取命名空间当前的版本号
+     * 开启了L1缓存的命名空间会在本地短暂缓存版本号，其余命名空间每次都从Redis读取
+     * @param namespace 命名空间
+     * @return 版本号，从未失效过的命名空间版本号为0
+     */
+    public long namespaceGeneration(String namespace) {
+        if(this.localTier(namespace) == null)
+            return this.loadGeneration(namespace);
+        return generations.get(namespace, this::loadGeneration);
+    }
+
+    /**
+     * 使整个命名空间下的缓存失效
+     * 只需要一次INCR递增版本号，不会像KEYS那样扫描整个键空间阻塞Redis，
+     * 旧版本的缓存会按照各自的过期时间自然淘汰，同时通知所有节点清除该命名空间下的L1缓存
+     *
+     * @param namespace 命名空间
+     */
+    public void invalidateNamespace(String namespace) {
+        Long generation = template.opsForValue().increment(Const.CACHE_GENERATION + namespace);
+        this.evictLocalNamespace(namespace);
+        if(generation != null && this.localTier(namespace) != null)
+            generations.put(namespace, generation);
+        this.broadcast(INVALIDATE_NAMESPACE + namespace);
+    }
+
     /**
      * 批量删除匹配模式的缓存项
      * 根据通配符模式查找并删除多个Redis键，适用于批量清理缓存
      * 
      * 工作流程：
-     * 1. 使用Redis的KEYS命令查找匹配模式的所有键名
-     * 2. 如果找到匹配的键，批量删除这些键
-     * 3. 如果没有找到匹配的键，返回空集合，避免空指针异常
+     * 1. 使用Redis的SCAN命令分批增量遍历匹配模式的键名，不会长时间阻塞Redis
+     * 2. 每收集到一批键就批量删除一次
      * 
      * 通配符规则：
      * - * : 匹配任意字符序列（包括空字符）
@@ -120,12 +431,256 @@ public class CacheUtils {
      * - "session:user:*" : 删除特定用户的所有会话缓存
      * - "*:temp" : 删除所有以":temp"结尾的临时缓存
      *
+     * 注意：需要整体失效的缓存请优先使用命名空间版本号，此方法只用于确实需要清扫键的场景
+     *
      * @param key 键名的通配符模式，支持Redis的通配符语法
      */
     public void deleteCachePattern(String key){
-        // 查找匹配模式的所有键名，使用Optional避免空指针异常
-        Set<String> keys = Optional.ofNullable(template.keys(key)).orElse(Collections.emptySet());
-        // 批量删除匹配的键
-        template.delete(keys);
+        List<String> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+        this.scanKeys(key, k -> {
+            batch.add(k);
+            if(batch.size() >= SCAN_BATCH_SIZE) {
+                template.delete(batch);
+                batch.clear();
+            }
+        });
+        if(!batch.isEmpty())
+            template.delete(batch);
+    }
+
+    /**
+     * 使用SCAN命令增量遍历匹配模式的键名
+     * 每次只向Redis请求一小批键，避免KEYS命令在大键空间下阻塞整个Redis服务
+     *
+     * @param pattern 键名的通配符模式
+     * @param action 对每个匹配键执行的操作
+     */
+    public void scanKeys(String pattern, Consumer<String> action) {
+        ScanOptions options = ScanOptions.scanOptions().match(pattern).count(SCAN_BATCH_SIZE).build();
+        try (Cursor<String> cursor = template.scan(options)) {
+            cursor.forEachRemaining(action);
+        }
+    }
+
+    /**
+     * 尝试获取Redis锁并执行操作，锁已被其他节点持有时直接返回，不会等待
+     * 锁在超时后自动释放，操作中需要原子校验锁是否仍归自己所有时，
+     * 可以在脚本中比较锁键的值与传入的令牌
+     *
+     * @param lockKey 锁键
+     * @param timeout 锁的超时时间（毫秒）
+     * @param action 持有锁时执行的操作，参数为本次加锁的令牌
+     * @return 是否获取到锁并执行了操作
+     */
+    public boolean tryWithLock(String lockKey, long timeout, Consumer<String> action) {
+        String token = UUID.randomUUID().toString();
+        if(!Boolean.TRUE.equals(template.opsForValue().setIfAbsent(lockKey, token, timeout, TimeUnit.MILLISECONDS)))
+            return false;
+        try {
+            action.accept(token);
+            return true;
+        } finally {
+            template.execute(UNLOCK_SCRIPT, List.of(lockKey), token);
+        }
+    }
+
+    /**
+     * 带请求合并与提前刷新的缓存加载
+     *
+     * 缓存值以信封形式存储：{"e":过期时间戳,"d":上次计算耗时,"v":缓存值}，
+     * 读取时按照XFetch算法判断是否需要提前刷新：now - d * β * ln(rand) >= e，
+     * 计算越慢、越接近过期的键越容易被提前刷新，且同一时刻通常只有极少数请求会触发
+     *
+     * @param key Redis键名
+     * @param expire 过期时间（秒）
+     * @param distributed 是否使用Redis锁
+     * @param loader 加载函数
+     * @param decoder 从信封中解析缓存值
+     * @return 缓存值
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T load(String key, long expire, boolean distributed,
+                       Supplier<T> loader, Function<JSONObject, T> decoder) {
+        LocalTier tier = this.localTier(key);
+        Entry<T> entry = null;
+        if(tier != null && tier.cache().getIfPresent(key) instanceof Entry<?> local)
+            entry = (Entry<T>) local;
+        if(entry == null) {
+            entry = this.readEntry(key, decoder);
+            if(entry != null && tier != null) tier.cache().put(key, entry);
+        }
+        if(entry != null && !entry.shouldRefresh()) return entry.value();
+        Entry<T> stale = entry != null && !entry.expired() ? entry : null;
+        Entry<T> result = this.singleFlight(key, () -> this.recompute(key, expire, distributed, loader, decoder, stale));
+        return result == null ? null : result.value();
+    }
+
+    /**
+     * 同一个进程内，同一个键同时只执行一次加载，其余调用等待并共享结果
+     * @param key 键名
+     * @param action 加载操作
+     * @return 加载结果
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Entry<T> singleFlight(String key, Supplier<Entry<T>> action) {
+        CompletableFuture<Entry<?>> future = new CompletableFuture<>();
+        CompletableFuture<Entry<?>> running = flights.putIfAbsent(key, future);
+        if(running != null) {
+            try {
+                return (Entry<T>) running.join();
+            } catch (CompletionException e) {
+                if(e.getCause() instanceof RuntimeException runtime) throw runtime;
+                throw e;
+            }
+        }
+        try {
+            Entry<T> entry = action.get();
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, future);
+        }
+    }
+
+    /**
+     * 重新计算缓存值
+     * 分布式模式下只有拿到Redis锁的节点执行加载，其余节点在有旧值时直接返回旧值，
+     * 没有旧值时短暂等待加载结果，等待超时后再自行加载兜底
+     */
+    private <T> Entry<T> recompute(String key, long expire, boolean distributed,
+                                   Supplier<T> loader, Function<JSONObject, T> decoder, Entry<T> stale) {
+        if(!distributed) return this.loadAndSave(key, expire, loader);
+        String lockKey = Const.CACHE_LOAD_LOCK + key;
+        String token = UUID.randomUUID().toString();
+        if(Boolean.TRUE.equals(template.opsForValue().setIfAbsent(lockKey, token, LOAD_LOCK_TIMEOUT, TimeUnit.MILLISECONDS))) {
+            try {
+                return this.loadAndSave(key, expire, loader);
+            } finally {
+                template.execute(UNLOCK_SCRIPT, List.of(lockKey), token);
+            }
+        }
+        if(stale != null) return stale;
+        long deadline = System.currentTimeMillis() + LOAD_LOCK_TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LOAD_WAIT_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Entry<T> entry = this.readEntry(key, decoder);
+            if(entry != null) {
+                LocalTier tier = this.localTier(key);
+                if(tier != null) tier.cache().put(key, entry);
+                return entry;
+            }
+        }
+        return this.loadAndSave(key, expire, loader);
+    }
+
+    /**
+     * 执行加载函数，并将结果连同计算耗时与过期时间写入Redis和L1缓存，
+     * 结果为空时写入一个不带值的空标记，过期时间不超过{@value #NULL_EXPIRE}秒
+     */
+    private <T> Entry<T> loadAndSave(String key, long expire, Supplier<T> loader) {
+        long start = System.currentTimeMillis();
+        T value = loader.get();
+        if(value == null) expire = Math.min(expire, NULL_EXPIRE);
+        long now = System.currentTimeMillis();
+        Entry<T> entry = new Entry<>(value, now - start, now + expire * 1000);
+        JSONObject envelope = JSONObject.of("e", entry.expireAt(), "d", entry.delta(), "v", value);
+        template.opsForValue().set(key, envelope.toJSONString(), expire, TimeUnit.SECONDS);
+        LocalTier tier = this.localTier(key);
+        if(tier != null) tier.cache().put(key, entry);
+        return entry;
+    }
+
+    private <T> Entry<T> readEntry(String key, Function<JSONObject, T> decoder) {
+        String s = template.opsForValue().get(key);
+        if(s == null) return null;
+        JSONObject object = JSONObject.parseObject(s);
+        //空标记不含值字段
+        return new Entry<>(object.get("v") == null ? null : decoder.apply(object), object.getLongValue("d"), object.getLongValue("e"));
+    }
+
+    private long loadGeneration(String namespace) {
+        String generation = template.opsForValue().get(Const.CACHE_GENERATION + namespace);
+        return generation == null ? 0 : Long.parseLong(generation);
+    }
+
+    /**
+     * 查找键所属的L1缓存
+     * @param key 键名
+     * @return 对应的L1缓存，没有开启时返回null
+     */
+    private LocalTier localTier(String key) {
+        for (LocalTier tier : tiers) {
+            if(key.startsWith(tier.prefix())) return tier;
+        }
+        return null;
+    }
+
+    private void evictLocal(String key) {
+        LocalTier tier = this.localTier(key);
+        if(tier != null) tier.cache().invalidate(key);
+    }
+
+    private void evictLocalNamespace(String namespace) {
+        generations.invalidate(namespace);
+        LocalTier tier = this.localTier(namespace);
+        if(tier != null)
+            tier.cache().asMap().keySet().removeIf(key -> key.startsWith(namespace));
+    }
+
+    /**
+     * 向其他节点广播缓存失效消息，没有开启任何L1缓存时无需广播
+     * @param message 失效消息
+     */
+    private void broadcast(String message) {
+        if(tiers.isEmpty()) return;
+        try {
+            template.convertAndSend(Const.CACHE_INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            log.warn("缓存失效广播发送失败: {}", message, e);
+        }
+    }
+
+    /**
+     * 处理其他节点（也包括自身）发出的缓存失效消息
+     * @param message 失效消息
+     */
+    private void handleInvalidation(String message) {
+        if(message.startsWith(INVALIDATE_KEY))
+            this.evictLocal(message.substring(INVALIDATE_KEY.length()));
+        else if(message.startsWith(INVALIDATE_NAMESPACE))
+            this.evictLocalNamespace(message.substring(INVALIDATE_NAMESPACE.length()));
+    }
+
+    /**
+     * L1进程内缓存
+     * @param prefix 键前缀
+     * @param cache 缓存容器
+     */
+    private record LocalTier(String prefix, Cache<String, Object> cache) {}
+
+    /**
+     * 通过getOrLoad写入的缓存项
+     * @param value 缓存值
+     * @param delta 上次计算耗时（毫秒）
+     * @param expireAt 过期时间戳（毫秒）
+     */
+    private record Entry<T>(T value, long delta, long expireAt) {
+
+        boolean expired() {
+            return System.currentTimeMillis() >= expireAt;
+        }
+
+        boolean shouldRefresh() {
+            double random = 1 - ThreadLocalRandom.current().nextDouble();
+            return System.currentTimeMillis() - delta * EARLY_REFRESH_BETA * Math.log(random) >= expireAt;
+        }
     }
-}
\ No newline at end of file
+}
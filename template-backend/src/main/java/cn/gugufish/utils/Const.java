@@ -7,9 +7,14 @@ public final class Const {
     //JWT令牌
     public final static String JWT_BLACK_LIST = "jwt:blacklist:";
     public final static String JWT_FREQUENCY = "jwt:frequency:";
+    //缓存命名空间版本号
+    public final static String CACHE_GENERATION = "cache:generation:";
+    public final static String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public final static String CACHE_LOAD_LOCK = "cache:lock:";
     //请求频率限制
     public final static String FLOW_LIMIT_COUNTER = "flow:counter:";
     public final static String FLOW_LIMIT_BLOCK = "flow:block:";
+    public final static String FLOW_LIMIT_ENDPOINT = "flow:endpoint:";
     public final static String BANNED_BLOCK = "banned:block:";
     //邮件验证码
     public final static String VERIFY_EMAIL_LIMIT = "verify:email:limit:";
@@ -22,6 +27,7 @@ public final class Const {
     //消息队列
     public final static String MQ_MAIL = "mail";
     public final static String MQ_ERROR = "error";
+    public final static String MQ_NOTIFICATION = "notification";
     //用户角色
     public final static String ROLE_DEFAULT = "user";
     public final static String ROLE_ADMIN = "admin";
@@ -30,6 +36,27 @@ public final class Const {
     public final static String FORUM_TOPIC_CREATE_COUNTER ="forum:topic:create:";
     public final static String FORUM_TOPIC_COMMENT_COUNTER = "forum:topic:comment:";
     public final static String FORUM_TOPIC_PREVIEW_CACHE ="topic:preview:";
+    public final static String FORUM_TOPIC_DETAIL_CACHE = "topic:detail:";
+    public final static String FORUM_TOPIC_VERSION = "topic:version:";
+    public final static String FORUM_TOPIC_TOP_VERSION = "topic:top:";
+    public final static String FORUM_TOPIC_STATS = "topic:stats:";
+    public final static String FORUM_TOPIC_STATS_SEED = "topic:stats:seed:";
+    public final static String FORUM_TOPIC_HOT = "forum:topic:hot";
+    public final static String FORUM_TOPIC_HOT_EPOCH = "forum:topic:hot:epoch";
+    public final static String FORUM_TOPIC_HOT_CACHE = "topic:hot:";
+    public final static String FORUM_TOPIC_COUNTER = "forum:topic:counter:";
+    public final static String FORUM_TOPIC_COUNTER_DRAIN = "forum:topic:counter:drain:";
+    public final static String FORUM_TOPIC_COUNTER_LOCK = "forum:topic:counter:lock:";
+    public final static String FORUM_INTERACT_PENDING = "forum:interact:pending:";
+    public final static String FORUM_INTERACT_DRAIN = "forum:interact:drain:";
+    public final static String FORUM_INTERACT_INDEX = "forum:interact:index:";
+    public final static String FORUM_INTERACT_VERSION = "forum:interact:version:";
+    public final static String FORUM_INTERACT_LOCK = "forum:interact:lock:";
+    public final static String USER_CARD_CACHE = "user:card:";
+    public final static String NOTIFICATION_UNREAD = "notification:unread:";
+    public final static String NOTIFICATION_UNREAD_SEED = "notification:unread:seed:";
+    public final static String NOTIFICATION_CHANNEL = "notification:push";
+    public final static String NOTIFICATION_TICKET = "notification:ticket:";
     public static final String REDIS_PV_KEY = "visit:pv:";
     public static final String REDIS_UV_HLL_KEY = "visit:uv:hll:";
 }
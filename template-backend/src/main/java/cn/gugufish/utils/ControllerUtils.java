@@ -1,7 +1,11 @@
 package cn.gugufish.utils;
 
 import cn.gugufish.entity.RestBean;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.function.Supplier;
 @Component
@@ -19,4 +23,18 @@ public class ControllerUtils {
         else
             return RestBean.failure(400, message);
     }
+
+    /**
+     * 比对客户端携带的ETag，并允许客户端缓存响应但每次使用前都必须重新验证，
+     * 响应中已有Cache-Control时Spring Security不会再写入默认的no-store
+     * @param request 当前请求
+     * @param etag 当前版本号
+     * @return 客户端缓存是否仍然有效，有效时已经设置了304状态码
+     */
+    public boolean checkNotModified(ServletWebRequest request, String etag) {
+        HttpServletResponse response = request.getResponse();
+        if(response != null)
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        return request.checkNotModified(etag);
+    }
 }
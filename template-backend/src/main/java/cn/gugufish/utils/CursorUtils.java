@@ -0,0 +1,54 @@
+package cn.gugufish.utils;
+
+import jakarta.validation.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页工具类
+ * 将排序键（如时间戳、ID）编码为不透明的游标字符串返回给前端，
+ * 下一页请求时再解码为排序键作为查询条件，避免深分页时LIMIT offset带来的全量扫描
+ *
+ * @author GuguFish
+ */
+public class CursorUtils {
+
+    /**
+     * 将排序键编码为游标
+     * @param keys 排序键，按排序优先级依次传入
+     * @return URL安全的游标字符串
+     */
+    public static String encode(long... keys) {
+        StringBuilder builder = new StringBuilder();
+        for (long key : keys) {
+            if(!builder.isEmpty()) builder.append(':');
+            builder.append(key);
+        }
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 将游标解码为排序键
+     * @param cursor 游标字符串，为空表示从第一页开始
+     * @param size 排序键个数
+     * @return 排序键，游标为空时返回null
+     * @throws ValidationException 游标格式不正确
+     */
+    public static long[] decode(String cursor, int size) {
+        if(cursor == null || cursor.isEmpty()) return null;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+            if(parts.length != size)
+                throw new ValidationException("游标格式错误: " + cursor);
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++)
+                keys[i] = Long.parseLong(parts[i]);
+            return keys;
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("游标格式错误: " + cursor);
+        }
+    }
+}
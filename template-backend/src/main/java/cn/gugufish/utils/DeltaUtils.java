@@ -0,0 +1,128 @@
+package cn.gugufish.utils;
+
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Quill Delta内容扫描工具类
+ * 基于fastjson2的流式JSONReader单次顺序扫描Delta JSON，不构建JSONObject/JSONArray对象树，
+ * 在一次扫描中同时完成字数统计（超出上限立即停止）、预览文本截取和图片收集
+ *
+ * Delta格式示例：{"ops":[{"insert":"文本"},{"insert":{"image":"/cache/xxx"}}]}
+ *
+ * @author GuguFish
+ */
+public class DeltaUtils {
+
+    /**
+     * 扫描结果
+     * @param length 内容长度，文本按字符数计算，图片等嵌入内容按1计算
+     * @param overflow 内容长度是否超出上限，超出时扫描会提前终止，其他字段不完整
+     * @param preview 预览文本
+     * @param images 图片地址列表
+     */
+    public record Summary(long length, boolean overflow, String preview, List<String> images) {}
+
+    /**
+     * 扫描Delta内容
+     * @param json Delta JSON字符串
+     * @param maxLength 内容长度上限，超出后立即停止扫描
+     * @param previewLength 预览文本长度，为0表示不需要预览
+     * @param collectImages 是否收集图片地址
+     * @return 扫描结果，内容不是合法的Delta格式（包括不完整或对象之后还有多余内容）时返回null
+     */
+    public static Summary scan(String json, long maxLength, int previewLength, boolean collectImages) {
+        if(json == null || json.isEmpty()) return null;
+        StringBuilder preview = new StringBuilder(Math.min(previewLength, 64));
+        List<String> images = collectImages ? new ArrayList<>() : List.of();
+        long length = 0;
+        boolean hasOps = false;
+        try (JSONReader reader = JSONReader.of(json)) {
+            if(!reader.nextIfObjectStart()) return null;
+            while (!reader.nextIfObjectEnd()) {
+                if(reader.isEnd()) return null;
+                String name = reader.readFieldName();
+                if(!"ops".equals(name) || !reader.nextIfArrayStart()) {
+                    reader.skipValue();
+                    continue;
+                }
+                hasOps = true;
+                while (!reader.nextIfArrayEnd()) {
+                    if(reader.isEnd()) return null;
+                    if(!reader.nextIfObjectStart()) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    while (!reader.nextIfObjectEnd()) {
+                        if(reader.isEnd()) return null;
+                        String field = reader.readFieldName();
+                        if(!"insert".equals(field)) {
+                            reader.skipValue();
+                        } else if(reader.isString()) {
+                            String text = reader.readString();
+                            length += text.length();
+                            int remain = previewLength - preview.length();
+                            if(remain > 0)
+                                preview.append(text, 0, Math.min(remain, text.length()));
+                        } else if(reader.isObject()) {
+                            length++;
+                            readEmbed(reader, collectImages ? images : null);
+                        } else {
+                            reader.skipValue();
+                        }
+                        if(length > maxLength)
+                            return new Summary(length, true, preview.toString(), images);
+                    }
+                }
+            }
+            //对象结束后不允许再有其他内容
+            if(!reader.isEnd()) return null;
+        } catch (RuntimeException e) {
+            //截断或格式错误的内容在fastjson2中可能抛出JSONException以外的异常，如数组越界
+            return null;
+        }
+        return hasOps ? new Summary(length, false, preview.toString(), images) : null;
+    }
+
+    /**
+     * 检查Delta内容长度是否在上限之内
+     * @param json Delta JSON字符串
+     * @param maxLength 内容长度上限
+     * @return 内容合法且没有超出上限时返回true
+     */
+    public static boolean lengthWithin(String json, long maxLength) {
+        Summary summary = scan(json, maxLength, 0, false);
+        return summary != null && !summary.overflow();
+    }
+
+    /**
+     * 截取Delta内容的预览文本
+     * @param json Delta JSON字符串
+     * @param previewLength 预览文本长度
+     * @return 预览文本，内容不合法时返回空字符串
+     */
+    public static String preview(String json, int previewLength) {
+        Summary summary = scan(json, Long.MAX_VALUE, previewLength, false);
+        return summary == null ? "" : summary.preview();
+    }
+
+    /**
+     * 读取嵌入内容对象，如{"image":"/cache/xxx"}
+     * @param reader 位于对象起始位置的读取器
+     * @param images 图片收集列表，为null表示不收集
+     */
+    private static void readEmbed(JSONReader reader, List<String> images) {
+        reader.nextIfObjectStart();
+        while (!reader.nextIfObjectEnd()) {
+            if(reader.isEnd()) throw new JSONException("内容不完整");
+            String key = reader.readFieldName();
+            if(images != null && "image".equals(key) && reader.isString())
+                images.add(reader.readString());
+            else
+                reader.skipValue();
+        }
+    }
+}
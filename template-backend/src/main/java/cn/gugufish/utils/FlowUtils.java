@@ -3,10 +3,12 @@ package cn.gugufish.utils;
 import jakarta.annotation.Resource;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 限流通用工具
@@ -16,7 +18,70 @@ import java.util.concurrent.TimeUnit;
 @Component
 public class FlowUtils {
 
-    private static final LimitAction defualtAction = overclock -> !overclock;
+    /**
+     * 限流脚本，一次往返内完成封禁检查、计数以及超限后的处理，多个节点并发计数也不会出现竞争：
+     * KEYS[1]为计数键，KEYS[2]为封禁键（可选）；ARGV依次为请求频率、计数周期、超限处理方式、处理时长
+     * 超限处理方式：none不做额外处理，upgrade将计数键重置并延长冷却时间，block设置封禁键
+     * 返回1表示通过，0表示被限制
+     */
+    private static final RedisScript<Long> LIMIT_SCRIPT = new DefaultRedisScript<>("""
+            if KEYS[2] and redis.call('exists', KEYS[2]) == 1 then
+                return 0
+            end
+            local value = redis.call('incr', KEYS[1])
+            if value == 1 or redis.call('ttl', KEYS[1]) == -1 then
+                redis.call('expire', KEYS[1], ARGV[2])
+            end
+            if value == 1 then
+                return 1
+            end
+            local overclock = value > tonumber(ARGV[1])
+            if ARGV[3] == 'upgrade' then
+                if overclock then
+                    redis.call('set', KEYS[1], '1', 'EX', ARGV[4])
+                end
+                return 0
+            end
+            if overclock and ARGV[3] == 'block' then
+                redis.call('set', KEYS[2], '', 'EX', ARGV[4])
+            end
+            return overclock and 0 or 1
+            """, Long.class);
+
+    /**
+     * 批量上报脚本，供本地限流器将一段时间内在本地放行的请求数一次性计入共享计数，
+     * 一次调用可以处理多个客户端：KEYS按(计数键, 封禁键)成对排列；ARGV[1]为封禁时长，
+     * 之后每个客户端依次为请求频率、计数周期、上报的请求数
+     * 每个客户端返回累加后的计数，处于封禁期间或本次上报导致超限时返回剩余封禁毫秒数的相反数
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final RedisScript<List<Long>> REPORT_SCRIPT = new DefaultRedisScript<>("""
+            local results = {}
+            for i = 1, #KEYS / 2 do
+                local counter, block, base = KEYS[i * 2 - 1], KEYS[i * 2], (i - 1) * 3 + 1
+                local count = tonumber(ARGV[base + 3])
+                local result = -redis.call('pttl', block)
+                if result >= 0 then
+                    local value = redis.call('incrby', counter, count)
+                    if value == count or redis.call('ttl', counter) == -1 then
+                        redis.call('expire', counter, ARGV[base + 2])
+                    end
+                    result = value
+                    if value > tonumber(ARGV[base + 1]) then
+                        redis.call('set', block, '', 'EX', ARGV[1])
+                        result = -tonumber(ARGV[1]) * 1000
+                    end
+                end
+                results[i] = result
+            end
+            return results
+            """, (Class) List.class);
+
+    /**
+     * 批量上报时每次脚本调用最多处理的客户端数量，避免单个脚本长时间占用Redis
+     */
+    private static final int REPORT_CHUNK = 256;
+
     @Resource
     StringRedisTemplate template;
 
@@ -27,7 +92,7 @@ public class FlowUtils {
      * @return 是否通过限流检查
      */
     public boolean limitOnceCheck(String key, int blockTime){
-        return this.internalCheck(key, 1, blockTime,defualtAction);
+        return this.internalCheck(List.of(key), 1, blockTime, "none", 0);
     }
 
     /**
@@ -40,15 +105,12 @@ public class FlowUtils {
      * @return 是否通过限流检查
      */
     public boolean limitOnceUpgradeCheck(String key, int frequency, int baseTime, int upgradeTime){
-        return this.internalCheck(key, frequency, baseTime, (overclock) -> {
-                    if (overclock)
-                        template.opsForValue().set(key, "1", upgradeTime, TimeUnit.SECONDS);
-                    return false;
-                });
+        return this.internalCheck(List.of(key), frequency, baseTime, "upgrade", upgradeTime);
     }
 
     /**
      * 针对于在时间段内多次请求限制，如3秒内限制请求20次，超出频率则封禁一段时间
+     * 处于封禁期间的请求直接被拒绝，且不计入计数
      * @param counterKey 计数键
      * @param blockKey 封禁键
      * @param blockTime 封禁时间
@@ -57,11 +119,7 @@ public class FlowUtils {
      * @return 是否通过限流检查
      */
     public boolean limitPeriodCheck(String counterKey, String blockKey, int blockTime, int frequency, int period){
-        return this.internalCheck(counterKey, frequency, period, (overclock) -> {
-                    if (overclock)
-                        template.opsForValue().set(blockKey, "", blockTime, TimeUnit.SECONDS);
-                    return !overclock;
-                });
+        return this.internalCheck(List.of(counterKey, blockKey), frequency, period, "block", blockTime);
     }
     /**
      * 针对于在时间段内多次请求限制，如3秒内限制请求20次
@@ -71,35 +129,72 @@ public class FlowUtils {
      * @return 是否通过限流检查
      */
     public boolean limitPeriodCounterCheck(String counterKey, int frequency, int period){
-        return this.internalCheck(counterKey, frequency, period, defualtAction);
+        return this.internalCheck(List.of(counterKey), frequency, period, "none", 0);
     }
 
     /**
-     * 内部使用请求限制主要逻辑
-     * @param key 计数键
+     * 将多次请求一次性计入时间段限流计数，超出频率则封禁一段时间，计数规则与{@link #limitPeriodCheck}一致
+     * @param counterKey 计数键
+     * @param blockKey 封禁键
+     * @param blockTime 封禁时间
      * @param frequency 请求频率
      * @param period 计数周期
-     * @param action 限制行为与策略
-     * @return 是否通过限流检查
+     * @param count 本次计入的请求数
+     * @return 累加后的计数，处于封禁期间时返回剩余封禁毫秒数的相反数
+     */
+    public long limitPeriodReport(String counterKey, String blockKey, int blockTime, int frequency, int period, int count){
+        return this.limitPeriodReport(List.of(new PeriodReport(counterKey, blockKey, frequency, period, count)), blockTime)[0];
+    }
+
+    /**
+     * 批量将多个客户端的请求数计入时间段限流计数，每{@value #REPORT_CHUNK}个客户端只需一次Redis往返
+     * @param reports 各客户端的上报内容
+     * @param blockTime 封禁时间
+     * @return 与上报内容一一对应的结果，含义与{@link #limitPeriodReport(String, String, int, int, int, int)}相同
      */
-    private boolean internalCheck(String key, int frequency, int period, LimitAction action){
-        String count = template.opsForValue().get(key);
-        if (count != null) {
-            long value = Optional.ofNullable(template.opsForValue().increment(key)).orElse(0L);
-            int c = Integer.parseInt(count);
-            if(value != c + 1)
-                template.expire(key, period, TimeUnit.SECONDS);
-            return action.run(value > frequency);
-        } else {
-            template.opsForValue().set(key, "1", period, TimeUnit.SECONDS);
-            return true;
+    public long[] limitPeriodReport(List<PeriodReport> reports, int blockTime){
+        long[] results = new long[reports.size()];
+        for (int from = 0; from < reports.size(); from += REPORT_CHUNK) {
+            List<PeriodReport> chunk = reports.subList(from, Math.min(reports.size(), from + REPORT_CHUNK));
+            List<String> keys = new ArrayList<>(chunk.size() * 2);
+            List<String> args = new ArrayList<>(chunk.size() * 3 + 1);
+            args.add(String.valueOf(blockTime));
+            for (PeriodReport report : chunk) {
+                keys.add(report.counterKey());
+                keys.add(report.blockKey());
+                args.add(String.valueOf(report.frequency()));
+                args.add(String.valueOf(report.period()));
+                args.add(String.valueOf(report.count()));
+            }
+            List<Long> list = template.execute(REPORT_SCRIPT, keys, args.toArray());
+            for (int i = 0; list != null && i < list.size(); i++)
+                results[from + i] = list.get(i);
         }
+        return results;
     }
 
     /**
-     * 内部使用，限制行为与策略
+     * 一个客户端的批量上报内容
+     * @param counterKey 计数键
+     * @param blockKey 封禁键
+     * @param frequency 请求频率
+     * @param period 计数周期
+     * @param count 本次计入的请求数
+     */
+    public record PeriodReport(String counterKey, String blockKey, int frequency, int period, int count) {}
+
+    /**
+     * 内部使用请求限制主要逻辑，通过限流脚本在Redis中原子执行
+     * @param keys 计数键与可选的封禁键
+     * @param frequency 请求频率
+     * @param period 计数周期
+     * @param action 超限处理方式
+     * @param actionTime 超限处理时长
+     * @return 是否通过限流检查
      */
-    private interface LimitAction {
-        boolean run(boolean overclock);
+    private boolean internalCheck(List<String> keys, int frequency, int period, String action, int actionTime){
+        Long result = template.execute(LIMIT_SCRIPT, keys,
+                String.valueOf(frequency), String.valueOf(period), action, String.valueOf(actionTime));
+        return result != null && result == 1;
     }
 }
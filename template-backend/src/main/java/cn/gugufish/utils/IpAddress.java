@@ -0,0 +1,167 @@
+package cn.gugufish.utils;
+
+import java.util.Arrays;
+
+/**
+ * 以128位数值表示的IP地址
+ * IPv4地址按照IPv4映射地址（::ffff:a.b.c.d）存放，IPv4与IPv6的CIDR规则可以放在同一棵前缀树中，
+ * 同一个地址的不同文本写法（如IPv6的省略形式、大小写）解析后完全相同，不会被当作不同的客户端
+ *
+ * @param high 高64位
+ * @param low 低64位
+ * @param ipv4 是否为IPv4地址
+ */
+public record IpAddress(long high, long low, boolean ipv4) {
+
+    /**
+     * IPv4映射地址的前缀长度
+     */
+    public static final int IPV4_OFFSET = 96;
+
+    private static final long IPV4_MAPPED = 0xFFFF_0000_0000L;
+
+    /**
+     * 解析IP地址文本
+     * @param text IPv4或IPv6地址文本
+     * @return 解析结果，格式不正确时返回null
+     */
+    public static IpAddress parse(String text) {
+        if(text == null || text.isEmpty()) return null;
+        text = text.trim();
+        if(text.indexOf(':') < 0) {
+            long v4 = parseIpv4(text);
+            return v4 < 0 ? null : new IpAddress(0, IPV4_MAPPED | v4, true);
+        }
+        return parseIpv6(text);
+    }
+
+    /**
+     * 该地址在128位地址空间中对应的前缀长度，IPv4前缀需要加上映射前缀的长度
+     * @param prefix 地址自身的前缀长度
+     * @return 128位空间中的前缀长度
+     */
+    public int absolutePrefix(int prefix) {
+        return ipv4 ? prefix + IPV4_OFFSET : prefix;
+    }
+
+    /**
+     * 取地址的前若干位，其余位清零，用于得到所在网段的网络地址
+     * @param prefix 128位空间中的前缀长度
+     * @return 网络地址
+     */
+    public IpAddress mask(int prefix) {
+        long h = prefix >= 64 ? high : prefix == 0 ? 0 : high & (-1L << (64 - prefix));
+        long l = prefix >= 128 ? low : prefix <= 64 ? 0 : low & (-1L << (128 - prefix));
+        return new IpAddress(h, l, ipv4);
+    }
+
+    /**
+     * 紧凑的键表示，IPv4为8位十六进制，IPv6为32位十六进制，用于拼接Redis键名
+     * @return 键
+     */
+    public String toKey() {
+        if(ipv4) return hex(low, 8);
+        return hex(high, 16) + hex(low, 16);
+    }
+
+    /**
+     * 将数值的低位转换为定长的十六进制字符串，不足的位数补0
+     */
+    private static String hex(long value, int digits) {
+        char[] chars = new char[digits];
+        for (int i = digits - 1; i >= 0; i--, value >>>= 4)
+            chars[i] = Character.forDigit((int) (value & 0xF), 16);
+        return new String(chars);
+    }
+
+    /**
+     * 手工解析IPv4地址，不使用正则表达式
+     * @return 32位地址数值，格式不正确时返回-1
+     */
+    private static long parseIpv4(String text) {
+        long value = 0;
+        int octet = -1, parts = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if(c == '.') {
+                if(octet < 0 || ++parts > 4) return -1;
+                value = (value << 8) | octet;
+                octet = -1;
+            } else if(c >= '0' && c <= '9') {
+                octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+                if(octet > 255) return -1;
+            } else {
+                return -1;
+            }
+        }
+        return parts == 4 ? value : -1;
+    }
+
+    /**
+     * 手工解析IPv6地址，支持"::"省略形式与末尾内嵌的IPv4地址，不支持区域标识，
+     * 只接受ASCII十六进制数字，客户端传入的任何文本都不会触发DNS查询
+     * @return 解析结果，格式不正确时返回null
+     */
+    private static IpAddress parseIpv6(String text) {
+        if(text.startsWith("[") && text.endsWith("]"))
+            text = text.substring(1, text.length() - 1);
+        int n = text.length(), i = 0, count = 0, gap = -1;
+        int[] groups = new int[8];
+        if(text.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        } else if(text.startsWith(":")) {
+            return null;
+        }
+        while (i < n) {
+            if(count == 8) return null;
+            int start = i, value = 0, digit;
+            while (i < n && i - start < 5 && (digit = hexDigit(text.charAt(i))) >= 0) {
+                value = (value << 4) | digit;
+                i++;
+            }
+            if(i < n && text.charAt(i) == '.') {
+                //末尾内嵌的IPv4地址占两组
+                long v4 = count <= 6 ? parseIpv4(text.substring(start)) : -1;
+                if(v4 < 0) return null;
+                groups[count++] = (int) (v4 >>> 16);
+                groups[count++] = (int) (v4 & 0xFFFF);
+                break;
+            }
+            if(i == start || i - start > 4) return null;
+            groups[count++] = value;
+            if(i == n) break;
+            if(text.charAt(i++) != ':' || i == n) return null;
+            if(text.charAt(i) == ':') {
+                if(gap >= 0) return null;
+                gap = count;
+                i++;
+            }
+        }
+        if(gap < 0 ? count != 8 : count == 8) return null;
+        if(gap >= 0) {
+            //省略的全零组补在gap位置
+            int tail = count - gap;
+            System.arraycopy(groups, gap, groups, 8 - tail, tail);
+            Arrays.fill(groups, gap, 8 - tail, 0);
+        }
+        long high = 0, low = 0;
+        for (int j = 0; j < 4; j++) {
+            high = (high << 16) | groups[j];
+            low = (low << 16) | groups[j + 4];
+        }
+        boolean mapped = high == 0 && (low >>> 32) == 0xFFFFL;
+        return new IpAddress(high, low, mapped);
+    }
+
+    /**
+     * 只识别ASCII十六进制数字，Character.digit会接受其他文字的数字
+     * @return 数字值，不是十六进制数字时返回-1
+     */
+    private static int hexDigit(char c) {
+        if(c >= '0' && c <= '9') return c - '0';
+        if(c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if(c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+}
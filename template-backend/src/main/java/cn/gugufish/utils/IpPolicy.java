@@ -0,0 +1,164 @@
+package cn.gugufish.utils;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * IP访问策略
+ * 从策略文件中读取CIDR规则，构建前缀树供限流过滤器查询，文件修改后自动重新加载。
+ * 策略文件每行一条规则，#开头的行为注释：
+ * <pre>
+ * allow 10.0.0.0/8            # 内部探针等，不受限流约束
+ * deny 192.0.2.0/24           # 直接拒绝
+ * limit 203.0.113.0/24 200/3  # 整个网段视为一个客户端，3秒内最多200次请求
+ * proxy 127.0.0.1/32          # 受信任的反向代理，只有来自这些地址的X-Forwarded-For才会被采信
+ * </pre>
+ * 只有直接连接方命中proxy规则时才会采信转发请求头，否则一律使用连接地址，
+ * 部署在反向代理之后时必须为代理配置proxy规则，否则所有请求都会被视为来自代理
+ */
+@Slf4j
+@Component
+public class IpPolicy {
+
+    /**
+     * 规则动作
+     */
+    public enum Action { ALLOW, DENY, LIMIT }
+
+    /**
+     * 访问规则
+     * @param action 动作
+     * @param prefix 规则网段在128位空间中的前缀长度
+     * @param limit 网段限流的请求次数，仅LIMIT使用
+     * @param period 网段限流的计数周期（秒），仅LIMIT使用
+     */
+    public record Rule(Action action, int prefix, int limit, int period) {}
+
+    /**
+     * 一次加载得到的全部规则，整体替换保证查询时看到的规则是一致的
+     */
+    private record Rules(IpTrie<Rule> access, IpTrie<Boolean> proxies, long modified) {}
+
+    @Value("${spring.web.flow.policy-file:}")
+    String policyFile;
+
+    private volatile Rules rules = new Rules(new IpTrie<>(), new IpTrie<>(), 0);
+
+    @PostConstruct
+    void init() {
+        this.reload();
+    }
+
+    /**
+     * 策略文件发生变化时重新加载，加载失败时保留原有规则
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void reload() {
+        if(policyFile == null || policyFile.isBlank()) return;
+        Path path = Path.of(policyFile);
+        try {
+            if(!Files.exists(path)) return;
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if(modified == rules.modified()) return;
+            rules = parse(Files.readAllLines(path, StandardCharsets.UTF_8), modified);
+            log.info("已加载IP策略文件 {}，访问规则{}条，受信任代理{}条",
+                    path, rules.access().size(), rules.proxies().size());
+        } catch (IOException | IllegalArgumentException e) {
+            log.error("加载IP策略文件 {} 失败，继续使用原有规则：{}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * 查询地址匹配的访问规则，前缀最长的规则生效
+     * @param address 客户端地址
+     * @return 匹配的规则，没有匹配时返回null
+     */
+    public Rule match(IpAddress address) {
+        return rules.access().match(address);
+    }
+
+    /**
+     * 确定请求的真实客户端地址
+     * 只有直接连接方是受信任代理才采信X-Forwarded-For，并从右向左跳过其中的受信任代理，
+     * 第一个不受信任的地址即为客户端；直接连接方不是受信任代理时，客户端就是连接地址
+     * @param request 请求
+     * @return 客户端地址，无法解析时返回null
+     */
+    public IpAddress resolveClient(HttpServletRequest request) {
+        Rules current = rules;
+        IpAddress remote = IpAddress.parse(request.getRemoteAddr());
+        if(remote == null || current.proxies().match(remote) == null) return remote;
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if(forwarded != null) {
+            int end = forwarded.length();
+            while (end > 0) {
+                int start = forwarded.lastIndexOf(',', end - 1);
+                IpAddress hop = IpAddress.parse(forwarded.substring(start + 1, end));
+                if(hop == null) break;
+                if(current.proxies().match(hop) == null) return hop;
+                remote = hop;
+                end = start < 0 ? 0 : start;
+            }
+        }
+        IpAddress real = IpAddress.parse(request.getHeader("X-Real-IP"));
+        return real != null ? real : remote;
+    }
+
+    /**
+     * 解析策略文件内容
+     * @param lines 文件的每一行
+     * @param modified 文件修改时间
+     * @return 规则
+     * @throws IllegalArgumentException 存在格式错误的规则
+     */
+    static Rules parse(List<String> lines, long modified) {
+        IpTrie<Rule> access = new IpTrie<>();
+        IpTrie<Boolean> proxies = new IpTrie<>();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if(comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if(line.isEmpty()) continue;
+            String[] parts = line.split("\\s+");
+            try {
+                String action = parts[0].toLowerCase();
+                String[] cidr = parts[1].split("/");
+                IpAddress address = IpAddress.parse(cidr[0]);
+                if(address == null) throw new IllegalArgumentException("地址格式错误");
+                int prefix = address.absolutePrefix(cidr.length > 1 ? Integer.parseInt(cidr[1]) :
+                        (address.ipv4() ? 32 : 128));
+                if(prefix < 0 || prefix > 128 || (address.ipv4() && prefix < IpAddress.IPV4_OFFSET))
+                    throw new IllegalArgumentException("前缀长度错误");
+                switch (action) {
+                    case "allow" -> access.insert(address, prefix, new Rule(Action.ALLOW, prefix, 0, 0));
+                    case "deny" -> access.insert(address, prefix, new Rule(Action.DENY, prefix, 0, 0));
+                    case "limit" -> {
+                        String[] quota = parts[2].split("/");
+                        int limit = Integer.parseInt(quota[0]), period = Integer.parseInt(quota[1]);
+                        if(limit <= 0 || period <= 0)
+                            throw new IllegalArgumentException("限流次数与周期必须大于0");
+                        access.insert(address, prefix, new Rule(Action.LIMIT, prefix, limit, period));
+                    }
+                    case "proxy" -> proxies.insert(address, prefix, Boolean.TRUE);
+                    default -> throw new IllegalArgumentException("未知的动作 " + action);
+                }
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                throw new IllegalArgumentException("第" + (i + 1) + "行规则格式错误：" + lines.get(i));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("第" + (i + 1) + "行" + e.getMessage() + "：" + lines.get(i));
+            }
+        }
+        return new Rules(access, proxies, modified);
+    }
+}
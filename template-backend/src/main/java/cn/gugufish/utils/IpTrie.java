@@ -0,0 +1,80 @@
+package cn.gugufish.utils;
+
+/**
+ * 按位划分的CIDR前缀树
+ * 每一层对应地址的一位，插入和查询都只需要沿着地址的位走一遍，
+ * 查询时间与规则数量无关，只与最长的规则前缀长度有关，并且查询过程不创建任何对象。
+ * 树在构建完成后不再修改，重新加载规则时构建一棵新树整体替换。
+ *
+ * @param <T> 规则类型
+ */
+public class IpTrie<T> {
+
+    private final Node<T> root = new Node<>();
+    private int size;
+
+    /**
+     * 插入一条CIDR规则，同一网段重复插入时后者覆盖前者
+     * @param address 网段内的任意地址
+     * @param prefix 128位空间中的前缀长度
+     * @param value 规则
+     */
+    public void insert(IpAddress address, int prefix, T value) {
+        Node<T> node = root;
+        for (int i = 0; i < prefix; i++) {
+            if(bit(address.high(), address.low(), i) == 0) {
+                if(node.zero == null) node.zero = new Node<>();
+                node = node.zero;
+            } else {
+                if(node.one == null) node.one = new Node<>();
+                node = node.one;
+            }
+        }
+        if(node.value == null) size++;
+        node.value = value;
+    }
+
+    /**
+     * 最长前缀匹配
+     * @param address 地址
+     * @return 前缀最长的匹配规则，没有匹配时返回null
+     */
+    public T match(IpAddress address) {
+        return this.match(address.high(), address.low());
+    }
+
+    /**
+     * 最长前缀匹配
+     * @param high 地址高64位
+     * @param low 地址低64位
+     * @return 前缀最长的匹配规则，没有匹配时返回null
+     */
+    public T match(long high, long low) {
+        Node<T> node = root;
+        T best = root.value;
+        for (int i = 0; i < 128; i++) {
+            node = bit(high, low, i) == 0 ? node.zero : node.one;
+            if(node == null) break;
+            if(node.value != null) best = node.value;
+        }
+        return best;
+    }
+
+    /**
+     * 规则数量
+     * @return 规则数量
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int bit(long high, long low, int index) {
+        long word = index < 64 ? high : low;
+        return (int) (word >>> (63 - (index & 63))) & 1;
+    }
+
+    private static class Node<T> {
+        Node<T> zero, one;
+        T value;
+    }
+}
@@ -0,0 +1,78 @@
+package cn.gugufish.utils;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 分段键锁
+ * 按键的哈希值映射到固定数量的ReentrantLock上，同一个键总是获得同一把锁，
+ * 不同的键大概率落在不同的锁上互不阻塞。锁的数量在创建时确定，占用内存与键的数量无关，
+ * 用于替代synchronized(key.intern())：既不会向JVM字符串常量池写入大量字符串，
+ * 也不会在虚拟线程中因持有对象监视器而占住载体线程。
+ *
+ * @author GuguFish
+ */
+public class KeyedLock {
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    /**
+     * 创建分段键锁
+     * @param stripes 锁的数量，会向上取整为2的幂
+     */
+    public KeyedLock(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++)
+            locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * 获取键对应的锁
+     * @param key 键
+     * @return 该键所在分段的锁
+     */
+    public ReentrantLock lockFor(Object key) {
+        int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    /**
+     * 持有键对应的锁执行操作
+     * @param key 键
+     * @param action 操作
+     * @return 操作的返回值
+     * @param <T> 返回值类型
+     */
+    public <T> T withLock(Object key, Supplier<T> action) {
+        ReentrantLock lock = this.lockFor(key);
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 持有键对应的锁执行操作
+     * @param key 键
+     * @param action 操作
+     */
+    public void withLock(Object key, Runnable action) {
+        this.withLock(key, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 锁的数量
+     * @return 分段数
+     */
+    public int stripes() {
+        return locks.length;
+    }
+}
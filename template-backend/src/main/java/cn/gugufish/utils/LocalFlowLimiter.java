@@ -0,0 +1,196 @@
+package cn.gugufish.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地令牌桶限流器
+ * 每个节点为活跃的客户端IP维护一个进程内令牌桶，令牌数为全局配额的一小部分，
+ * 令牌充足时请求在本地直接放行，不产生任何网络调用；令牌耗尽或定时任务触发时
+ * 才将本地放行的请求数批量计入Redis共享计数，并按照最新的全局计数重新发放令牌。
+ * 多个节点各自最多超发一份本地配额，全局限流近似准确，被封禁的IP在本地直接拒绝。
+ */
+@Slf4j
+@Component
+public class LocalFlowLimiter {
+
+    @Resource
+    FlowUtils utils;
+
+    /**
+     * 指定时间窗口内允许的最大请求次数
+     */
+    @Value("${spring.web.flow.limit}")
+    int limit;
+
+    /**
+     * 限流统计的时间窗口长度（秒）
+     */
+    @Value("${spring.web.flow.period}")
+    int period;
+
+    /**
+     * 超出请求限制后的封禁时长（秒）
+     */
+    @Value("${spring.web.flow.block}")
+    int block;
+
+    /**
+     * 每次同步后本地可以放行的请求数占全局配额的比例
+     */
+    @Value("${spring.web.flow.local-fraction:0.2}")
+    double fraction;
+
+    /**
+     * 活跃IP的令牌桶，数量有上限，长时间没有请求的IP自动淘汰
+     */
+    private Cache<String, Bucket> buckets;
+
+    @PostConstruct
+    void init() {
+        buckets = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(Math.max(period, block) * 2L, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 按照默认配额尝试放行一次请求，本地令牌充足时不访问Redis
+     * @param address 客户端标识
+     * @return 是否放行
+     */
+    public boolean tryAcquire(String address) {
+        return this.tryAcquire(address, limit, period);
+    }
+
+    /**
+     * 按照指定配额尝试放行一次请求，本地令牌充足时不访问Redis
+     * @param address 客户端标识，可以是单个IP，也可以是整个网段
+     * @param limit 计数周期内允许的最大请求次数
+     * @param period 计数周期（秒）
+     * @return 是否放行
+     */
+    public boolean tryAcquire(String address, int limit, int period) {
+        Bucket bucket = buckets.get(address, key -> new Bucket());
+        int report;
+        //每个令牌桶使用自己的锁，不同IP之间互不竞争
+        synchronized (bucket) {
+            bucket.limit = limit;
+            bucket.period = period;
+            if(bucket.blockedUntil > System.currentTimeMillis()) return false;
+            if(bucket.tokens > 0) {
+                bucket.tokens--;
+                bucket.consumed++;
+                return true;
+            }
+            report = bucket.consumed + 1;
+            bucket.consumed = 0;
+        }
+        return this.reconcile(address, bucket, report);
+    }
+
+    /**
+     * 定时将各令牌桶在本地放行的请求数批量计入共享计数，
+     * 使其他节点的放行情况及时反映到本节点的令牌数上，
+     * 所有待上报的令牌桶合并为少量脚本调用，活跃IP很多时也不会拖慢其他定时任务
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void flush() {
+        List<Bucket> pending = new ArrayList<>();
+        List<FlowUtils.PeriodReport> reports = new ArrayList<>();
+        buckets.asMap().forEach((address, bucket) -> {
+            synchronized (bucket) {
+                if(bucket.consumed == 0) return;
+                reports.add(new FlowUtils.PeriodReport(Const.FLOW_LIMIT_COUNTER + address,
+                        Const.FLOW_LIMIT_BLOCK + address, bucket.limit, bucket.period, bucket.consumed));
+                bucket.consumed = 0;
+            }
+            pending.add(bucket);
+        });
+        if(reports.isEmpty()) return;
+        long[] results;
+        try {
+            results = utils.limitPeriodReport(reports, block);
+        } catch (RuntimeException e) {
+            log.warn("本地限流计数上报失败，{}个客户端的计数将在下次同步时补报，错误信息：{}", reports.size(), e.getMessage());
+            for (int i = 0; i < pending.size(); i++) {
+                Bucket bucket = pending.get(i);
+                synchronized (bucket) {
+                    bucket.consumed += reports.get(i).count();
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < pending.size(); i++)
+            this.refill(pending.get(i), results[i]);
+    }
+
+    /**
+     * 与Redis共享计数同步，并根据全局计数重新发放本地令牌
+     * @param address 客户端IP地址
+     * @param bucket 令牌桶
+     * @param report 需要计入的请求数
+     * @return 共享计数是否仍在配额之内
+     */
+    private boolean reconcile(String address, Bucket bucket, int report) {
+        int limit, period;
+        synchronized (bucket) {
+            limit = bucket.limit;
+            period = bucket.period;
+        }
+        long result = utils.limitPeriodReport(Const.FLOW_LIMIT_COUNTER + address,
+                Const.FLOW_LIMIT_BLOCK + address, block, limit, period, report);
+        return this.refill(bucket, result);
+    }
+
+    /**
+     * 根据共享计数的最新结果重新发放本地令牌
+     * @param bucket 令牌桶
+     * @param result 上报后的共享计数，负数表示剩余封禁毫秒数
+     * @return 共享计数是否仍在配额之内
+     */
+    private boolean refill(Bucket bucket, long result) {
+        synchronized (bucket) {
+            if(result < 0) {
+                bucket.blockedUntil = System.currentTimeMillis() - result;
+                bucket.tokens = 0;
+                return false;
+            }
+            int allowance = Math.max(1, (int) (bucket.limit * fraction));
+            bucket.tokens = (int) Math.max(0, Math.min(allowance, bucket.limit - result));
+            return true;
+        }
+    }
+
+    /**
+     * 单个IP的本地令牌桶
+     */
+    static class Bucket {
+        /**
+         * 剩余的本地令牌
+         */
+        int tokens;
+        /**
+         * 上次同步后在本地放行、尚未计入共享计数的请求数
+         */
+        int consumed;
+        /**
+         * 本地记录的封禁结束时间
+         */
+        long blockedUntil;
+        /**
+         * 该客户端的配额
+         */
+        int limit, period;
+    }
+}
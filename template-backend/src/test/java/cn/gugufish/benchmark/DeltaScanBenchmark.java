@@ -0,0 +1,103 @@
+package cn.gugufish.benchmark;
+
+import cn.gugufish.utils.DeltaUtils;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delta内容扫描性能对比：流式DeltaUtils与原先基于JSONObject对象树的实现
+ * 运行方式：mvn test-compile 后直接执行本类的main方法（需要将测试依赖加入classpath）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeltaScanBenchmark {
+
+    /**
+     * 帖子的文本段数量，每段约100字，用于模拟不同长度的帖子
+     */
+    @Param({"10", "100"})
+    int paragraphs;
+
+    String content;
+
+    @Setup
+    public void setup() {
+        JSONArray ops = new JSONArray();
+        for (int i = 0; i < paragraphs; i++) {
+            ops.add(JSONObject.of("insert", "这是一段用于性能测试的帖子正文内容，".repeat(5) + i + "\n"));
+            ops.add(JSONObject.of("insert", "加粗文本", "attributes", JSONObject.of("bold", true)));
+            if(i % 10 == 0)
+                ops.add(JSONObject.of("insert", JSONObject.of("image", "/cache/20250101/" + i)));
+        }
+        content = JSONObject.of("ops", ops).toJSONString();
+    }
+
+    @Benchmark
+    public void streamingScan(Blackhole blackhole) {
+        DeltaUtils.Summary summary = DeltaUtils.scan(content, 10000, 300, true);
+        blackhole.consume(summary);
+    }
+
+    @Benchmark
+    public void legacyScan(Blackhole blackhole) {
+        JSONObject object = JSONObject.parseObject(content);
+        blackhole.consume(legacyTextLimitCheck(object, 10000));
+        List<String> images = new ArrayList<>();
+        StringBuilder previewText = new StringBuilder();
+        legacyShortContent(object.getJSONArray("ops"), previewText, obj -> images.add(obj.toString()));
+        blackhole.consume(previewText.length() > 300 ? previewText.substring(0, 300) : previewText.toString());
+        blackhole.consume(images);
+    }
+
+    @Benchmark
+    public void streamingLengthCheck(Blackhole blackhole) {
+        blackhole.consume(DeltaUtils.lengthWithin(content, 2000));
+    }
+
+    @Benchmark
+    public void legacyLengthCheck(Blackhole blackhole) {
+        blackhole.consume(legacyTextLimitCheck(JSONObject.parseObject(content), 2000));
+    }
+
+    private static void legacyShortContent(JSONArray ops, StringBuilder previewText,
+                                           java.util.function.Consumer<Object> imageHandler) {
+        for (Object op : ops) {
+            Object insert = JSONObject.from(op).get("insert");
+            if(insert instanceof String text) {
+                if(previewText.length() >= 300) continue;
+                previewText.append(text);
+            } else if(insert instanceof Map<?, ?> map) {
+                Optional.ofNullable(map.get("image")).ifPresent(imageHandler);
+            }
+        }
+    }
+
+    private static boolean legacyTextLimitCheck(JSONObject object, int max) {
+        if(object == null) return false;
+        long length = 0;
+        for (Object op : object.getJSONArray("ops")) {
+            length += JSONObject.from(op).getString("insert").length();
+            if(length > max) return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DeltaScanBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
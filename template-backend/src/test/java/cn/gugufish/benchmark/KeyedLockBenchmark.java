@@ -0,0 +1,75 @@
+package cn.gugufish.benchmark;
+
+import cn.gugufish.utils.KeyedLock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按键加锁的竞争性能对比：synchronized(key.intern())、分段键锁KeyedLock、单一全局锁
+ * 每次操作使用新创建的IP字符串作为键，模拟请求中解析出的客户端地址
+ * 运行方式：mvn test-compile 后直接执行本类的main方法（需要将测试依赖加入classpath）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class KeyedLockBenchmark {
+
+    /**
+     * 活跃的客户端地址数量，数量越少同一个键上的竞争越激烈
+     */
+    @Param({"16", "10000"})
+    int addresses;
+
+    final KeyedLock keyedLock = new KeyedLock(64);
+    final Object globalLock = new Object();
+
+    /**
+     * 临界区内的工作量，模拟一次计数检查
+     */
+    private static void work(Blackhole blackhole) {
+        Blackhole.consumeCPU(50);
+        blackhole.consume(System.nanoTime());
+    }
+
+    private String nextAddress() {
+        int n = ThreadLocalRandom.current().nextInt(addresses);
+        return new StringBuilder(15).append("10.0.").append(n >> 8).append('.').append(n & 255).toString();
+    }
+
+    @Benchmark
+    public void internMonitor(Blackhole blackhole) {
+        synchronized (this.nextAddress().intern()) {
+            work(blackhole);
+        }
+    }
+
+    @Benchmark
+    public void keyedLock(Blackhole blackhole) {
+        keyedLock.withLock(this.nextAddress(), () -> work(blackhole));
+    }
+
+    @Benchmark
+    public void globalMonitor(Blackhole blackhole) {
+        String address = this.nextAddress();
+        synchronized (globalLock) {
+            blackhole.consume(address);
+            work(blackhole);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KeyedLockBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,71 @@
+package cn.gugufish.interceptor;
+
+import cn.gugufish.annotation.RateLimit;
+import cn.gugufish.utils.Const;
+import cn.gugufish.utils.FlowUtils;
+import cn.gugufish.utils.IpPolicy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 接口级限流拦截器测试：策略解析、按用户计数以及突发限制
+ */
+class RateLimitInterceptorTest {
+
+    RateLimitInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new RateLimitInterceptor();
+        interceptor.utils = mock(FlowUtils.class);
+        interceptor.ipPolicy = mock(IpPolicy.class);
+    }
+
+    @Test
+    void unannotatedHandlerSkipsRedis() throws Exception {
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), handler("plain")));
+        verifyNoInteractions(interceptor.utils);
+    }
+
+    @Test
+    void userPolicyCountsPerUser() throws Exception {
+        when(interceptor.utils.limitPeriodCounterCheck(anyString(), anyInt(), anyInt())).thenReturn(true, true, false);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(Const.ATTR_USER_ID, 7);
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), handler("upload")));
+        verify(interceptor.utils).limitPeriodCounterCheck("upload:burst:7", 2, 1);
+        verify(interceptor.utils).limitPeriodCounterCheck("upload:7", 20, 3600);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request, response, handler("upload")));
+        assertEquals(429, response.getStatus());
+        assertTrue(response.getContentAsString().contains("too fast"));
+    }
+
+    @Test
+    void defaultPrefixUsesControllerAndMethod() throws Exception {
+        RateLimitInterceptor.Policy policy = RateLimitInterceptor.resolve(Handlers.class.getMethod("search"));
+        assertEquals(Const.FLOW_LIMIT_ENDPOINT + "Handlers:search:", policy.prefix());
+        assertEquals(RateLimit.Key.IP, policy.key());
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+        return new HandlerMethod(new Handlers(), Handlers.class.getMethod(name));
+    }
+
+    static class Handlers {
+        public void plain() {}
+
+        @RateLimit(name = "upload:", permits = 20, window = 3600, burst = 2, message = "too fast")
+        public void upload() {}
+
+        @RateLimit(key = RateLimit.Key.IP, permits = 10, window = 60)
+        public void search() {}
+    }
+}
@@ -0,0 +1,64 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.utils.Const;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 通知推送连接注册表测试，单个用户的连接数不能超过上限，连接票据只能使用一次
+ */
+class NotificationPushServiceImplTest {
+
+    NotificationPushServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new NotificationPushServiceImpl();
+        service.container = mock(RedisMessageListenerContainer.class);
+    }
+
+    @Test
+    void oldestConnectionIsReplacedWhenOverCap() {
+        List<SseEmitter> opened = new ArrayList<>();
+        for (int i = 0; i <= NotificationPushServiceImpl.MAX_CONNECTIONS_PER_USER; i++)
+            opened.add(service.connect(1));
+        List<SseEmitter> held = service.emitters.get(1);
+        assertEquals(NotificationPushServiceImpl.MAX_CONNECTIONS_PER_USER, held.size());
+        assertFalse(held.contains(opened.get(0)));
+        assertTrue(held.contains(opened.get(opened.size() - 1)));
+    }
+
+    @Test
+    void connectionsAreTrackedPerUser() {
+        service.connect(1);
+        service.connect(2);
+        service.heartbeat();
+        assertEquals(1, service.emitters.get(1).size());
+        assertEquals(1, service.emitters.get(2).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ticketIsRedeemedOnce() {
+        service.template = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> operations = mock(ValueOperations.class);
+        when(service.template.opsForValue()).thenReturn(operations);
+        String ticket = service.createTicket(7);
+        verify(operations).set(Const.NOTIFICATION_TICKET + ticket, "7", 30, TimeUnit.SECONDS);
+        when(operations.getAndDelete(Const.NOTIFICATION_TICKET + ticket)).thenReturn("7", (String) null);
+        assertEquals(7, service.redeemTicket(ticket));
+        assertNull(service.redeemTicket(ticket));
+        assertNull(service.redeemTicket(null));
+    }
+}
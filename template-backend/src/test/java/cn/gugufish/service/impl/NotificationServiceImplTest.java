@@ -0,0 +1,232 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.CommentCreatedEvent;
+import cn.gugufish.entity.dto.Notification;
+import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicComment;
+import cn.gugufish.entity.vo.response.UserCardVO;
+import cn.gugufish.mapper.NotificationMapper;
+import cn.gugufish.mapper.TopicCommentMapper;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.NotificationPushService;
+import cn.gugufish.service.UserCardService;
+import cn.gugufish.utils.Const;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 评论通知批量消费测试，一批事件只查询固定次数，同一窗口内的回复合并为一行通知，
+ * 消息只在覆盖它的写入完成后确认
+ */
+class NotificationServiceImplTest {
+
+    NotificationServiceImpl service;
+    NotificationMapper notificationMapper;
+    SimpleMeterRegistry registry;
+    Runnable ack;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = new NotificationServiceImpl();
+        notificationMapper = mock(NotificationMapper.class);
+        service.topicMapper = mock(TopicMapper.class);
+        service.commentMapper = mock(TopicCommentMapper.class);
+        service.userCardService = mock(UserCardService.class);
+        service.registry = registry = new SimpleMeterRegistry();
+        service.template = mock(StringRedisTemplate.class);
+        service.pushService = mock(NotificationPushService.class);
+        when(service.template.opsForValue()).thenReturn(mock(ValueOperations.class));
+        ReflectionTestUtils.setField(service, "baseMapper", notificationMapper);
+        ReflectionTestUtils.invokeMethod(service, "initMeters");
+        ack = mock(Runnable.class);
+        Topic topic = new Topic();
+        topic.setId(1);
+        topic.setUid(10);
+        topic.setTitle("标题");
+        TopicComment quoted = new TopicComment();
+        quoted.setId(5);
+        quoted.setUid(20);
+        quoted.setTid(1);
+        when(service.topicMapper.selectList(any())).thenReturn(List.of(topic));
+        when(service.commentMapper.selectList(any())).thenReturn(List.of(quoted));
+        when(service.userCardService.cards(anyCollection())).thenReturn(Map.of(
+                10, card(10, "author"), 20, card(20, "quoted"), 30, card(30, "guest")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void batchResolvesRecipientsAndInsertsOnce() {
+        int count = service.handleCommentCreated(List.of(
+                new CommentCreatedEvent(100, 1, 30, 0),
+                new CommentCreatedEvent(101, 1, 30, 5),
+                new CommentCreatedEvent(102, 1, 10, 0)), ack);
+        assertEquals(2, count);
+        verify(notificationMapper, never()).insertBatch(anyList());
+        verify(ack, never()).run();
+        service.flushCoalesced();
+        verify(ack).run();
+        ArgumentCaptor<List<Notification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationMapper, times(1)).insertBatch(captor.capture());
+        Map<Integer, Notification> rows = captor.getValue().stream()
+                .collect(Collectors.toMap(Notification::getUid, Function.identity()));
+        assertEquals(2, rows.size());
+        assertEquals("guest 回复了你发表主题: 标题，快去看看吧！", rows.get(10).getContent());
+        assertEquals("guest 回复了你发表的评论，快去看看吧！", rows.get(20).getContent());
+        verify(service.topicMapper, times(1)).selectList(any());
+        verify(service.commentMapper, times(1)).selectList(any());
+        verify(service.template).delete(List.of(Const.NOTIFICATION_UNREAD + 10, Const.NOTIFICATION_UNREAD_SEED + 10));
+        verify(service.template).delete(List.of(Const.NOTIFICATION_UNREAD + 20, Const.NOTIFICATION_UNREAD_SEED + 20));
+        verify(service.pushService, times(2)).push(anyInt(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void repliesInOneWindowShareOneRow() {
+        when(service.userCardService.cards(anyCollection())).thenReturn(Map.of(
+                30, card(30, "guest"), 31, card(31, "guest31"), 32, card(32, "guest32")));
+        doAnswer(invocation -> {
+            invocation.<List<Notification>>getArgument(0).forEach(row -> row.setId(7));
+            return 1;
+        }).when(notificationMapper).insertBatch(anyList());
+        when(notificationMapper.updateCoalesced(anyInt(), anyString())).thenReturn(1);
+        service.handleCommentCreated(List.of(
+                new CommentCreatedEvent(100, 1, 30, 0),
+                new CommentCreatedEvent(101, 1, 31, 0)), ack);
+        service.flushCoalesced();
+        //两次写入之间的多批回复合并为一次UPDATE
+        service.handleCommentCreated(List.of(new CommentCreatedEvent(102, 1, 32, 0)), ack);
+        service.handleCommentCreated(List.of(new CommentCreatedEvent(103, 1, 30, 0)), ack);
+        service.flushCoalesced();
+        //重新投递的事件不会再次写入
+        service.handleCommentCreated(List.of(new CommentCreatedEvent(103, 1, 30, 0)), ack);
+        service.flushCoalesced();
+        ArgumentCaptor<List<Notification>> captor = ArgumentCaptor.forClass(List.class);
+        verify(notificationMapper, times(1)).insertBatch(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("guest31 等2人 回复了你发表主题: 标题，快去看看吧！", captor.getValue().get(0).getContent());
+        verify(notificationMapper, times(1)).updateCoalesced(anyInt(), anyString());
+        verify(notificationMapper).updateCoalesced(7, "guest 等3人 回复了你发表主题: 标题，快去看看吧！");
+        //插入与更新各使未读计数失效一次
+        verify(service.template, times(2)).delete(List.of(Const.NOTIFICATION_UNREAD + 10, Const.NOTIFICATION_UNREAD_SEED + 10));
+        verify(ack, times(4)).run();
+    }
+
+    @Test
+    void deleteAllRunsInChunks() {
+        when(notificationMapper.deleteChunk(1, 1000)).thenReturn(1000, 1000, 15);
+        service.deleteUserAllNotification(1);
+        verify(notificationMapper, times(3)).deleteChunk(1, 1000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unreadCountSeededOnlyIfUntouched() {
+        ValueOperations<String, String> operations = service.template.opsForValue();
+        when(notificationMapper.selectCount(any())).thenReturn(4L);
+        assertEquals(4, service.unreadCount(1));
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
+        InOrder order = inOrder(operations, notificationMapper, service.template);
+        order.verify(operations).set(eq(Const.NOTIFICATION_UNREAD_SEED + 1), token.capture(), anyLong(), any());
+        order.verify(notificationMapper).selectCount(any());
+        order.verify(service.template).execute(any(),
+                eq(List.of(Const.NOTIFICATION_UNREAD + 1, Const.NOTIFICATION_UNREAD_SEED + 1)),
+                eq(token.getValue()), eq("4"), anyString());
+        service.markAllRead(1);
+        verify(service.template).delete(List.of(Const.NOTIFICATION_UNREAD + 1, Const.NOTIFICATION_UNREAD_SEED + 1));
+        verify(operations, never()).set(eq(Const.NOTIFICATION_UNREAD + 1), anyString(), anyLong(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unreadChangesDropCounterInsteadOfAdjusting() {
+        List<String> keys = List.of(Const.NOTIFICATION_UNREAD + 1, Const.NOTIFICATION_UNREAD_SEED + 1);
+        when(notificationMapper.update(any(), any())).thenReturn(1, 0);
+        service.markRead(3, 1);
+        service.markRead(3, 1);
+        when(notificationMapper.delete(any())).thenReturn(1);
+        service.deleteUserNotification(4, 1);
+        service.addNotification(1, "标题", "内容", "info", "/index");
+        InOrder order = inOrder(notificationMapper, service.template);
+        order.verify(notificationMapper).update(any(), any());
+        order.verify(service.template).delete(keys);
+        //第二次标记已读没有改变状态，计数不需要失效
+        order.verify(notificationMapper).update(any(), any());
+        order.verify(notificationMapper).delete(any());
+        order.verify(service.template).delete(keys);
+        order.verify(notificationMapper).insert(any(Notification.class));
+        order.verify(service.template).delete(keys);
+        verify(service.template, never()).execute(any(), anyList(), any(Object[].class));
+    }
+
+    @Test
+    void failedInsertIsRetriedThenDropped() {
+        when(notificationMapper.insertBatch(anyList()))
+                .thenThrow(new TransientDataAccessResourceException("down"));
+        service.handleCommentCreated(List.of(new CommentCreatedEvent(100, 1, 30, 0)), ack);
+        service.flushCoalesced();
+        service.flushCoalesced();
+        verify(ack, never()).run();
+        //第三次失败后放弃该窗口，消息随之确认
+        service.flushCoalesced();
+        verify(ack).run();
+        verify(notificationMapper, times(3)).insertBatch(anyList());
+        assertEquals(2, registry.counter("forum.notification.rows", "result", "retried").count());
+        assertEquals(1, registry.counter("forum.notification.rows", "result", "dropped").count());
+    }
+
+    @Test
+    void failedUpdateIsRetriedBeforeAck() {
+        doAnswer(invocation -> {
+            invocation.<List<Notification>>getArgument(0).forEach(row -> row.setId(7));
+            return 1;
+        }).when(notificationMapper).insertBatch(anyList());
+        when(notificationMapper.updateCoalesced(anyInt(), anyString()))
+                .thenThrow(new TransientDataAccessResourceException("down"))
+                .thenReturn(1);
+        service.handleCommentCreated(List.of(new CommentCreatedEvent(100, 1, 30, 0)), mock(Runnable.class));
+        service.flushCoalesced();
+        when(service.userCardService.cards(anyCollection())).thenReturn(Map.of(31, card(31, "guest31")));
+        service.handleCommentCreated(List.of(new CommentCreatedEvent(101, 1, 31, 0)), ack);
+        service.flushCoalesced();
+        verify(ack, never()).run();
+        service.flushCoalesced();
+        verify(ack).run();
+        verify(notificationMapper, times(2)).updateCoalesced(7, "guest31 等2人 回复了你发表主题: 标题，快去看看吧！");
+        verify(notificationMapper, times(1)).insertBatch(anyList());
+    }
+
+    @Test
+    void manyUnackedMessagesFlushImmediately() {
+        List<CommentCreatedEvent> events = IntStream.range(0, 500)
+                .mapToObj(i -> new CommentCreatedEvent(100 + i, 1, 30, 0))
+                .toList();
+        service.handleCommentCreated(events, ack);
+        verify(notificationMapper).insertBatch(anyList());
+        verify(ack).run();
+    }
+
+    private static UserCardVO card(int id, String username) {
+        UserCardVO card = new UserCardVO();
+        card.setId(id);
+        card.setUsername(username);
+        return card;
+    }
+}
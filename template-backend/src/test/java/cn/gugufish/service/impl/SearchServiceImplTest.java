@@ -0,0 +1,135 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicComment;
+import cn.gugufish.entity.vo.response.SearchHitVO;
+import cn.gugufish.mapper.TopicCommentMapper;
+import cn.gugufish.mapper.TopicMapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 全文检索测试：中文分词、分类过滤、高亮摘要、HTML转义以及经由队列的增量更新
+ */
+class SearchServiceImplTest {
+
+    @TempDir
+    Path indexDir;
+
+    SearchServiceImpl service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = new SearchServiceImpl();
+        service.indexPath = indexDir.toString();
+        service.topicMapper = mock(TopicMapper.class);
+        service.commentMapper = mock(TopicCommentMapper.class);
+        when(service.topicMapper.selectList(any(Page.class), any()))
+                .thenReturn(List.of(
+                        topic(1, 1, "校园失物招领", "昨天在图书馆丢了一把雨伞<script>"),
+                        topic(2, 2, "周末篮球比赛", "欢迎大家来体育馆观看比赛")))
+                .thenReturn(List.of());
+        when(service.commentMapper.selectList(any(Page.class), any()))
+                .thenReturn(List.of(comment(10, 2, "我也想去图书馆借书")))
+                .thenReturn(List.of());
+        ReflectionTestUtils.invokeMethod(service, "init");
+        assertEquals(3, service.rebuild());
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReflectionTestUtils.invokeMethod(service, "close");
+    }
+
+    @Test
+    void searchMatchesChineseTextWithHighlight() {
+        Page<SearchHitVO> page = service.search("图书馆", 0, 1, 10);
+        assertEquals(2, page.getTotal());
+        SearchHitVO topicHit = page.getRecords().stream()
+                .filter(hit -> "topic".equals(hit.getKind()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(1, topicHit.getTid());
+        assertTrue(topicHit.getSnippet().contains("<em>"));
+        assertFalse(topicHit.getSnippet().contains("<script>"));
+        SearchHitVO commentHit = page.getRecords().stream()
+                .filter(hit -> "comment".equals(hit.getKind()))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(10, commentHit.getCid());
+        assertEquals("周末篮球比赛", commentHit.getTitle());
+    }
+
+    @Test
+    void searchFiltersByType() {
+        assertEquals(1, service.search("图书馆", 1, 1, 10).getTotal());
+        assertEquals(0, service.search("雨伞", 2, 1, 10).getTotal());
+        assertEquals(0, service.search("   ", 0, 1, 10).getTotal());
+    }
+
+    @Test
+    void incrementalChangesGoThroughQueue() {
+        when(service.topicMapper.selectList(any())).thenReturn(List.of(topic(3, 1, "新帖子", "讨论食堂的饭菜")));
+        when(service.commentMapper.selectByIds(anyCollection())).thenReturn(List.of(comment(11, 3, "食堂很好吃")));
+        service.indexTopic(3);
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.search("食堂", 0, 1, 10).getTotal() == 1);
+        service.indexComment(11);
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.search("食堂", 0, 1, 10).getTotal() == 2);
+        service.removeComment(11);
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.search("食堂", 0, 1, 10).getTotal() == 1);
+        service.indexComment(11);
+        service.removeTopic(3);
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.search("食堂", 0, 1, 10).getTotal() == 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void topicTypeChangeMovesItsComments() {
+        assertEquals(1, service.search("图书馆", 2, 1, 10).getTotal());
+        when(service.topicMapper.selectList(any())).thenReturn(List.of(topic(2, 1, "周末篮球比赛", "欢迎大家来体育馆观看比赛")));
+        when(service.commentMapper.selectList(any(Page.class), any()))
+                .thenReturn(List.of(comment(10, 2, "我也想去图书馆借书")))
+                .thenReturn(List.of());
+        service.indexTopic(2);
+        await().atMost(Duration.ofSeconds(5)).until(() -> service.search("图书馆", 2, 1, 10).getTotal() == 0);
+        assertEquals(2, service.search("图书馆", 1, 1, 10).getTotal());
+    }
+
+    private static Topic topic(int id, int type, String title, String text) {
+        Topic topic = new Topic();
+        topic.setId(id);
+        topic.setType(type);
+        topic.setTitle(title);
+        topic.setContent(delta(text));
+        topic.setTime(new Date());
+        return topic;
+    }
+
+    private static TopicComment comment(int id, int tid, String text) {
+        TopicComment comment = new TopicComment();
+        comment.setId(id);
+        comment.setTid(tid);
+        comment.setContent(delta(text));
+        comment.setTime(new Date());
+        return comment;
+    }
+
+    private static String delta(String text) {
+        return "{\"ops\":[{\"insert\":\"" + text + "\"}]}";
+    }
+}
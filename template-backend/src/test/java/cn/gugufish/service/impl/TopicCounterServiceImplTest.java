@@ -0,0 +1,99 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.InteractCount;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.utils.CacheUtils;
+import cn.gugufish.utils.Const;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 计数回写测试：只有拿到回写锁的节点处理待回写键，每批的数据库更新与字段移除在同一事务中完成
+ */
+class TopicCounterServiceImplTest {
+
+    static final List<String> SWAP_KEYS = List.of(Const.FORUM_TOPIC_COUNTER + "like", Const.FORUM_TOPIC_COUNTER_DRAIN + "like");
+    static final List<String> DRAINED_KEYS = List.of(Const.FORUM_TOPIC_COUNTER_DRAIN + "like", Const.FORUM_TOPIC_COUNTER_LOCK + "like");
+
+    TopicCounterServiceImpl service;
+    HashOperations<String, Object, Object> hash;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = new TopicCounterServiceImpl();
+        service.template = mock(StringRedisTemplate.class);
+        service.mapper = mock(TopicMapper.class);
+        service.cacheUtils = mock(CacheUtils.class);
+        service.transactionTemplate = mock(TransactionTemplate.class);
+        hash = mock(HashOperations.class);
+        when(service.template.opsForHash()).thenReturn(hash);
+        when(service.cacheUtils.tryWithLock(eq(Const.FORUM_TOPIC_COUNTER_LOCK + "like"), anyLong(), any()))
+                .thenAnswer(invocation -> {
+                    invocation.<Consumer<String>>getArgument(2).accept("token");
+                    return true;
+                });
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            return null;
+        }).when(service.transactionTemplate).executeWithoutResult(any());
+        when(service.template.execute(any(RedisScript.class), eq(SWAP_KEYS))).thenReturn(1L);
+        when(hash.entries(Const.FORUM_TOPIC_COUNTER_DRAIN + "like")).thenReturn(new LinkedHashMap<>(Map.of("1", "2")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void onlyLockHolderDrains() {
+        service.flush();
+        //collect的锁由其他节点持有，完全不会接触它的待回写键
+        verify(service.template, never()).execute(any(RedisScript.class),
+                eq(List.of(Const.FORUM_TOPIC_COUNTER + "collect", Const.FORUM_TOPIC_COUNTER_DRAIN + "collect")));
+        InOrder order = inOrder(service.mapper, service.template);
+        order.verify(service.mapper).addInteractCount(List.of(new InteractCount(1, 2)), "like");
+        order.verify(service.template).execute(any(RedisScript.class), eq(DRAINED_KEYS), eq("token"), eq("1"));
+        verify(hash, never()).increment(anyString(), any(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void lostLockRollsBackBatch() {
+        when(service.template.execute(any(RedisScript.class), eq(DRAINED_KEYS), any(Object[].class))).thenReturn(-1L);
+        service.flush();
+        verify(service.mapper).addInteractCount(anyList(), eq("like"));
+        //事务回滚，字段仍在待回写键中，不需要补回
+        verify(hash, never()).increment(anyString(), any(), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedCommitRestoresDrainedFields() {
+        when(service.template.execute(any(RedisScript.class), eq(DRAINED_KEYS), any(Object[].class))).thenReturn(1L);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(mock(TransactionStatus.class));
+            throw new IllegalStateException("commit failed");
+        }).when(service.transactionTemplate).executeWithoutResult(any());
+        service.flush();
+        verify(hash).increment(Const.FORUM_TOPIC_COUNTER_DRAIN + "like", "1", 2L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pendingDeltasIncludeDrainingHash() {
+        when(service.template.execute(any(RedisScript.class), eq(SWAP_KEYS), any(Object[].class)))
+                .thenReturn(List.of(3L, 0L));
+        assertEquals(Map.of(1, 3), service.pendingDeltas(List.of(1, 2), "like"));
+    }
+}
@@ -0,0 +1,328 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Interact;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.utils.CacheUtils;
+import cn.gugufish.utils.Const;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 点赞/收藏写入测试：前几项只验证调用方与脚本之间的约定，即何时查询数据库、何时因位图过期重新加载，
+ * 以及回写时先递增版本再移除操作；并发测试在内存中按脚本语义串行执行每个脚本，
+ * 验证多线程操作与回写同时进行时，计数增量与数据库中的最终状态一致
+ */
+class TopicInteractServiceImplTest {
+
+    TopicInteractServiceImpl service;
+    HashOperations<String, Object, Object> hash;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = new TopicInteractServiceImpl();
+        service.template = mock(StringRedisTemplate.class);
+        service.mapper = mock(TopicMapper.class);
+        service.cacheUtils = mock(CacheUtils.class);
+        hash = mock(HashOperations.class);
+        when(service.template.opsForHash()).thenReturn(hash);
+        when(hash.multiGet(anyString(), anyCollection())).thenReturn(Collections.singletonList(null));
+        when(service.cacheUtils.tryWithLock(anyString(), anyLong(), any())).thenAnswer(invocation -> {
+            invocation.<Consumer<String>>getArgument(2).accept("token");
+            return true;
+        });
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void databaseQueriedOnlyWhenRedisHasNoRecord() {
+        when(service.template.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(-1L, 1L, 0L);
+        Interact interact = new Interact(1, 2, new Date(), "collect");
+        assertTrue(service.interact(interact, true));
+        assertFalse(service.interact(interact, true));
+        verify(service.mapper, times(1)).selectInteracts(List.of(1), "collect");
+        verify(service.template).execute(any(RedisScript.class), anyList(),
+                eq("1:2"), eq("true"), eq("1"), eq("false"), eq("0"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void staleIndexIsReloaded() {
+        when(hash.multiGet(eq(Const.FORUM_INTERACT_VERSION + "like"), anyCollection()))
+                .thenReturn(Collections.singletonList(null), List.of("3"));
+        when(service.template.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(-1L, -2L, 1L);
+        assertTrue(service.interact(new Interact(1, 2, new Date(), "like"), true));
+        verify(service.mapper, times(2)).selectInteracts(List.of(1), "like");
+        verify(service.template).execute(any(RedisScript.class), anyList(),
+                eq("1:2"), eq("true"), eq("1"), eq("false"), eq("3"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exhaustedRetriesAreReported() {
+        when(service.template.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(-1L, -2L, -2L, -2L);
+        assertThrows(IllegalStateException.class, () -> service.interact(new Interact(1, 2, new Date(), "like"), true));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void drainBumpsVersionsBeforeEntriesLeaveRedis() {
+        Cursor<Map.Entry<Object, Object>> cursor = mock(Cursor.class);
+        when(cursor.hasNext()).thenReturn(true, true, false);
+        when(cursor.next()).thenReturn(Map.entry("1:2", "true"), Map.entry("1:3", "false"));
+        when(hash.scan(eq(Const.FORUM_INTERACT_DRAIN + "like"), any())).thenReturn(cursor);
+        when(hash.scan(eq(Const.FORUM_INTERACT_DRAIN + "collect"), any())).thenReturn(mock(Cursor.class));
+        when(service.template.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(1L);
+        service.flush();
+        InOrder order = inOrder(service.mapper, service.template, service.cacheUtils);
+        order.verify(service.mapper).addInteract(anyList(), eq("like"));
+        order.verify(service.mapper).deleteInteract(anyList(), eq("like"));
+        order.verify(service.template).execute(any(RedisScript.class),
+                eq(List.of(Const.FORUM_INTERACT_DRAIN + "like", Const.FORUM_INTERACT_VERSION + "like",
+                        Const.FORUM_INTERACT_LOCK + "like")),
+                eq("token"), eq("2"), any(), any(), eq("1"));
+        order.verify(service.cacheUtils).invalidateLocal(Const.FORUM_INTERACT_INDEX + "like:1");
+        verify(hash, never()).delete(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void concurrentTogglesWhileDrainingKeepCounterConsistent() throws Exception {
+        int threads = 8, operations = 3000, topics = 5, users = 30;
+        ScriptedRedis redis = new ScriptedRedis();
+        Set<String> database = ConcurrentHashMap.newKeySet();
+        Map<String, Object> local = new ConcurrentHashMap<>();
+        this.wire(redis, database, local);
+        Random seed = new Random(42);
+        for (int i = 0; i < 40; i++)
+            database.add(seed.nextInt(topics) + ":" + seed.nextInt(users));
+        Map<Integer, Long> initial = this.countByTopic(database);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger changed = new AtomicInteger(), rejected = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        Future<?> flusher = executor.submit(() -> {
+            start.await();
+            while (running.get()) {
+                service.flush();
+                Thread.sleep(1);
+            }
+            return null;
+        });
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                start.await();
+                for (int i = 0; i < operations; i++) {
+                    Interact interact = new Interact(random.nextInt(topics), random.nextInt(users), new Date(), "like");
+                    try {
+                        if(service.interact(interact, random.nextBoolean()))
+                            changed.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) worker.get(60, TimeUnit.SECONDS);
+        running.set(false);
+        flusher.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+        service.flush();
+        service.flush();
+
+        assertTrue(redis.hash(Const.FORUM_INTERACT_PENDING + "like").isEmpty());
+        assertTrue(redis.hash(Const.FORUM_INTERACT_DRAIN + "like").isEmpty());
+        Map<String, String> counter = redis.hash(Const.FORUM_TOPIC_COUNTER + "like");
+        Map<Integer, Long> result = this.countByTopic(database);
+        for (int tid = 0; tid < topics; tid++) {
+            long delta = Long.parseLong(counter.getOrDefault(String.valueOf(tid), "0"));
+            assertEquals(result.getOrDefault(tid, 0L) - initial.getOrDefault(tid, 0L), delta,
+                    "帖子" + tid + "的计数增量与数据库中的点赞变化不一致");
+        }
+        assertTrue(changed.get() > 0);
+        assertTrue(rejected.get() < threads * operations / 100, "被拒绝的操作过多：" + rejected.get());
+    }
+
+    /**
+     * 将服务连接到内存中的Redis、数据库与本地缓存
+     */
+    @SuppressWarnings("unchecked")
+    private void wire(ScriptedRedis redis, Set<String> database, Map<String, Object> local) {
+        service.template = redis;
+        when(service.mapper.selectInteracts(anyList(), anyString())).thenAnswer(invocation -> {
+            List<Integer> tids = invocation.getArgument(0);
+            return database.stream()
+                    .map(key -> key.split(":"))
+                    .filter(key -> tids.contains(Integer.parseInt(key[0])))
+                    .map(key -> new Interact(Integer.parseInt(key[0]), Integer.parseInt(key[1]), new Date(), "like"))
+                    .toList();
+        });
+        doAnswer(invocation -> {
+            invocation.<List<Interact>>getArgument(0).forEach(interact -> database.add(interact.toKey()));
+            return null;
+        }).when(service.mapper).addInteract(anyList(), anyString());
+        doAnswer(invocation -> {
+            invocation.<List<Interact>>getArgument(0).forEach(interact -> database.remove(interact.toKey()));
+            return null;
+        }).when(service.mapper).deleteInteract(anyList(), anyString());
+        doAnswer(invocation -> local.get(invocation.<String>getArgument(0)))
+                .when(service.cacheUtils).takeFromLocal(anyString(), any());
+        doAnswer(invocation -> local.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(service.cacheUtils).saveToLocal(anyString(), any());
+        doAnswer(invocation -> local.remove(invocation.<String>getArgument(0)))
+                .when(service.cacheUtils).invalidateLocal(anyString());
+        doAnswer(invocation -> {
+            String key = invocation.getArgument(0), token = UUID.randomUUID().toString();
+            if(!redis.setIfAbsent(key, token)) return false;
+            try {
+                invocation.<Consumer<String>>getArgument(2).accept(token);
+                return true;
+            } finally {
+                redis.delete(key);
+            }
+        }).when(service.cacheUtils).tryWithLock(anyString(), anyLong(), any());
+    }
+
+    private Map<Integer, Long> countByTopic(Set<String> database) {
+        Map<Integer, Long> counts = new HashMap<>();
+        database.forEach(key -> counts.merge(Integer.parseInt(key.substring(0, key.indexOf(':'))), 1L, Long::sum));
+        return counts;
+    }
+
+    /**
+     * 内存中的Redis，按照服务中各个脚本的语义执行，每个命令与脚本整体串行执行，
+     * 与Redis单线程执行Lua脚本的语义一致
+     */
+    static class ScriptedRedis extends StringRedisTemplate {
+        private final Map<String, Map<String, String>> hashes = new HashMap<>();
+        private final Map<String, String> strings = new HashMap<>();
+        private final HashOperations<String, Object, Object> operations = this.hashOperations();
+
+        synchronized Map<String, String> hash(String key) {
+            return new HashMap<>(hashes.getOrDefault(key, Map.of()));
+        }
+
+        synchronized boolean setIfAbsent(String key, String value) {
+            return strings.putIfAbsent(key, value) == null;
+        }
+
+        @Override
+        public synchronized Boolean delete(String key) {
+            return strings.remove(key) != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <HK, HV> HashOperations<String, HK, HV> opsForHash() {
+            return (HashOperations<String, HK, HV>) operations;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            String text = script.getScriptAsString();
+            if(text.contains("rename")) return (T) this.swap(keys);
+            if(text.contains("KEYS[3]) ~= ARGV[1]")) return (T) this.drained(keys, args);
+            return (T) this.interact(keys, args);
+        }
+
+        private Long interact(List<String> keys, Object[] args) {
+            String field = (String) args[0], state = (String) args[1], tid = (String) args[2];
+            String previous = hashes.getOrDefault(keys.get(0), Map.of()).get(field);
+            if(previous == null) previous = hashes.getOrDefault(keys.get(1), Map.of()).get(field);
+            if(previous == null) {
+                if(((String) args[3]).isEmpty()) return -1L;
+                if(!hashes.getOrDefault(keys.get(3), Map.of()).getOrDefault(tid, "0").equals(args[4])) return -2L;
+                previous = (String) args[3];
+            }
+            this.writable(keys.get(0)).put(field, state);
+            if(previous.equals(state)) return 0L;
+            this.increment(keys.get(2), tid, Boolean.parseBoolean(state) ? 1 : -1);
+            return 1L;
+        }
+
+        private Long swap(List<String> keys) {
+            if(!hashes.containsKey(keys.get(1)) && hashes.containsKey(keys.get(0)))
+                hashes.put(keys.get(1), hashes.remove(keys.get(0)));
+            return hashes.containsKey(keys.get(1)) ? 1L : 0L;
+        }
+
+        private Long drained(List<String> keys, Object[] args) {
+            if(!args[0].equals(strings.get(keys.get(2)))) return -1L;
+            int n = Integer.parseInt((String) args[1]);
+            for (int i = n + 2; i < args.length; i++)
+                this.increment(keys.get(1), (String) args[i], 1);
+            Map<String, String> drain = hashes.get(keys.get(0));
+            if(drain != null) {
+                for (int i = 2; i < n + 2; i++)
+                    drain.remove((String) args[i]);
+                if(drain.isEmpty()) hashes.remove(keys.get(0));
+            }
+            return (long) n;
+        }
+
+        /**
+         * 与Redis一致，只在写入时创建哈希，空哈希会被删除
+         */
+        private Map<String, String> writable(String key) {
+            return hashes.computeIfAbsent(key, k -> new HashMap<>());
+        }
+
+        private void increment(String key, String field, long delta) {
+            this.writable(key).merge(field, String.valueOf(delta),
+                    (a, b) -> String.valueOf(Long.parseLong(a) + Long.parseLong(b)));
+        }
+
+        /**
+         * 服务只用到HMGET与HSCAN，HSCAN返回调用时的快照
+         */
+        @SuppressWarnings("unchecked")
+        private HashOperations<String, Object, Object> hashOperations() {
+            HashOperations<String, Object, Object> operations = mock(HashOperations.class);
+            when(operations.multiGet(anyString(), anyCollection())).thenAnswer(invocation -> {
+                synchronized (this) {
+                    Map<String, String> hash = hashes.getOrDefault(invocation.<String>getArgument(0), Map.of());
+                    List<Object> values = new ArrayList<>();
+                    invocation.<Collection<Object>>getArgument(1).forEach(field -> values.add(hash.get(field.toString())));
+                    return values;
+                }
+            });
+            when(operations.scan(anyString(), any())).thenAnswer(invocation -> {
+                Iterator<Map.Entry<Object, Object>> iterator;
+                synchronized (this) {
+                    iterator = new ArrayList<Map.Entry<Object, Object>>(
+                            hashes.getOrDefault(invocation.<String>getArgument(0), Map.of()).entrySet().stream()
+                                    .map(entry -> Map.<Object, Object>entry(entry.getKey(), entry.getValue()))
+                                    .toList()).iterator();
+                }
+                Cursor<Map.Entry<Object, Object>> cursor = mock(Cursor.class);
+                when(cursor.hasNext()).thenAnswer(i -> iterator.hasNext());
+                when(cursor.next()).thenAnswer(i -> iterator.next());
+                return cursor;
+            });
+            return operations;
+        }
+    }
+}
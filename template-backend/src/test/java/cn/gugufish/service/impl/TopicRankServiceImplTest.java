@@ -0,0 +1,180 @@
+package cn.gugufish.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 热门排行测试：内存中的Redis按记录与整理脚本的语义执行，并可以把时钟向后拨动，
+ * 验证前向衰减的计分、整理时的基准时间换算以及容量裁剪
+ */
+class TopicRankServiceImplTest {
+
+    static final long HALF_LIFE = 6 * 3600;
+
+    TopicRankServiceImpl service;
+    ScriptedRedis redis;
+
+    @BeforeEach
+    void setUp() {
+        service = new TopicRankServiceImpl();
+        service.template = redis = new ScriptedRedis();
+    }
+
+    @Test
+    void newerEventsCountDouble() {
+        service.record(1, "like", 1);
+        redis.elapse(HALF_LIFE);
+        service.record(2, "like", 1);
+        assertEquals(2 * redis.score(1), redis.score(2), 1e-9);
+        assertEquals(List.of(2, 1), service.top(10));
+        //同一时刻的事件按权重与次数累加
+        service.record(3, "comment", 2);
+        assertEquals(8 * 2, redis.score(3), 1e-9);
+        assertEquals(List.of(3, 2), service.top(2));
+    }
+
+    @Test
+    void cancellationsAndUnknownEventsAreIgnored() {
+        service.record(1, "like", 1);
+        double score = redis.score(1);
+        redis.elapse(HALF_LIFE * 4);
+        //按当前时间扣减会是当初分数的16倍，取消操作不回退热度
+        service.record(1, "like", -1);
+        service.record(1, "share", 1);
+        service.record(1, "view", 0);
+        assertEquals(score, redis.score(1), 1e-9);
+        assertEquals(1, redis.executions);
+    }
+
+    @Test
+    void compactionRebasesScoresToNow() {
+        service.record(1, "create", 1);
+        redis.elapse(HALF_LIFE);
+        service.record(2, "collect", 1);
+        redis.elapse(HALF_LIFE);
+        long now = redis.now();
+        service.compact();
+        assertEquals(now, redis.epoch());
+        //两个半衰期之前的10分衰减为2.5，一个半衰期之前的5分衰减为2.5
+        assertEquals(2.5, redis.score(1), 1e-9);
+        assertEquals(2.5, redis.score(2), 1e-9);
+        //基准时间移到当前，新事件按原始权重计入，与未整理时的相对大小一致
+        service.record(3, "view", 1);
+        assertEquals(1, redis.score(3), 1e-9);
+        assertEquals(List.of(1, 2, 3), service.top(3).stream().sorted().toList());
+        assertEquals(3, service.top(10).size());
+    }
+
+    @Test
+    void compactionKeepsOnlyTopEntries() {
+        for (int tid = 1; tid <= 1005; tid++)
+            service.record(tid, "view", tid);
+        redis.zset.put("2000", 0.0);
+        service.compact();
+        assertEquals(1000, redis.zset.size());
+        assertFalse(redis.zset.containsKey("2000"));
+        for (int tid = 1; tid <= 5; tid++)
+            assertFalse(redis.zset.containsKey(String.valueOf(tid)));
+        assertEquals(List.of(1005, 1004), service.top(2));
+    }
+
+    /**
+     * 内存中的Redis，按照排行服务中两个脚本的语义执行；
+     * 脚本收到的当前时间必须是真实时间，执行时换成固定的起点加上测试拨动的时长，避免跨秒导致的误差
+     */
+    static class ScriptedRedis extends StringRedisTemplate {
+        static final long START = 1_700_000_000L;
+
+        final Map<String, Double> zset = new HashMap<>();
+        Long epoch;
+        long offset;
+        int executions;
+
+        @SuppressWarnings("unchecked")
+        final ZSetOperations<String, String> operations = mock(ZSetOperations.class);
+
+        ScriptedRedis() {
+            when(operations.reverseRange(anyString(), anyLong(), anyLong())).thenAnswer(invocation -> {
+                long end = invocation.getArgument(2);
+                return zset.entrySet().stream()
+                        .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                        .limit(end + 1)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+            });
+        }
+
+        void elapse(long seconds) {
+            offset += seconds;
+        }
+
+        long now() {
+            return START + offset;
+        }
+
+        private long now(Object argument) {
+            long passed = Long.parseLong((String) argument);
+            assertTrue(Math.abs(System.currentTimeMillis() / 1000 - passed) <= 1, "脚本收到的不是当前时间（秒）");
+            return this.now();
+        }
+
+        long epoch() {
+            return epoch;
+        }
+
+        double score(int tid) {
+            return zset.get(String.valueOf(tid));
+        }
+
+        @Override
+        public ZSetOperations<String, String> opsForZSet() {
+            return operations;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            executions++;
+            if(script.getScriptAsString().contains("ZUNIONSTORE"))
+                return (T) this.compact(args);
+            return (T) this.record(args);
+        }
+
+        private Long record(Object[] args) {
+            long now = this.now(args[2]);
+            if(epoch == null) epoch = now;
+            double increment = Double.parseDouble((String) args[1])
+                    * Math.pow(2, (double) (now - epoch) / Long.parseLong((String) args[3]));
+            zset.merge((String) args[0], increment, Double::sum);
+            return 1L;
+        }
+
+        private Long compact(Object[] args) {
+            long now = this.now(args[0]);
+            if(epoch != null) {
+                double factor = Math.pow(2, -(double) (now - epoch) / Long.parseLong((String) args[1]));
+                zset.replaceAll((member, score) -> score * factor);
+            }
+            epoch = now;
+            zset.values().removeIf(score -> score <= 0);
+            int capacity = Integer.parseInt((String) args[2]);
+            zset.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue())
+                    .limit(Math.max(0, zset.size() - capacity))
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(zset::remove);
+            return (long) zset.size();
+        }
+    }
+}
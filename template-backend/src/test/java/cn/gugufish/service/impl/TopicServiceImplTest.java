@@ -0,0 +1,217 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.*;
+import cn.gugufish.entity.vo.response.CommentVO;
+import cn.gugufish.entity.vo.response.TopicDetailVO;
+import cn.gugufish.entity.vo.response.TopicPreviewVO;
+import cn.gugufish.entity.vo.response.UserCardVO;
+import cn.gugufish.mapper.*;
+import cn.gugufish.service.TopicCounterService;
+import cn.gugufish.service.TopicInteractService;
+import cn.gugufish.service.TopicService;
+import cn.gugufish.service.TopicStatsService;
+import cn.gugufish.service.UserCardService;
+import cn.gugufish.utils.CacheUtils;
+import com.alibaba.fastjson2.JSONObject;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 帖子列表预览与评论列表组装的查询次数回归测试，每页的查询次数必须与页大小无关
+ */
+class TopicServiceImplTest {
+
+    TopicServiceImpl service;
+    TopicMapper topicMapper;
+    AccountMapper accountMapper;
+    TopicCommentMapper commentMapper;
+    UserCardService userCardService;
+
+    @BeforeEach
+    void setUp() {
+        service = new TopicServiceImpl();
+        topicMapper = mock(TopicMapper.class);
+        accountMapper = mock(AccountMapper.class);
+        commentMapper = mock(TopicCommentMapper.class);
+        userCardService = mock(UserCardService.class);
+        service.accountMapper = accountMapper;
+        service.commentMapper = commentMapper;
+        service.userCardService = userCardService;
+        service.counterService = mock(TopicCounterService.class);
+        service.cacheUtils = mock(CacheUtils.class);
+        when(service.cacheUtils.getListOrLoad(any(), any(), anyLong(), anyBoolean(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(4).get());
+        ReflectionTestUtils.setField(service, "baseMapper", topicMapper);
+    }
+
+    @Test
+    void listTopicByPageUsesConstantQueries() {
+        mockTopicPage(10);
+        List<TopicPreviewVO> list = service.listTopicByPage(1, 0);
+        assertEquals(10, list.size());
+        assertEquals(2, sqlStatements());
+        TopicPreviewVO first = list.get(0);
+        assertEquals(1, first.getId());
+        assertEquals("user2", first.getUsername());
+        assertEquals(1, first.getLike());
+        assertEquals(2, first.getCollect());
+        assertEquals("hello 1", first.getText());
+    }
+
+    @Test
+    void listAllTopicByPageUsesConstantQueries() {
+        mockTopicPage(200);
+        JSONObject object = service.listAllTopicByPage(1, 200);
+        assertEquals(200, object.getJSONArray("list").size());
+        assertEquals(2, sqlStatements());
+    }
+
+    @Test
+    void commentsUseConstantQueries() {
+        mockCommentPage(10);
+        List<CommentVO> list = service.comments(1, 1);
+        assertEquals(10, list.size());
+        // 评论分页 + 引用评论 + 一次批量获取用户名片
+        assertEquals(2, sqlStatements());
+        verify(userCardService, times(1)).cards(anyCollection());
+        verify(userCardService, never()).card(anyInt());
+        CommentVO quoted = list.get(1);
+        assertEquals("comment 1", quoted.getQuote());
+        assertEquals("此评论已被删除", list.get(2).getQuote());
+        assertNull(list.get(0).getQuote());
+        assertEquals("user2", list.get(0).getUser().getUsername());
+        assertNull(list.get(0).getUser().getPhone());
+        assertEquals("wx2", list.get(0).getUser().getWechat());
+    }
+
+    @Test
+    void topicVersionSkipsDetailAndBodyReusesIt() {
+        service.interactService = mock(TopicInteractService.class);
+        service.statsService = mock(TopicStatsService.class);
+        Topic topic = new Topic();
+        topic.setId(1);
+        topic.setUid(2);
+        topic.setContent("{\"ops\":[]}");
+        when(service.cacheUtils.getOrLoad(anyString(), eq(Topic.class), anyLong(), any())).thenReturn(topic);
+        when(service.interactService.interactStates(anyList(), anyInt(), anyString())).thenReturn(Map.of(1, true));
+        when(service.statsService.stats(1)).thenReturn(new TopicStats(3, 4, 5), new TopicStats(3, 5, 5));
+        UserCardVO card = new UserCardVO();
+        card.setId(2);
+        card.setUsername("user2");
+        when(userCardService.card(2)).thenReturn(card);
+        TopicService.TopicVersion version = service.topicVersion(1, 7);
+        //客户端缓存有效时只读取版本信息，不读取帖子详情与作者名片
+        verify(service.cacheUtils, never()).getOrLoad(anyString(), eq(Topic.class), anyLong(), any());
+        verify(userCardService, never()).card(anyInt());
+        assertEquals(0, sqlStatements());
+        TopicDetailVO detail = service.getTopic(1, version);
+        verify(service.statsService, times(1)).stats(1);
+        verify(service.interactService, times(1)).interactStates(anyList(), anyInt(), eq("like"));
+        assertEquals(4, detail.getLike());
+        assertTrue(detail.getInteract().getLike());
+        assertEquals("user2", detail.getUser().getUsername());
+        assertNotEquals(version.etag(), service.topicVersion(1, 7).etag());
+    }
+
+    @Test
+    void typesSnapshotRefreshes() {
+        service.mapper = mock(TopicTypeMapper.class);
+        TopicType type = new TopicType();
+        type.setId(1);
+        type.setName("日常");
+        when(service.mapper.selectList(any())).thenReturn(List.of(type));
+        service.refreshTypes();
+        String version = service.typesVersion();
+        type.setName("闲聊");
+        service.refreshTypes();
+        assertNotEquals(version, service.typesVersion());
+        assertEquals("闲聊", service.listTypes().get(0).getName());
+    }
+
+    private int sqlStatements() {
+        return mockingDetails(topicMapper).getInvocations().size()
+                + mockingDetails(accountMapper).getInvocations().size()
+                + mockingDetails(commentMapper).getInvocations().size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockCommentPage(int size) {
+        List<TopicComment> comments = IntStream.rangeClosed(1, size).mapToObj(i -> {
+            TopicComment comment = new TopicComment();
+            comment.setId(i);
+            comment.setUid(i % 3 + 1);
+            comment.setTid(1);
+            comment.setContent("{\"ops\":[{\"insert\":\"comment " + i + "\"}]}");
+            comment.setTime(new Date());
+            // 每条评论都引用前一条，第3条引用的评论已被删除
+            comment.setQuote(i == 3 ? 100 : i - 1);
+            return comment;
+        }).toList();
+        when(commentMapper.selectPage(any(Page.class), any())).thenAnswer(invocation -> {
+            Page<TopicComment> page = invocation.getArgument(0);
+            page.setRecords(comments);
+            return page;
+        });
+        when(commentMapper.selectList(any())).thenReturn(comments);
+        when(userCardService.cards(anyCollection())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            Map<Integer, UserCardVO> cards = new HashMap<>();
+            ids.forEach(id -> {
+                UserCardVO card = new UserCardVO();
+                card.setId(id);
+                card.setUsername("user" + id);
+                card.setWechat("wx" + id);
+                cards.put(id, card);
+            });
+            return cards;
+        });
+    }
+
+    private void mockAccounts() {
+        when(accountMapper.selectByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<Integer> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .map(id -> new Account(id, "user" + id, null, null, null, null, null, false, false))
+                    .toList();
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockTopicPage(int size) {
+        List<Topic> topics = IntStream.rangeClosed(1, size).mapToObj(i -> {
+            Topic topic = new Topic();
+            topic.setId(i);
+            topic.setUid(i % 3 + 1);
+            topic.setTitle("topic " + i);
+            topic.setContent("{\"ops\":[{\"insert\":\"hello " + i + "\"}]}");
+            topic.setTime(new Date());
+            topic.setType(1);
+            topic.setTop(0);
+            topic.setLocked(0);
+            topic.setLikeCount(0);
+            topic.setCollectCount(2);
+            return topic;
+        }).toList();
+        when(topicMapper.selectPage(any(Page.class), any())).thenAnswer(invocation -> {
+            Page<Topic> page = invocation.getArgument(0);
+            page.setRecords(topics);
+            page.setTotal(topics.size());
+            return page;
+        });
+        mockAccounts();
+        when(service.counterService.pendingDeltas(anyCollection(), eq("like")))
+                .thenReturn(Map.of(1, 1));
+        when(service.counterService.pendingDeltas(anyCollection(), eq("collect")))
+                .thenReturn(Map.of());
+    }
+}
@@ -0,0 +1,182 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Topic;
+import cn.gugufish.entity.dto.TopicStats;
+import cn.gugufish.mapper.TopicCommentMapper;
+import cn.gugufish.mapper.TopicMapper;
+import cn.gugufish.service.TopicCounterService;
+import cn.gugufish.utils.Const;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 帖子统计数据测试：内存中的Redis按调整与写入脚本的语义执行，
+ * 验证缓存缺失时的重新计算，以及重新计算与增量调整交错时不会丢失调整
+ */
+class TopicStatsServiceImplTest {
+
+    static final String KEY = Const.FORUM_TOPIC_STATS + 1;
+    static final String SEED = Const.FORUM_TOPIC_STATS_SEED + 1;
+
+    TopicStatsServiceImpl service;
+    ScriptedRedis redis;
+
+    @BeforeEach
+    void setUp() {
+        service = new TopicStatsServiceImpl();
+        service.template = redis = new ScriptedRedis();
+        service.topicMapper = mock(TopicMapper.class);
+        service.commentMapper = mock(TopicCommentMapper.class);
+        service.counterService = mock(TopicCounterService.class);
+        Topic topic = new Topic();
+        topic.setId(1);
+        topic.setLikeCount(4);
+        topic.setCollectCount(2);
+        when(service.topicMapper.selectOne(any())).thenReturn(topic);
+        when(service.commentMapper.selectCount(any())).thenReturn(3L);
+        when(service.counterService.pendingDeltas(List.of(1), "like")).thenReturn(Map.of(1, 1));
+        when(service.counterService.pendingDeltas(List.of(1), "collect")).thenReturn(Map.of());
+    }
+
+    @Test
+    void missRecomputesAndCaches() {
+        assertEquals(new TopicStats(3, 5, 2), service.stats(1));
+        assertEquals(Map.of("comments", "3", "like", "5", "collect", "2"), redis.hashes.get(KEY));
+        assertEquals(600, redis.expires.get(KEY));
+        assertFalse(redis.strings.containsKey(SEED));
+        assertEquals(new TopicStats(3, 5, 2), service.stats(1));
+        verify(service.topicMapper, times(1)).selectOne(any());
+    }
+
+    @Test
+    void adjustIncrementsExistingHash() {
+        redis.hashes.put(KEY, new HashMap<>(Map.of("comments", "3", "like", "5", "collect", "2")));
+        service.adjust(1, "like", 1);
+        service.adjust(1, "comments", -1);
+        assertEquals(new TopicStats(2, 6, 2), service.stats(1));
+        verify(service.topicMapper, never()).selectOne(any());
+        //缓存不存在的帖子不会产生只有部分字段的哈希
+        service.adjust(2, "like", 1);
+        assertFalse(redis.hashes.containsKey(Const.FORUM_TOPIC_STATS + 2));
+    }
+
+    @Test
+    void adjustDuringRecomputeDiscardsResult() {
+        when(service.commentMapper.selectCount(any())).thenAnswer(invocation -> {
+            //统计评论数期间有人点赞，数据库查询结果可能没有包含这次变化
+            service.adjust(1, "like", 1);
+            return 3L;
+        });
+        assertEquals(new TopicStats(3, 5, 2), service.stats(1));
+        assertFalse(redis.hashes.containsKey(KEY));
+        service.stats(1);
+        verify(service.topicMapper, times(2)).selectOne(any());
+    }
+
+    @Test
+    void lateRecomputeKeepsConcurrentIncrements() {
+        //本次读取缓存缺失之后、设置标记之前，另一请求已经写入统计数据并被调整过
+        redis.beforeSet = () -> {
+            redis.hashes.put(KEY, new HashMap<>(Map.of("comments", "3", "like", "5", "collect", "2")));
+            service.adjust(1, "like", 1);
+        };
+        service.stats(1);
+        assertEquals("6", redis.hashes.get(KEY).get("like"));
+        assertFalse(redis.expires.containsKey(KEY));
+    }
+
+    @Test
+    void evictDiscardsRunningRecompute() {
+        when(service.commentMapper.selectCount(any())).thenAnswer(invocation -> {
+            service.evict(1);
+            return 3L;
+        });
+        service.stats(1);
+        assertFalse(redis.hashes.containsKey(KEY));
+    }
+
+    /**
+     * 内存中的Redis，按照统计服务中两个脚本的语义执行
+     */
+    static class ScriptedRedis extends StringRedisTemplate {
+        final Map<String, Map<String, String>> hashes = new HashMap<>();
+        final Map<String, String> strings = new HashMap<>();
+        final Map<String, Long> expires = new HashMap<>();
+        Runnable beforeSet;
+
+        @SuppressWarnings("unchecked")
+        final HashOperations<String, Object, Object> hashOperations = mock(HashOperations.class);
+        @SuppressWarnings("unchecked")
+        final ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+
+        ScriptedRedis() {
+            when(hashOperations.entries(anyString())).thenAnswer(invocation ->
+                    new HashMap<Object, Object>(hashes.getOrDefault(invocation.<String>getArgument(0), Map.of())));
+            doAnswer(invocation -> {
+                if(beforeSet != null) beforeSet.run();
+                return strings.put(invocation.getArgument(0), invocation.getArgument(1));
+            }).when(valueOperations).set(anyString(), anyString(), anyLong(), any());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <HK, HV> HashOperations<String, HK, HV> opsForHash() {
+            return (HashOperations<String, HK, HV>) hashOperations;
+        }
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            return valueOperations;
+        }
+
+        @Override
+        public Long delete(Collection<String> keys) {
+            keys.forEach(key -> {
+                hashes.remove(key);
+                strings.remove(key);
+                expires.remove(key);
+            });
+            return (long) keys.size();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            if(script.getScriptAsString().contains("hsetnx"))
+                return (T) this.store(keys, args);
+            return (T) this.adjust(keys, args);
+        }
+
+        private Long adjust(List<String> keys, Object[] args) {
+            Map<String, String> hash = hashes.get(keys.get(0));
+            if(hash != null) {
+                long value = Long.parseLong(hash.getOrDefault((String) args[0], "0")) + Long.parseLong((String) args[1]);
+                hash.put((String) args[0], String.valueOf(value));
+                return value;
+            }
+            strings.remove(keys.get(1));
+            return 0L;
+        }
+
+        private Long store(List<String> keys, Object[] args) {
+            if(!args[0].equals(strings.get(keys.get(1)))) return 0L;
+            strings.remove(keys.get(1));
+            Map<String, String> hash = hashes.computeIfAbsent(keys.get(0), k -> new HashMap<>());
+            long created = 0;
+            for (int i = 2; i < args.length; i += 2)
+                if(hash.putIfAbsent((String) args[i], (String) args[i + 1]) == null) created++;
+            if(created > 0) expires.put(keys.get(0), Long.parseLong((String) args[1]));
+            return created;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package cn.gugufish.service.impl;
+
+import cn.gugufish.entity.dto.Account;
+import cn.gugufish.entity.dto.AccountDetails;
+import cn.gugufish.entity.dto.AccountPrivacy;
+import cn.gugufish.entity.vo.response.UserCardVO;
+import cn.gugufish.mapper.AccountDetailsMapper;
+import cn.gugufish.mapper.AccountMapper;
+import cn.gugufish.mapper.AccountPrivacyMapper;
+import cn.gugufish.utils.CacheUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 用户名片批量获取测试：缓存命中的用户不再查询数据库，未命中的用户一次性查询并按隐私设置过滤
+ */
+class UserCardServiceImplTest {
+
+    UserCardServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        service = new UserCardServiceImpl();
+        service.accountMapper = mock(AccountMapper.class);
+        service.detailsMapper = mock(AccountDetailsMapper.class);
+        service.privacyMapper = mock(AccountPrivacyMapper.class);
+        service.cacheUtils = mock(CacheUtils.class);
+    }
+
+    @Test
+    void cardsLoadOnlyMissingUsers() {
+        UserCardVO cached = new UserCardVO();
+        cached.setId(1);
+        cached.setUsername("cached");
+        when(service.cacheUtils.takeAllFromCache(eq(List.of("user:card:1", "user:card:2")), eq(UserCardVO.class)))
+                .thenReturn(Arrays.asList(cached, null));
+        when(service.accountMapper.selectByIds(List.of(2)))
+                .thenReturn(List.of(new Account(2, "user2", "pwd", "a@b.c", "user", "/avatar/2", null, false, false)));
+        when(service.detailsMapper.selectByIds(List.of(2)))
+                .thenReturn(List.of(new AccountDetails(2, 1, "13800000000", "10000", "wx", "desc")));
+        AccountPrivacy privacy = new AccountPrivacy(2);
+        privacy.setPhone(false);
+        privacy.setEmail(false);
+        when(service.privacyMapper.selectByIds(List.of(2))).thenReturn(List.of(privacy));
+
+        Map<Integer, UserCardVO> cards = service.cards(List.of(1, 2, 1));
+        assertSame(cached, cards.get(1));
+        UserCardVO card = cards.get(2);
+        assertEquals("user2", card.getUsername());
+        assertEquals("wx", card.getWechat());
+        assertEquals("desc", card.getDesc());
+        assertNull(card.getPhone());
+        assertNull(card.getEmail());
+        verify(service.cacheUtils).saveToCache(eq("user:card:2"), same(card), anyLong());
+        verify(service.accountMapper, times(1)).selectByIds(anyCollection());
+    }
+
+    @Test
+    void cardsSkipDatabaseWhenAllCached() {
+        UserCardVO cached = new UserCardVO();
+        cached.setId(3);
+        when(service.cacheUtils.takeAllFromCache(anyList(), eq(UserCardVO.class))).thenReturn(List.of(cached));
+        assertSame(cached, service.card(3));
+        verifyNoInteractions(service.accountMapper, service.detailsMapper, service.privacyMapper);
+    }
+}
@@ -0,0 +1,109 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 缓存加载请求合并测试，同一个键的并发未命中只允许执行一次加载
+ */
+class CacheUtilsTest {
+
+    CacheUtils cacheUtils;
+    ValueOperations<String, String> operations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        cacheUtils = new CacheUtils();
+        cacheUtils.template = mock(StringRedisTemplate.class);
+        operations = mock(ValueOperations.class);
+        when(cacheUtils.template.opsForValue()).thenReturn(operations);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        //写入后的值可以被之后的读取看到，晚到的线程命中缓存而不是再次加载
+        AtomicReference<String> stored = new AtomicReference<>();
+        doAnswer(invocation -> {
+            stored.set(invocation.getArgument(1));
+            return null;
+        }).when(operations).set(eq("test:list"), anyString(), anyLong(), any());
+        when(operations.get("test:list")).thenAnswer(invocation -> stored.get());
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch arrived = new CountDownLatch(16), loading = new CountDownLatch(1), release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    arrived.countDown();
+                    return cacheUtils.getListOrLoad("test:list", String.class, 60, () -> {
+                        loads.incrementAndGet();
+                        loading.countDown();
+                        await(release);
+                        return List.of("a", "b");
+                    });
+                }));
+            }
+            assertTrue(arrived.await(5, TimeUnit.SECONDS));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            release.countDown();
+            for (Future<List<String>> future : futures)
+                assertEquals(List.of("a", "b"), future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        verify(operations, times(1)).set(eq("test:list"), anyString(), eq(60L), eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    void nullResultIsCachedBriefly() {
+        AtomicReference<String> stored = new AtomicReference<>();
+        doAnswer(invocation -> {
+            stored.set(invocation.getArgument(1));
+            return null;
+        }).when(operations).set(eq("test:missing"), anyString(), anyLong(), any());
+        when(operations.get("test:missing")).thenAnswer(invocation -> stored.get());
+        when(operations.setIfAbsent(anyString(), anyString(), anyLong(), any())).thenReturn(true);
+        assertNull(cacheUtils.getOrLoad("test:missing", String.class, 600, true, () -> null));
+        verify(operations).set(eq("test:missing"), anyString(), eq(10L), eq(TimeUnit.SECONDS));
+        assertNull(cacheUtils.getListOrLoad("test:missing", String.class, 600, true, () -> fail("不应执行加载")));
+    }
+
+    @Test
+    void freshEntryIsServedWithoutLoading() {
+        long expireAt = System.currentTimeMillis() + 60_000;
+        when(operations.get("test:object"))
+                .thenReturn("{\"e\":" + expireAt + ",\"d\":1,\"v\":\"cached\"}");
+        String value = cacheUtils.getOrLoad("test:object", String.class, 60, () -> fail("不应执行加载"));
+        assertEquals("cached", value);
+    }
+
+    @Test
+    void expiredEntryIsReloaded() {
+        when(operations.get("test:object"))
+                .thenReturn("{\"e\":" + (System.currentTimeMillis() - 1) + ",\"d\":1,\"v\":\"old\"}");
+        assertEquals("new", cacheUtils.getOrLoad("test:object", String.class, 60, () -> "new"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaUtilsTest {
+
+    private static final String CONTENT = """
+            {"ops":[
+                {"insert":"Hello "},
+                {"insert":"World","attributes":{"bold":true,"link":{"href":"x"}}},
+                {"insert":{"image":"/cache/20250101/a"}},
+                {"insert":"\\n"},
+                {"insert":{"image":"/cache/20250101/b"},"attributes":{"width":"100"}}
+            ]}
+            """;
+
+    @Test
+    void scanCollectsPreviewAndImages() {
+        DeltaUtils.Summary summary = DeltaUtils.scan(CONTENT, 10000, 300, true);
+        assertNotNull(summary);
+        assertFalse(summary.overflow());
+        assertEquals(14, summary.length());
+        assertEquals("Hello World\n", summary.preview());
+        assertEquals(List.of("/cache/20250101/a", "/cache/20250101/b"), summary.images());
+    }
+
+    @Test
+    void scanTruncatesPreview() {
+        assertEquals("Hello Wo", DeltaUtils.preview(CONTENT, 8));
+    }
+
+    @Test
+    void scanStopsOnOverflow() {
+        assertTrue(DeltaUtils.scan(CONTENT, 5, 300, true).overflow());
+        assertFalse(DeltaUtils.lengthWithin(CONTENT, 5));
+        assertTrue(DeltaUtils.lengthWithin(CONTENT, 14));
+    }
+
+    @Test
+    void scanRejectsInvalidContent() {
+        assertNull(DeltaUtils.scan(null, 100, 10, false));
+        assertNull(DeltaUtils.scan("{\"ops\":[", 100, 10, false));
+        assertNull(DeltaUtils.scan("{\"text\":\"a\"}", 100, 10, false));
+        assertFalse(DeltaUtils.lengthWithin("[]", 100));
+        assertEquals("", DeltaUtils.preview("not json", 10));
+    }
+
+    @Test
+    void scanRejectsTruncatedOrTrailingContent() {
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            String content = CONTENT.strip();
+            for (int i = 1; i < content.length(); i++)
+                assertNull(DeltaUtils.scan(content.substring(0, i), 100, 10, true), content.substring(0, i));
+            assertNull(DeltaUtils.scan("{\"ops\"", 100, 10, false));
+            assertNull(DeltaUtils.scan(CONTENT + "garbage", 100, 10, false));
+            assertNull(DeltaUtils.scan(CONTENT + "{}", 100, 10, false));
+            assertNotNull(DeltaUtils.scan(CONTENT + "  ", 100, 10, false));
+        });
+    }
+}
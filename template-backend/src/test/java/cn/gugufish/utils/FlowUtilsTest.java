@@ -0,0 +1,54 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 限流工具测试，每种限流方式都只执行一次限流脚本，并传入对应的超限处理方式
+ */
+class FlowUtilsTest {
+
+    FlowUtils utils;
+
+    @BeforeEach
+    void setUp() {
+        utils = new FlowUtils();
+        utils.template = mock(StringRedisTemplate.class);
+    }
+
+    @Test
+    void periodCheckCarriesBlockKeyInOneCall() {
+        when(utils.template.execute(any(), anyList(), any(Object[].class))).thenReturn(1L);
+        assertTrue(utils.limitPeriodCheck("counter", "block", 30, 100, 3));
+        verify(utils.template, times(1)).execute(any(), eq(List.of("counter", "block")),
+                eq("100"), eq("3"), eq("block"), eq("30"));
+        verifyNoMoreInteractions(utils.template);
+    }
+
+    @Test
+    void rejectedWhenScriptReturnsZero() {
+        when(utils.template.execute(any(), anyList(), any(Object[].class))).thenReturn(0L);
+        assertFalse(utils.limitOnceUpgradeCheck("key", 10, 3, 300));
+        verify(utils.template).execute(any(), eq(List.of("key")), eq("10"), eq("3"), eq("upgrade"), eq("300"));
+        assertFalse(utils.limitOnceCheck("key", 60));
+        verify(utils.template).execute(any(), eq(List.of("key")), eq("1"), eq("60"), eq("none"), eq("0"));
+    }
+
+    @Test
+    void reportsShareOneScriptCall() {
+        when(utils.template.execute(any(), anyList(), any(Object[].class))).thenReturn(List.of(3L, -1000L));
+        long[] results = utils.limitPeriodReport(List.of(
+                new FlowUtils.PeriodReport("c1", "b1", 100, 3, 3),
+                new FlowUtils.PeriodReport("c2", "b2", 50, 5, 7)), 30);
+        assertArrayEquals(new long[]{3, -1000}, results);
+        verify(utils.template, times(1)).execute(any(), eq(List.of("c1", "b1", "c2", "b2")),
+                eq("30"), eq("100"), eq("3"), eq("3"), eq("50"), eq("5"), eq("7"));
+    }
+}
@@ -0,0 +1,91 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * IP策略测试：地址解析归一化、最长前缀匹配以及受信任代理的请求头采信规则
+ */
+class IpPolicyTest {
+
+    @Test
+    void equivalentAddressesShareOneKey() {
+        assertEquals(IpAddress.parse("2001:db8::1").toKey(), IpAddress.parse("2001:0DB8:0:0::0001").toKey());
+        assertEquals("c0a80001", IpAddress.parse("192.168.0.1").toKey());
+        assertEquals(IpAddress.parse("192.168.0.1"), IpAddress.parse("::ffff:192.168.0.1"));
+        assertNull(IpAddress.parse("256.1.1.1"));
+        assertNull(IpAddress.parse("example.com"));
+        assertNull(IpAddress.parse("1.2.3"));
+    }
+
+    @Test
+    void ipv6ParsedByHand() {
+        assertEquals("00000000000000000000000000000000", IpAddress.parse("::").toKey());
+        assertEquals("00010000000000000000000000000000", IpAddress.parse("1::").toKey());
+        assertEquals("20010db8000000000000000000000001", IpAddress.parse("[2001:db8::1]").toKey());
+        assertEquals("00010002000300040005000600070008", IpAddress.parse("1:2:3:4:5:6:7:8").toKey());
+        assertEquals("00000000000000000000000000010002", IpAddress.parse("::1:2").toKey());
+        assertEquals("0a000001", IpAddress.parse("::FFFF:10.0.0.1").toKey());
+        for (String text : List.of(".:1", "１:2", "٣::1", "1:2", "1::2::3", ":1::", "1:", "12345::",
+                "1:2:3:4:5:6:7:8:9", "1::2:3:4:5:6:7:8", "::1.2.3", "fe80::1%eth0", "::g"))
+            assertNull(IpAddress.parse(text), text);
+    }
+
+    @Test
+    void longestPrefixWins() {
+        IpPolicy policy = this.policy(List.of(
+                "deny 10.0.0.0/8",
+                "allow 10.1.0.0/16  # 内部探针",
+                "limit 2001:db8::/32 500/3"));
+        assertEquals(IpPolicy.Action.DENY, policy.match(IpAddress.parse("10.2.3.4")).action());
+        assertEquals(IpPolicy.Action.ALLOW, policy.match(IpAddress.parse("10.1.3.4")).action());
+        IpPolicy.Rule rule = policy.match(IpAddress.parse("2001:db8:1::5"));
+        assertEquals(IpPolicy.Action.LIMIT, rule.action());
+        assertEquals(500, rule.limit());
+        assertEquals(IpAddress.parse("2001:db8::").toKey(),
+                IpAddress.parse("2001:db8:1::5").mask(rule.prefix()).toKey());
+        assertNull(policy.match(IpAddress.parse("11.0.0.1")));
+    }
+
+    @Test
+    void forwardedHeaderOnlyTrustedFromProxies() {
+        IpPolicy policy = this.policy(List.of("proxy 127.0.0.1", "proxy 172.16.0.0/12"));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("127.0.0.1");
+        request.addHeader("X-Forwarded-For", "6.6.6.6, 8.8.8.8, 172.16.0.2");
+        assertEquals(IpAddress.parse("8.8.8.8"), policy.resolveClient(request));
+        request.setRemoteAddr("9.9.9.9");
+        assertEquals(IpAddress.parse("9.9.9.9"), policy.resolveClient(request));
+    }
+
+    @Test
+    void forwardedHeaderIgnoredWithoutProxyRules() {
+        IpPolicy policy = this.policy(List.of("allow 10.0.0.0/8"));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("9.9.9.9");
+        request.addHeader("X-Forwarded-For", "10.0.0.1");
+        request.addHeader("X-Real-IP", "10.0.0.1");
+        IpAddress client = policy.resolveClient(request);
+        assertEquals(IpAddress.parse("9.9.9.9"), client);
+        assertNull(policy.match(client));
+    }
+
+    @Test
+    void malformedRuleIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> IpPolicy.parse(List.of("limit 10.0.0.0/8"), 0));
+        assertThrows(IllegalArgumentException.class, () -> IpPolicy.parse(List.of("allow 10.0.0.0/33"), 0));
+        assertThrows(IllegalArgumentException.class, () -> IpPolicy.parse(List.of("limit 10.0.0.0/8 100/0"), 0));
+        assertThrows(IllegalArgumentException.class, () -> IpPolicy.parse(List.of("limit 10.0.0.0/8 0/3"), 0));
+    }
+
+    private IpPolicy policy(List<String> lines) {
+        IpPolicy policy = new IpPolicy();
+        ReflectionTestUtils.setField(policy, "rules", IpPolicy.parse(lines, 1));
+        return policy;
+    }
+}
@@ -0,0 +1,38 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分段键锁测试，相同内容的键必须映射到同一把锁，并且能互斥执行
+ */
+class KeyedLockTest {
+
+    @Test
+    void equalKeysShareOneLock() {
+        KeyedLock lock = new KeyedLock(50);
+        assertEquals(64, lock.stripes());
+        assertSame(lock.lockFor(new String("127.0.0.1")), lock.lockFor(new String("127.0.0.1")));
+    }
+
+    @Test
+    void sameKeyIsMutuallyExclusive() throws InterruptedException {
+        KeyedLock lock = new KeyedLock(8);
+        int[] counter = new int[1];
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.submit(() -> {
+                for (int j = 0; j < 10000; j++)
+                    lock.withLock(new String("key"), () -> counter[0]++);
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(80000, counter[0]);
+    }
+}
@@ -0,0 +1,71 @@
+package cn.gugufish.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 本地令牌桶测试，令牌充足时不访问Redis，令牌耗尽或定时同步时批量上报
+ */
+class LocalFlowLimiterTest {
+
+    LocalFlowLimiter limiter;
+    FlowUtils utils;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new LocalFlowLimiter();
+        utils = mock(FlowUtils.class);
+        limiter.utils = utils;
+        limiter.limit = 100;
+        limiter.period = 3;
+        limiter.block = 30;
+        limiter.fraction = 0.2;
+        limiter.init();
+    }
+
+    @Test
+    void localTokensAvoidRedis() {
+        when(utils.limitPeriodReport(anyString(), anyString(), anyInt(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(1L, 22L);
+        for (int i = 0; i < 22; i++)
+            assertTrue(limiter.tryAcquire("1.1.1.1"));
+        verify(utils).limitPeriodReport(Const.FLOW_LIMIT_COUNTER + "1.1.1.1", Const.FLOW_LIMIT_BLOCK + "1.1.1.1", 30, 100, 3, 1);
+        verify(utils).limitPeriodReport(Const.FLOW_LIMIT_COUNTER + "1.1.1.1", Const.FLOW_LIMIT_BLOCK + "1.1.1.1", 30, 100, 3, 21);
+        verifyNoMoreInteractions(utils);
+    }
+
+    @Test
+    void blockedAddressIsRejectedLocally() {
+        when(utils.limitPeriodReport(anyString(), anyString(), anyInt(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(-30000L);
+        assertFalse(limiter.tryAcquire("2.2.2.2"));
+        assertFalse(limiter.tryAcquire("2.2.2.2"));
+        verify(utils, times(1)).limitPeriodReport(anyString(), anyString(), anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flushReportsAllBucketsInOneCall() {
+        when(utils.limitPeriodReport(anyString(), anyString(), anyInt(), anyInt(), anyInt(), anyInt())).thenReturn(1L);
+        when(utils.limitPeriodReport(anyList(), anyInt())).thenReturn(new long[]{6, -30000});
+        for (int i = 0; i < 6; i++)
+            limiter.tryAcquire("3.3.3.3");
+        for (int i = 0; i < 3; i++)
+            limiter.tryAcquire("4.4.4.4");
+        limiter.flush();
+        limiter.flush();
+        ArgumentCaptor<List<FlowUtils.PeriodReport>> captor = ArgumentCaptor.forClass(List.class);
+        verify(utils, times(1)).limitPeriodReport(captor.capture(), eq(30));
+        assertEquals(Set.of(5, 2), captor.getValue().stream()
+                .map(FlowUtils.PeriodReport::count).collect(Collectors.toSet()));
+    }
+}
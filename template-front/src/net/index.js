@@ -4,6 +4,10 @@ import router from "@/router";
 
 const authItemName = "authorize"
 
+// 带ETag的GET响应按地址保存在内存中，再次请求时携带If-None-Match，服务端返回304时直接使用保存的数据
+const etagCache = new Map()
+const etagCacheSize = 100
+
 const accessHeader = () => {
     return {
         'Authorization': `Bearer ${takeAccessToken()?.token}`
@@ -49,6 +53,7 @@ function storeAccessToken(remember, token, expire, role){
 function deleteAccessToken(redirect = false) {
     localStorage.removeItem(authItemName)
     sessionStorage.removeItem(authItemName)
+    etagCache.clear()
     if(redirect) {
         router.push({ name: 'welcome-login' })
     }
@@ -67,9 +72,32 @@ function internalPost(url, data, headers, success, failure, error = defaultError
     }).catch(err => error(err))
 }
 
+function rememberEtag(url, etag, data) {
+    etagCache.delete(url)
+    if(etagCache.size >= etagCacheSize)
+        etagCache.delete(etagCache.keys().next().value)
+    etagCache.set(url, { etag, data: structuredClone(data) })
+}
+
 function internalGet(url, headers, success, failure, error = defaultError){
-    axios.get(url, { headers: headers }).then(({data}) => {
+    const cached = etagCache.get(url)
+    if(cached) headers = { ...headers, 'If-None-Match': cached.etag }
+    axios.get(url, {
+        headers: headers,
+        validateStatus: status => (status >= 200 && status < 300) || status === 304
+    }).then(response => {
+        if(response.status === 304) {
+            // 回调可能修改数据，每次都交出一份副本
+            if(cached) success(structuredClone(cached.data))
+            return
+        }
+        const data = response.data
         if(data.code === 200) {
+            const etag = response.headers['etag']
+            if(etag)
+                rememberEtag(url, etag, data.data)
+            else
+                etagCache.delete(url)
             success(data.data)
         } else if(data.code === 401) {
             failure('登录状态已过期，请重新登录！')